@@ -0,0 +1,35 @@
+package festival.bench;
+
+import org.openjdk.jmh.results.format.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+/**
+ * Runs the benchmarks, with the GC profiler, and writes their results, as
+ * JSON, to a file.
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * Runs the benchmarks.
+	 * 
+	 * @param args
+	 *            the file to write the results to (by default
+	 *            "bench-results.json"), optionally followed by a regular
+	 *            expression selecting the benchmarks to run (by default all of
+	 *            them)
+	 * @throws RunnerException
+	 *             if a benchmark fails
+	 */
+	public static void main(String[] args) throws RunnerException {
+		// the options of the run
+		Options options = new OptionsBuilder()
+				.include(args.length > 1 ? args[1] : "festival\\.bench\\..*")
+				.addProfiler("gc")
+				.resultFormat(ResultFormatType.JSON)
+				.result(args.length > 0 ? args[0] : "bench-results.json")
+				.build();
+		new Runner(options).run();
+	}
+
+}
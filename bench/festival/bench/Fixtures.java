@@ -0,0 +1,124 @@
+package festival.bench;
+
+import festival.*;
+import java.util.*;
+
+/**
+ * Builds the random (but reproducible) festivals used by the benchmarks.
+ */
+final class Fixtures {
+
+	// the seed of the random numbers used to build every fixture
+	static final long SEED = 2002L;
+
+	/**
+	 * Returns the given number of venues, named "v0", "v1" and so on.
+	 */
+	static Venue[] venues(int count) {
+		// the venues under construction
+		Venue[] venues = new Venue[count];
+		for (int i = 0; i < count; i++) {
+			venues[i] = new Venue("v" + i);
+		}
+		return venues;
+	}
+
+	/**
+	 * Returns a timetable over the given venues and number of sessions, in
+	 * which (on average) density services depart each venue at the end of
+	 * each session, to destinations chosen uniformly at random.
+	 */
+	static ShuttleTimetable timetable(Venue[] venues, int sessions,
+			int density, Random random) {
+		// the timetable under construction
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		for (Service service : services(venues, sessions, density, random)) {
+			timetable.addService(service);
+		}
+		return timetable;
+	}
+
+	/**
+	 * Returns the services of a timetable built as for
+	 * {@link #timetable(Venue[], int, int, Random)}, in a random order (and
+	 * possibly with duplicates).
+	 */
+	static List<Service> services(Venue[] venues, int sessions, int density,
+			Random random) {
+		// the services under construction
+		List<Service> services = new ArrayList<>();
+		if (venues.length < 2) {
+			return services;
+		}
+		for (int source = 0; source < venues.length; source++) {
+			for (int session = 1; session <= sessions; session++) {
+				for (int i = 0; i < density; i++) {
+					// the id of the destination, which is not the source
+					int destination = (source + 1 + random
+							.nextInt(venues.length - 1)) % venues.length;
+					services.add(new Service(venues[source],
+							venues[destination], session));
+				}
+			}
+		}
+		Collections.shuffle(services, random);
+		return services;
+	}
+
+	/**
+	 * Returns a line-up over the given venues and number of sessions in which
+	 * the given percentage of the (venue, session) slots hold an event.
+	 */
+	static LineUp lineUp(Venue[] venues, int sessions, int percent,
+			Random random) {
+		// the line-up under construction
+		LineUp lineUp = new LineUp();
+		for (Event event : events(venues, sessions, percent, random)) {
+			lineUp.addEvent(event);
+		}
+		return lineUp;
+	}
+
+	/**
+	 * Returns the events of a line-up built as for
+	 * {@link #lineUp(Venue[], int, int, Random)}, in a random order.
+	 */
+	static List<Event> events(Venue[] venues, int sessions, int percent,
+			Random random) {
+		// the events under construction
+		List<Event> events = new ArrayList<>();
+		for (Venue venue : venues) {
+			for (int session = 1; session <= sessions; session++) {
+				if (random.nextInt(100) < percent) {
+					events.add(new Event(venue, session, "act"
+							+ events.size()));
+				}
+			}
+		}
+		Collections.shuffle(events, random);
+		return events;
+	}
+
+	/**
+	 * Returns the given number of plans over the given venues and number of
+	 * sessions, each visiting a random venue in about half of the sessions.
+	 */
+	static List<List<Event>> plans(Venue[] venues, int sessions, int count,
+			Random random) {
+		// the plans under construction
+		List<List<Event>> plans = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			// the plan under construction
+			List<Event> plan = new ArrayList<>();
+			for (int session = 1; session <= sessions; session++) {
+				if (random.nextBoolean()) {
+					plan.add(new Event(venues[random.nextInt(venues.length)],
+							session, "act" + session));
+				}
+			}
+			plans.add(plan);
+		}
+		return plans;
+	}
+
+}
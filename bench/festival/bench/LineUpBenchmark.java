@@ -0,0 +1,128 @@
+package festival.bench;
+
+import festival.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks of the updates, queries and string representation of a
+ * {@link LineUp}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LineUpBenchmark {
+
+	// the number of events added by each invocation of addEvent
+	private static final int INSERTS = 1 << 7;
+
+	// the number of venues at the festival
+	@Param({ "100", "1000" })
+	public int venues;
+	// the number of sessions in the festival
+	@Param({ "10", "100" })
+	public int sessions;
+	// the percentage of (venue, session) slots that hold an event
+	@Param({ "25", "100" })
+	public int density;
+
+	// the venues at the festival
+	private Venue[] all;
+	// the events of the line-up, in the order they are added
+	private List<Event> events;
+	// the line-up being queried
+	private LineUp lineUp;
+	// the index of the next query to make
+	private int next;
+
+	/**
+	 * Builds the line-up.
+	 */
+	@Setup
+	public void setUp() {
+		// the random numbers used to build the fixtures
+		Random random = new Random(Fixtures.SEED);
+		all = Fixtures.venues(venues);
+		events = Fixtures.events(all, sessions, density, random);
+		lineUp = new LineUp();
+		for (Event event : events) {
+			lineUp.addEvent(event);
+		}
+	}
+
+	/**
+	 * Adds INSERTS events to a line-up holding the rest of the events (so the
+	 * time is for one call of addEvent on a line-up of the benchmark's size,
+	 * whatever that size is).
+	 */
+	@Benchmark
+	@OperationsPerInvocation(INSERTS)
+	public LineUp addEvent(Insertion insertion) {
+		for (Event event : insertion.inserted) {
+			insertion.lineUp.addEvent(event);
+		}
+		return insertion.lineUp;
+	}
+
+	@Benchmark
+	public List<Event> getEventsByVenue() {
+		next = (next + 1) % all.length;
+		return lineUp.getEvents(all[next]);
+	}
+
+	@Benchmark
+	public List<Event> getEventsBySession() {
+		next = next % sessions + 1;
+		return lineUp.getEvents(next);
+	}
+
+	@Benchmark
+	public String lineUpToString() {
+		return lineUp.toString();
+	}
+
+	/**
+	 * A line-up built from the events of the benchmark, less INSERTS of them
+	 * for addEvent to add back.
+	 */
+	@State(Scope.Thread)
+	public static class Insertion {
+
+		// the line-up the events are added to
+		private LineUp lineUp;
+		// the events added to the line-up by each invocation
+		private List<Event> inserted;
+
+		/**
+		 * Builds the line-up, and removes the events to add from it.
+		 */
+		@Setup
+		public void setUp(LineUpBenchmark benchmark) {
+			lineUp = new LineUp();
+			for (Event event : benchmark.events) {
+				lineUp.addEvent(event);
+			}
+			inserted = new ArrayList<>(benchmark.events.subList(0, INSERTS));
+			for (Event event : inserted) {
+				lineUp.removeEvent(event);
+			}
+		}
+
+		/**
+		 * Removes the events added by an invocation, so that the next one
+		 * adds them to the same line-up.
+		 */
+		@TearDown(Level.Invocation)
+		public void tearDown() {
+			for (Event event : inserted) {
+				lineUp.removeEvent(event);
+			}
+		}
+
+	}
+
+}
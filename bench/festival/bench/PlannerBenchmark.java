@@ -0,0 +1,67 @@
+package festival.bench;
+
+import festival.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks of checking plans with a {@link DayPlanner}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PlannerBenchmark {
+
+	// the number of plans prepared for the benchmarks
+	private static final int PLANS = 1 << 10;
+
+	// the number of venues at the festival
+	@Param({ "100", "1000" })
+	public int venues;
+	// the number of sessions in the festival
+	@Param({ "10", "100" })
+	public int sessions;
+	// the average number of services departing each venue in each session
+	@Param({ "1", "8" })
+	public int density;
+
+	// the day-planner checking the plans
+	private DayPlanner planner;
+	// the plans to check
+	private List<List<Event>> plans;
+	// the index of the next plan to check
+	private int next;
+
+	/**
+	 * Builds the day-planner and the plans.
+	 */
+	@Setup
+	public void setUp() {
+		// the random numbers used to build the fixtures
+		Random random = new Random(Fixtures.SEED);
+		// the venues at the festival
+		Venue[] all = Fixtures.venues(venues);
+		planner = new DayPlanner(Fixtures.timetable(all, sessions, density,
+				random));
+		plans = Fixtures.plans(all, sessions, PLANS, random);
+	}
+
+	@Benchmark
+	public boolean compatible() {
+		next = (next + 1) & (PLANS - 1);
+		return planner.compatible(plans.get(next));
+	}
+
+	/**
+	 * Checks every plan at once (so the time is for PLANS plans).
+	 */
+	@Benchmark
+	public BitSet compatibleAll() {
+		return planner.compatibleAll(plans);
+	}
+
+}
@@ -0,0 +1,72 @@
+package festival.bench;
+
+import festival.*;
+import festival.test.FestivalGenerator;
+import java.io.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks of reading a large timetable file with each of the read paths of
+ * {@link ScheduleReader}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class ReaderBenchmark {
+
+	// the number of venues at the festival
+	@Param({ "1000", "10000" })
+	public int venues;
+	// the number of sessions in the festival
+	@Param({ "10", "100" })
+	public int sessions;
+	// the average number of services departing each venue in each session
+	@Param({ "1", "8" })
+	public int density;
+
+	// the timetable file being read
+	private File file;
+
+	/**
+	 * Writes the timetable file.
+	 */
+	@Setup
+	public void setUp() throws IOException {
+		file = File.createTempFile("timetable", ".txt");
+		file.deleteOnExit();
+		// the generator of the festival
+		FestivalGenerator generator = new FestivalGenerator(Fixtures.SEED,
+				venues, sessions);
+		generator.setFanOut(density, FestivalGenerator.Distribution.POISSON);
+		generator.writeTimetable(file.getPath());
+	}
+
+	/**
+	 * Deletes the timetable file.
+	 */
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public ShuttleTimetable read() throws IOException, FormatException {
+		return ScheduleReader.read(file.getPath());
+	}
+
+	@Benchmark
+	public ShuttleTimetable readMapped() throws IOException, FormatException {
+		return ScheduleReader.readMapped(file.getPath());
+	}
+
+	@Benchmark
+	public ShuttleTimetable readParallel() throws IOException,
+			FormatException {
+		return ScheduleReader.readParallel(file.getPath());
+	}
+
+}
@@ -0,0 +1,147 @@
+package festival.bench;
+
+import festival.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks of the lookups and updates of a {@link ShuttleTimetable}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TimetableBenchmark {
+
+	// the number of queries prepared for the lookup benchmarks
+	private static final int QUERIES = 1 << 12;
+	// the number of services added by each invocation of addService
+	private static final int INSERTS = 1 << 7;
+
+	// the number of venues at the festival
+	@Param({ "100", "1000" })
+	public int venues;
+	// the number of sessions in the festival
+	@Param({ "10", "100" })
+	public int sessions;
+	// the average number of services departing each venue in each session
+	@Param({ "1", "8" })
+	public int density;
+
+	// the services of the timetable, in the order they are added
+	private List<Service> services;
+	// the timetable being queried
+	private ShuttleTimetable timetable;
+	// the services looked up (about half of which are in the timetable)
+	private Service[] queries;
+	// the index of the next query to make
+	private int next;
+
+	/**
+	 * Builds the timetable and the queries.
+	 */
+	@Setup
+	public void setUp() {
+		// the random numbers used to build the fixtures
+		Random random = new Random(Fixtures.SEED);
+		// the venues at the festival
+		Venue[] all = Fixtures.venues(venues);
+		services = Fixtures.services(all, sessions, density, random);
+		timetable = new ShuttleTimetable();
+		for (Service service : services) {
+			timetable.addService(service);
+		}
+		queries = new Service[QUERIES];
+		// services that are not in the timetable (unless by chance)
+		List<Service> misses = Fixtures.services(all, sessions, 1, random);
+		for (int i = 0; i < QUERIES; i++) {
+			queries[i] = i % 2 == 0 ? services.get(random.nextInt(services
+					.size())) : misses.get(random.nextInt(misses.size()));
+		}
+	}
+
+	/**
+	 * Returns the next query to make.
+	 */
+	private Service query() {
+		next = (next + 1) & (QUERIES - 1);
+		return queries[next];
+	}
+
+	@Benchmark
+	public Set<Venue> getDestinations() {
+		// the query to make
+		Service query = query();
+		return timetable.getDestinations(query.getSource(), query.getSession());
+	}
+
+	@Benchmark
+	public boolean hasService() {
+		return timetable.hasService(query());
+	}
+
+	/**
+	 * Adds INSERTS services to a timetable holding the rest of the services
+	 * (so the time is for one call of addService on a timetable of the
+	 * benchmark's size, whatever that size is).
+	 */
+	@Benchmark
+	@OperationsPerInvocation(INSERTS)
+	public ShuttleTimetable addService(Insertion insertion) {
+		for (Service service : insertion.inserted) {
+			insertion.timetable.addService(service);
+		}
+		return insertion.timetable;
+	}
+
+	/**
+	 * A timetable built from the services of the benchmark, less INSERTS of
+	 * them for addService to add back.
+	 */
+	@State(Scope.Thread)
+	public static class Insertion {
+
+		// the timetable the services are added to
+		private ShuttleTimetable timetable;
+		// the services added to the timetable by each invocation
+		private List<Service> inserted;
+
+		/**
+		 * Builds the timetable, and removes the services to add from it.
+		 */
+		@Setup
+		public void setUp(TimetableBenchmark benchmark) {
+			timetable = new ShuttleTimetable();
+			for (Service service : benchmark.services) {
+				timetable.addService(service);
+			}
+			inserted = new ArrayList<>();
+			for (Service service : benchmark.services) {
+				if (inserted.size() == INSERTS) {
+					break;
+				}
+				// the list may hold duplicates, which are only added once
+				if (timetable.hasService(service)) {
+					timetable.removeService(service);
+					inserted.add(service);
+				}
+			}
+		}
+
+		/**
+		 * Removes the services added by an invocation, so that the next one
+		 * adds them to the same timetable.
+		 */
+		@TearDown(Level.Invocation)
+		public void tearDown() {
+			for (Service service : inserted) {
+				timetable.removeService(service);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,212 @@
+package festival.bench;
+
+import festival.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * <p>
+ * Benchmarks of the queries of the timetables and line-up that visit their
+ * results with a callback, against the queries that return a new collection.
+ * </p>
+ * 
+ * <p>
+ * Run these with the GC profiler (which BenchmarkRunner adds to every run):
+ * the forEach benchmarks should report a normalised allocation rate
+ * ("gc.alloc.rate.norm") of 0 bytes per operation, while the get benchmarks
+ * report the size of the collections they create.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class VisitorBenchmark {
+
+	// the number of queries prepared for the benchmarks
+	private static final int QUERIES = 1 << 12;
+
+	// the number of venues at the festival
+	@Param({ "100", "1000" })
+	public int venues;
+	// the number of sessions in the festival
+	@Param({ "10", "300" })
+	public int sessions;
+	// the average number of services departing each venue in each session
+	@Param({ "4" })
+	public int density;
+
+	// the venues at the festival
+	private Venue[] all;
+	// the timetable being queried
+	private ShuttleTimetable timetable;
+	// a compact snapshot of the timetable
+	private CompactTimetable compact;
+	// the line-up being queried, with an event in half of the slots
+	private LineUp lineUp;
+	// the venues queried
+	private Venue[] queryVenues;
+	// the ids of the venues queried in the registry of the compact snapshot
+	private int[] queryIds;
+	// the sessions queried
+	private int[] querySessions;
+	// the index of the next query to make
+	private int next;
+	// the action counting the venues visited
+	private final VenueCounter venueCounter = new VenueCounter();
+	// the action counting the venue ids visited
+	private final IdCounter idCounter = new IdCounter();
+	// the action counting the events visited
+	private final EventCounter eventCounter = new EventCounter();
+
+	/**
+	 * Counts the venues passed to it, and sums their hash codes (so that the
+	 * venues are used).
+	 */
+	private static final class VenueCounter implements Consumer<Venue> {
+
+		// the sum of the hash codes of the venues counted
+		private int sum;
+
+		@Override
+		public void accept(Venue venue) {
+			sum += venue.hashCode();
+		}
+	}
+
+	/**
+	 * Sums the venue ids passed to it.
+	 */
+	private static final class IdCounter implements IntConsumer {
+
+		// the sum of the ids counted
+		private int sum;
+
+		@Override
+		public void accept(int id) {
+			sum += id;
+		}
+	}
+
+	/**
+	 * Sums the sessions of the events passed to it.
+	 */
+	private static final class EventCounter implements Consumer<Event> {
+
+		// the sum of the sessions of the events counted
+		private int sum;
+
+		@Override
+		public void accept(Event event) {
+			sum += event.getSession();
+		}
+	}
+
+	/**
+	 * Builds the timetable, line-up and queries.
+	 */
+	@Setup
+	public void setUp() {
+		// the random numbers used to build the fixtures
+		Random random = new Random(Fixtures.SEED);
+		all = Fixtures.venues(venues);
+		timetable = Fixtures.timetable(all, sessions, density, random);
+		compact = new CompactTimetable(timetable);
+		lineUp = Fixtures.lineUp(all, sessions, 50, random);
+		queryVenues = new Venue[QUERIES];
+		queryIds = new int[QUERIES];
+		querySessions = new int[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			queryVenues[i] = all[random.nextInt(all.length)];
+			queryIds[i] = compact.getRegistry().getId(queryVenues[i]);
+			querySessions[i] = 1 + random.nextInt(sessions);
+		}
+	}
+
+	/**
+	 * Moves on to the next query, returning its index.
+	 */
+	private int query() {
+		next = (next + 1) & (QUERIES - 1);
+		return next;
+	}
+
+	@Benchmark
+	public Set<Venue> getDestinations() {
+		// the index of the query to make
+		int query = query();
+		return timetable.getDestinations(queryVenues[query],
+				querySessions[query]);
+	}
+
+	@Benchmark
+	public int forEachDestination() {
+		// the index of the query to make
+		int query = query();
+		timetable.forEachDestination(queryVenues[query],
+				querySessions[query], venueCounter);
+		return venueCounter.sum;
+	}
+
+	@Benchmark
+	public int forEachDestinationCompact() {
+		// the index of the query to make
+		int query = query();
+		compact.forEachDestination(queryVenues[query], querySessions[query],
+				venueCounter);
+		return venueCounter.sum;
+	}
+
+	@Benchmark
+	public int forEachDestinationId() {
+		// the index of the query to make
+		int query = query();
+		compact.forEachDestination(queryIds[query], querySessions[query],
+				idCounter);
+		return idCounter.sum;
+	}
+
+	@Benchmark
+	public List<Event> getEventsByVenue() {
+		return lineUp.getEvents(queryVenues[query()]);
+	}
+
+	@Benchmark
+	public int forEachEventByVenue() {
+		lineUp.forEachEvent(queryVenues[query()], eventCounter);
+		return eventCounter.sum;
+	}
+
+	@Benchmark
+	public List<Event> getEventsInRange() {
+		// the index of the query to make
+		int query = query();
+		return lineUp.getEvents(queryVenues[query], querySessions[query],
+				querySessions[query] + 5);
+	}
+
+	@Benchmark
+	public int forEachEventInRange() {
+		// the index of the query to make
+		int query = query();
+		lineUp.forEachEvent(queryVenues[query], querySessions[query],
+				querySessions[query] + 5, eventCounter);
+		return eventCounter.sum;
+	}
+
+	@Benchmark
+	public List<Event> getEventsBySession() {
+		return lineUp.getEvents(querySessions[query()]);
+	}
+
+	@Benchmark
+	public int forEachEventBySession() {
+		lineUp.forEachEvent(querySessions[query()], eventCounter);
+		return eventCounter.sum;
+	}
+
+}
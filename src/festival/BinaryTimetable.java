@@ -0,0 +1,234 @@
+package festival;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.zip.*;
+
+/**
+ * <p>
+ * Provides methods to write a compact timetable to a file in a versioned
+ * binary format, and to load it back by memory-mapping the file, so that a
+ * timetable read once from a text file (see {@link ScheduleReader}) can be
+ * reloaded without parsing each service again.
+ * </p>
+ * 
+ * <p>
+ * The file holds, in big-endian order:
+ * </p>
+ * <ol>
+ * <li>the magic number 0x46535454 ("FSTT") and the format version (both ints);
+ * </li>
+ * <li>the number of venues, the last session, the number of services and the
+ * total length in bytes of the venue names (all ints);</li>
+ * <li>the length in bytes of each venue name (an int per venue), then the
+ * UTF-8 encoded names themselves, in order of venue id, padded with zeros to a
+ * multiple of four bytes;</li>
+ * <li>the row offsets and the destination venue ids of the compact timetable
+ * (see {@link CompactTimetable}), as ints;</li>
+ * <li>the CRC-32 checksum of all the preceding bytes (a long).</li>
+ * </ol>
+ */
+public class BinaryTimetable {
+
+	// the first four bytes of every binary timetable file ("FSTT")
+	private static final int MAGIC = 0x46535454;
+	// the version of the format written by this class
+	private static final int VERSION = 1;
+	// the number of bytes before the venue name lengths
+	private static final int HEADER_BYTES = 6 * 4;
+
+	/**
+	 * This class only has static methods, and should not be instantiated.
+	 */
+	private BinaryTimetable() {
+	}
+
+	/**
+	 * Writes the given timetable to the file called fileName in the binary
+	 * format, replacing the file if it already exists.
+	 * 
+	 * @param timetable
+	 *            the timetable to write
+	 * @param fileName
+	 *            the file to write to
+	 * @throws NullPointerException
+	 *             if timetable is null
+	 * @throws IOException
+	 *             if there is an error writing to the file
+	 */
+	public static void write(CompactTimetable timetable, String fileName)
+			throws IOException {
+		if (timetable == null) {
+			throw new NullPointerException("Timetable cannot be null");
+		}
+		// the names of the venues, encoded in UTF-8
+		byte[][] names = new byte[timetable.getVenueCount()][];
+		// the total length of the names
+		int nameBytes = 0;
+		for (int id = 0; id < names.length; id++) {
+			names[id] = timetable.getRegistry().getVenue(id).getName()
+					.getBytes(StandardCharsets.UTF_8);
+			nameBytes += names[id].length;
+		}
+		// the checksum of the bytes written so far
+		CRC32 checksum = new CRC32();
+		try (DataOutputStream output =
+				new DataOutputStream(new BufferedOutputStream(
+						new CheckedOutputStream(new FileOutputStream(fileName),
+								checksum), 1 << 16))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(timetable.getVenueCount());
+			output.writeInt(timetable.getLastSession());
+			output.writeInt(timetable.size());
+			output.writeInt(nameBytes);
+			for (byte[] name : names) {
+				output.writeInt(name.length);
+			}
+			for (byte[] name : names) {
+				output.write(name);
+			}
+			output.write(new byte[padding(nameBytes)]);
+			for (int offset : timetable.offsets()) {
+				output.writeInt(offset);
+			}
+			for (int destination : timetable.destinations()) {
+				output.writeInt(destination);
+			}
+			// the checksum covers everything before it
+			output.flush();
+			output.writeLong(checksum.getValue());
+		}
+	}
+
+	/**
+	 * Loads a timetable from the file called fileName, which must have been
+	 * written in the binary format, by memory-mapping the file. The venues of
+	 * the timetable are issued by a new registry, with the same ids as in the
+	 * file.
+	 * 
+	 * @param fileName
+	 *            the file to read from
+	 * @return the timetable in the file
+	 * @throws IOException
+	 *             if there is an error reading from the file, or it is too
+	 *             large to be mapped into memory in one piece (2GB)
+	 * @throws FormatException
+	 *             if the file is not a binary timetable file, was written in
+	 *             an unsupported version of the format, or is corrupt (its
+	 *             length does not match its header, its checksum does not
+	 *             match its contents, or its venue names are invalid)
+	 */
+	public static CompactTimetable read(String fileName) throws IOException,
+			FormatException {
+		// the bytes of the file
+		ByteBuffer buffer = ScheduleReader.map(fileName);
+		if (buffer.limit() < HEADER_BYTES + 8 || buffer.getInt(0) != MAGIC) {
+			throw new FormatException(fileName
+					+ " is not a binary timetable file");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new FormatException(fileName + " has unsupported version "
+					+ buffer.getInt(4) + " (expected " + VERSION + ")");
+		}
+		// the counts in the header of the file
+		int venues = buffer.getInt(8);
+		int sessions = buffer.getInt(12);
+		int services = buffer.getInt(16);
+		int nameBytes = buffer.getInt(20);
+		// the position of the venue names, row offsets and destinations
+		long names = HEADER_BYTES + 4L * venues;
+		long offsets = names + nameBytes + padding(nameBytes);
+		long destinations = offsets + 4L * ((long) venues * sessions + 1);
+		if (venues < 0 || sessions < 0 || services < 0 || nameBytes < 0
+				|| destinations + 4L * services + 8 != buffer.limit()) {
+			throw new FormatException(fileName
+					+ " is corrupt: its length does not match its header");
+		}
+		// the checksum of the file, computed over everything but the checksum
+		CRC32 checksum = new CRC32();
+		ByteBuffer contents = buffer.duplicate();
+		contents.limit(buffer.limit() - 8);
+		checksum.update(contents);
+		if (checksum.getValue() != buffer.getLong(buffer.limit() - 8)) {
+			throw new FormatException(fileName
+					+ " is corrupt: its checksum does not match its contents");
+		}
+		// the registry issuing the venues, in order of their ids in the file
+		VenueRegistry registry = new VenueRegistry();
+		// the position of the next name to decode
+		long name = names;
+		for (int id = 0; id < venues; id++) {
+			// the length of the name of the venue
+			int length = buffer.getInt(HEADER_BYTES + 4 * id);
+			if (length <= 0 || name + length > names + nameBytes) {
+				throw new FormatException(fileName
+						+ " is corrupt: invalid venue name length " + length);
+			}
+			byte[] bytes = new byte[length];
+			ByteBuffer slice = buffer.duplicate();
+			slice.position((int) name);
+			slice.get(bytes);
+			if (registry.intern(new String(bytes, StandardCharsets.UTF_8))
+					.getId(registry) != id) {
+				throw new FormatException(fileName
+						+ " is corrupt: duplicate venue name");
+			}
+			name += length;
+		}
+		if (name != names + nameBytes) {
+			throw new FormatException(fileName + " is corrupt: the venue names"
+					+ " take " + (name - names) + " bytes, not " + nameBytes);
+		}
+		// the rows of the timetable, copied in bulk out of the mapping
+		int[] rows = new int[(int) ((destinations - offsets) / 4)];
+		int[] targets = new int[services];
+		ByteBuffer ints = buffer.duplicate();
+		ints.position((int) offsets);
+		ints.slice().asIntBuffer().get(rows);
+		ints.position((int) destinations);
+		ints.slice().asIntBuffer().get(targets);
+		// the timetable in the file
+		CompactTimetable timetable =
+				new CompactTimetable(registry, venues, sessions, rows, targets);
+		if (!timetable.checkInvariant()) {
+			throw new FormatException(fileName
+					+ " is corrupt: its services are not in compact form");
+		}
+		return timetable;
+	}
+
+	/**
+	 * Reads the timetable in the text file called textFileName (in the format
+	 * described by {@link ScheduleReader#read(String)}) and writes it to the
+	 * file called binaryFileName in the binary format.
+	 * 
+	 * @param textFileName
+	 *            the text file to read from
+	 * @param binaryFileName
+	 *            the binary file to write to
+	 * @return the timetable that was read and written
+	 * @throws IOException
+	 *             if there is an error reading or writing either file
+	 * @throws FormatException
+	 *             if there is an error with the format of the text file
+	 */
+	public static CompactTimetable compile(String textFileName,
+			String binaryFileName) throws IOException, FormatException {
+		// the timetable in the text file
+		CompactTimetable timetable =
+				new CompactTimetable(ScheduleReader.readParallel(textFileName));
+		write(timetable, binaryFileName);
+		return timetable;
+	}
+
+	/**
+	 * Returns the number of zero bytes needed after the given number of bytes
+	 * to reach a multiple of four bytes.
+	 */
+	private static int padding(int bytes) {
+		return (4 - (bytes & 3)) & 3;
+	}
+
+}
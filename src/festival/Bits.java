@@ -0,0 +1,65 @@
+package festival;
+
+/**
+ * Static helper methods for sets of venue ids that are packed into arrays of
+ * longs, 64 ids to a word (the id i is stored in bit i % 64 of word i / 64).
+ */
+final class Bits {
+
+	/**
+	 * This class only has static methods, and should not be instantiated.
+	 */
+	private Bits() {
+	}
+
+	/**
+	 * Returns the number of words needed to store a set of ids between 0 and
+	 * size - 1.
+	 */
+	static int words(int size) {
+		return (size + 63) >>> 6;
+	}
+
+	/**
+	 * Returns true if the given id is in the given set.
+	 */
+	static boolean get(long[] bits, int id) {
+		return (bits[id >>> 6] & (1L << id)) != 0;
+	}
+
+	/**
+	 * Adds the given id to the given set.
+	 */
+	static void set(long[] bits, int id) {
+		bits[id >>> 6] |= 1L << id;
+	}
+
+	/**
+	 * Removes the given id from the given set.
+	 */
+	static void clear(long[] bits, int id) {
+		bits[id >>> 6] &= ~(1L << id);
+	}
+
+	/**
+	 * Adds every id in the set from to the set into.
+	 */
+	static void or(long[] into, long[] from) {
+		for (int i = 0; i < from.length; i++) {
+			into[i] |= from[i];
+		}
+	}
+
+	/**
+	 * Returns true if the given set contains no ids.
+	 */
+	static boolean isEmpty(long[] bits) {
+		for (long word : bits) {
+			if (word != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,468 @@
+package festival;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * <p>
+ * An immutable, compact snapshot of the shuttle services between venues at a
+ * festival.
+ * </p>
+ * 
+ * <p>
+ * The services are stored in compressed-sparse-row form. Each venue is
+ * identified by its id in a {@link VenueRegistry}, and each (source venue,
+ * session) pair is a row whose destinations are stored, as venue ids in
+ * ascending order, in one flat array of destinations. An array of offsets
+ * records where each row starts in the array of destinations, so that a
+ * service takes up roughly four bytes rather than a Service object of its own.
+ * </p>
+ * 
+ * <p>
+ * The row for the source venue with id v and the session s is row number
+ * v * sessions + (s - 1), where sessions is the last session in which a service
+ * departs.
+ * </p>
+ */
+public class CompactTimetable implements Timetable {
+
+	// the registry issuing the ids of the venues in the timetable
+	private VenueRegistry registry;
+	// the number of venue ids covered by the rows of the timetable
+	private int venues;
+	// the last session in which a service departs (0 if there are none)
+	private int sessions;
+	// the offset into destinations at which each row starts
+	private int[] offsets;
+	// the destination venue ids of all the services, row by row
+	private int[] destinations;
+
+	/*
+	 * Invariant: registry != null && 0 <= venues <= registry.size() &&
+	 * sessions >= 0 && offsets.length == venues * sessions + 1 && offsets[0]
+	 * == 0 && offsets is non-decreasing && offsets[offsets.length - 1] ==
+	 * destinations.length && the destinations in each row are strictly
+	 * increasing ids between 0 and venues - 1, none of which is the id of the
+	 * source venue of the row
+	 */
+
+	/**
+	 * Creates a compact snapshot of the given timetable, using a new registry
+	 * to issue the ids of its venues.
+	 * 
+	 * @param timetable
+	 *            the timetable to take a snapshot of
+	 * @throws NullPointerException
+	 *             if timetable is null
+	 */
+	public CompactTimetable(Timetable timetable) {
+		this(timetable, new VenueRegistry());
+	}
+
+	/**
+	 * Creates a compact snapshot of the given timetable, using the given
+	 * registry to issue the ids of its venues. (Venues of the timetable that
+	 * are not yet in the registry are added to it.)
+	 * 
+	 * @param timetable
+	 *            the timetable to take a snapshot of
+	 * @param registry
+	 *            the registry issuing the ids of the venues
+	 * @throws NullPointerException
+	 *             if timetable or registry is null
+	 * @throws IllegalArgumentException
+	 *             if the timetable has too many venues and sessions to be
+	 *             stored in compact form
+	 */
+	public CompactTimetable(Timetable timetable, VenueRegistry registry) {
+		if (timetable == null || registry == null) {
+			throw new NullPointerException("Input parameters cannot be null");
+		}
+		// the number of services in the timetable
+		int size = timetable.size();
+		// the source, session and destination of each service
+		int[] sources = new int[size];
+		int[] services = new int[size];
+		int[] targets = new int[size];
+		// the number of services read from the timetable so far
+		int count = 0;
+		for (Service service : timetable) {
+			sources[count] = registry.getId(registry.intern(service.getSource()));
+			services[count] = service.getSession();
+			targets[count] =
+					registry.getId(registry.intern(service.getDestination()));
+			sessions = Math.max(sessions, service.getSession());
+			count++;
+		}
+		this.registry = registry;
+		this.venues = registry.size();
+		this.offsets = new int[rows(venues, sessions) + 1];
+		this.destinations = new int[count];
+		// count the services in each row, then turn the counts into offsets
+		for (int i = 0; i < count; i++) {
+			offsets[row(sources[i], services[i]) + 1]++;
+		}
+		for (int i = 1; i < offsets.length; i++) {
+			offsets[i] += offsets[i - 1];
+		}
+		// the next free position in each row
+		int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+		for (int i = 0; i < count; i++) {
+			destinations[next[row(sources[i], services[i])]++] = targets[i];
+		}
+		for (int i = 0; i < offsets.length - 1; i++) {
+			if (offsets[i + 1] - offsets[i] > 1) {
+				Arrays.sort(destinations, offsets[i], offsets[i + 1]);
+			}
+		}
+	}
+
+	/**
+	 * Creates a compact timetable directly from its rows. (The arrays are
+	 * used, not copied, and must satisfy the class invariant.)
+	 * 
+	 * @param registry
+	 *            the registry issuing the ids of the venues
+	 * @param venues
+	 *            the number of venue ids covered by the rows
+	 * @param sessions
+	 *            the last session in which a service departs
+	 * @param offsets
+	 *            the offset at which each row starts
+	 * @param destinations
+	 *            the destination venue ids of all the services, row by row
+	 */
+	CompactTimetable(VenueRegistry registry, int venues, int sessions,
+			int[] offsets, int[] destinations) {
+		this.registry = registry;
+		this.venues = venues;
+		this.sessions = sessions;
+		this.offsets = offsets;
+		this.destinations = destinations;
+	}
+
+	/**
+	 * Returns the number of rows needed for the given number of venues and
+	 * sessions.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if there would be too many rows to fit in an array
+	 */
+	private static int rows(int venues, int sessions) {
+		// the number of rows, computed without overflow
+		long rows = (long) venues * sessions;
+		if (rows >= Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many venues (" + venues
+					+ ") and sessions (" + sessions + ") for a compact timetable");
+		}
+		return (int) rows;
+	}
+
+	/**
+	 * Returns the row holding the services departing the venue with the given
+	 * id at the end of the given session.
+	 */
+	private int row(int source, int session) {
+		return source * sessions + (session - 1);
+	}
+
+	/**
+	 * Returns the registry issuing the ids of the venues in this timetable.
+	 * 
+	 * @return the registry of this timetable
+	 */
+	public VenueRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Returns the number of venue ids covered by this timetable. (Every venue
+	 * with a service in this timetable has an id less than this number.)
+	 * 
+	 * @return the number of venue ids covered by this timetable
+	 */
+	public int getVenueCount() {
+		return venues;
+	}
+
+	@Override
+	public Set<Venue> getSourceVenues() {
+		// the venues from which a service departs
+		Set<Venue> sources = new HashSet<>();
+		for (int source = 0; source < venues; source++) {
+			if (offsets[row(source, 1)] < offsets[row(source, sessions) + 1]) {
+				sources.add(registry.getVenue(source));
+			}
+		}
+		return sources;
+	}
+
+	/**
+	 * Returns the last session in which a service departs, or 0 if there are
+	 * no services in this timetable.
+	 * 
+	 * @return the last session in which a service departs
+	 */
+	@Override
+	public int getLastSession() {
+		return sessions;
+	}
+
+	/**
+	 * Returns the position in the destination array at which the destinations
+	 * of the services departing the given venue at the end of the given
+	 * session start. The destinations run up to (but not including)
+	 * {@link #end(int, int)}.
+	 * 
+	 * @param source
+	 *            the id of the source venue
+	 * @param session
+	 *            the session number
+	 */
+	int start(int source, int session) {
+		if (source < 0 || source >= venues || session < 1 || session > sessions) {
+			return 0;
+		}
+		return offsets[row(source, session)];
+	}
+
+	/**
+	 * Returns the position in the destination array at which the destinations
+	 * of the services departing the given venue at the end of the given
+	 * session end.
+	 * 
+	 * @param source
+	 *            the id of the source venue
+	 * @param session
+	 *            the session number
+	 */
+	int end(int source, int session) {
+		if (source < 0 || source >= venues || session < 1 || session > sessions) {
+			return 0;
+		}
+		return offsets[row(source, session) + 1];
+	}
+
+	/**
+	 * Returns the offset at which each row starts in the destination array.
+	 * (The array is returned without copying, and must not be modified.)
+	 */
+	int[] offsets() {
+		return offsets;
+	}
+
+	/**
+	 * Returns the destination venue ids of all the services, row by row. (The
+	 * array is returned without copying, and must not be modified.)
+	 */
+	int[] destinations() {
+		return destinations;
+	}
+
+	/**
+	 * Returns the id of the destination venue at the given position in the
+	 * destination array.
+	 */
+	int destination(int position) {
+		return destinations[position];
+	}
+
+	@Override
+	public boolean hasService(Service service) {
+		if (service == null) {
+			return false;
+		}
+		// the ids of the source and destination of the service
+		int source = registry.getId(service.getSource());
+		int destination = registry.getId(service.getDestination());
+		if (source < 0 || destination < 0) {
+			return false;
+		}
+		return Arrays.binarySearch(destinations,
+				start(source, service.getSession()),
+				end(source, service.getSession()), destination) >= 0;
+	}
+
+	@Override
+	public int size() {
+		return destinations.length;
+	}
+
+	@Override
+	public Set<Venue> getDestinations(Venue source, int session) {
+		if (source == null) {
+			throw new NullPointerException("The source venue cannot be null");
+		}
+		if (session <= 0) {
+			throw new InvalidSessionException("Session number " + session
+					+ " must be positive");
+		}
+		// venues reachable from source at end of the session
+		Set<Venue> result = new HashSet<>();
+		// the id of the source venue
+		int id = registry.getId(source);
+		for (int i = start(id, session); i < end(id, session); i++) {
+			result.add(registry.getVenue(destinations[i]));
+		}
+		return result;
+	}
+
+	/**
+	 * Passes each venue that you can get to by catching an available shuttle
+	 * service from the source venue at the end of the given session to the
+	 * given action, in order of venue id, straight from the destination array
+	 * without creating a set of the venues.
+	 * 
+	 * @param source
+	 *            the source venue
+	 * @param session
+	 *            the session number
+	 * @param action
+	 *            the action to pass each destination venue to
+	 * @throws NullPointerException
+	 *             if source or action is null
+	 * @throws InvalidSessionException
+	 *             if the session number is not positive
+	 */
+	@Override
+	public void forEachDestination(Venue source, int session,
+			Consumer<? super Venue> action) {
+		if (source == null || action == null) {
+			throw new NullPointerException("Input parameters cannot be null");
+		}
+		if (session <= 0) {
+			throw new InvalidSessionException("Session number " + session
+					+ " must be positive");
+		}
+		// the id of the source venue
+		int id = registry.getId(source);
+		// the end of the destinations of the source venue in the session
+		int end = end(id, session);
+		for (int i = start(id, session); i < end; i++) {
+			action.accept(registry.getVenue(destinations[i]));
+		}
+	}
+
+	/**
+	 * Passes the id of each venue that you can get to by catching an
+	 * available shuttle service from the venue with the given id at the end
+	 * of the given session to the given action, in increasing order, without
+	 * looking up any venue. (Ids that are not issued by the registry of this
+	 * timetable have no destinations.)
+	 * 
+	 * @param source
+	 *            the id of the source venue in the registry of this timetable
+	 * @param session
+	 *            the session number
+	 * @param action
+	 *            the action to pass the id of each destination venue to
+	 * @throws NullPointerException
+	 *             if action is null
+	 * @throws InvalidSessionException
+	 *             if the session number is not positive
+	 */
+	public void forEachDestination(int source, int session,
+			IntConsumer action) {
+		if (action == null) {
+			throw new NullPointerException("Action cannot be null");
+		}
+		if (session <= 0) {
+			throw new InvalidSessionException("Session number " + session
+					+ " must be positive");
+		}
+		// the end of the destinations of the source venue in the session
+		int end = end(source, session);
+		for (int i = start(source, session); i < end; i++) {
+			action.accept(destinations[i]);
+		}
+	}
+
+	/**
+	 * Returns an iterator over the services in the timetable, ordered by the
+	 * id of their source venue, then by session, then by the id of their
+	 * destination venue. (The iterator creates each service as it is returned,
+	 * and does not support removal.)
+	 */
+	@Override
+	public Iterator<Service> iterator() {
+		return new Iterator<Service>() {
+			// the row of the next service
+			private int row = 0;
+			// the position in the destination array of the next service
+			private int position = 0;
+
+			@Override
+			public boolean hasNext() {
+				return position < destinations.length;
+			}
+
+			@Override
+			public Service next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				while (offsets[row + 1] <= position) {
+					row++;
+				}
+				return new Service(registry.getVenue(row / sessions),
+						registry.getVenue(destinations[position++]),
+						row % sessions + 1);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException(
+						"A compact timetable cannot be modified");
+			}
+		};
+	}
+
+	/**
+	 * Returns a list of the services in the timetable, in the order of its
+	 * iterator.
+	 */
+	@Override
+	public String toString() {
+		// the string representation under construction
+		StringBuilder result = new StringBuilder("[");
+		for (Service service : this) {
+			if (result.length() > 1) {
+				result.append(", ");
+			}
+			result.append(service);
+		}
+		return result.append("]").toString();
+	}
+
+	/**
+	 * Determines whether this CompactTimetable is internally consistent (i.e.
+	 * it satisfies its class invariant).
+	 * 
+	 * @return true if this CompactTimetable is internally consistent, and
+	 *         false otherwise.
+	 */
+	public boolean checkInvariant() {
+		if (registry == null || offsets == null || destinations == null
+				|| venues < 0 || venues > registry.size() || sessions < 0
+				|| offsets.length != (long) venues * sessions + 1
+				|| offsets[0] != 0
+				|| offsets[offsets.length - 1] != destinations.length) {
+			return false;
+		}
+		for (int row = 0; row < offsets.length - 1; row++) {
+			if (offsets[row] > offsets[row + 1]) {
+				return false;
+			}
+			for (int i = offsets[row]; i < offsets[row + 1]; i++) {
+				if (destinations[i] < 0 || destinations[i] >= venues
+						|| destinations[i] == row / sessions
+						|| (i > offsets[row] && destinations[i - 1]
+								>= destinations[i])) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+}
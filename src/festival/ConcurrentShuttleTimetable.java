@@ -0,0 +1,425 @@
+package festival;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+
+/**
+ * <p>
+ * A thread-safe representation of the shuttle services between venues at a
+ * festival, which many threads may read while others change it.
+ * </p>
+ * 
+ * <p>
+ * The services departing each source venue are held in a map from session to
+ * the set of destinations, which is never changed once it has been published
+ * in a concurrent map keyed by source venue. Readers look up the map of a
+ * source venue without locking, and so never block. A writer changing the
+ * services of a source venue holds the lock of the stripe that the venue
+ * belongs to, builds a changed copy of the venue's map, and publishes it in
+ * place of the old one.
+ * </p>
+ * 
+ * <p>
+ * A bulk update takes the locks of all the stripes it affects, in ascending
+ * order (so that bulk updates cannot deadlock), before making any of its
+ * changes. It is atomic with respect to other writers, and readers see the
+ * changes to the services of each source venue all at once.
+ * </p>
+ * 
+ * <p>
+ * Iteration is weakly consistent: an iterator never throws
+ * ConcurrentModificationException, returns each service at most once, and
+ * reflects the services of each source venue as they were at some point
+ * during the iteration.
+ * </p>
+ */
+public class ConcurrentShuttleTimetable implements Timetable {
+
+	// the number of stripes the source venues are divided into for writing
+	private static final int STRIPES = 64;
+
+	// the destinations of the services, indexed by source venue and session
+	private ConcurrentMap<Venue, Map<Integer, Set<Venue>>> departures;
+	// the lock of each stripe of source venues
+	private ReentrantLock[] locks;
+	// the number of services in the timetable
+	private AtomicInteger size;
+	// the number of updates that have changed the timetable
+	private AtomicLong version;
+
+	/*
+	 * Invariant: departures != null && locks.length == STRIPES && size != null
+	 * && version != null && the maps and sets in departures are never changed
+	 * once published, and contain no empty maps or sets && when no update is
+	 * in progress, size is the number of services in the timetable
+	 */
+
+	/**
+	 * Constructs a new concurrent shuttle timetable without any services.
+	 */
+	public ConcurrentShuttleTimetable() {
+		departures = new ConcurrentHashMap<>();
+		locks = new ReentrantLock[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			locks[i] = new ReentrantLock();
+		}
+		size = new AtomicInteger();
+		version = new AtomicLong();
+	}
+
+	/**
+	 * Unless the timetable already contains an equivalent service, this method
+	 * adds the given service to the timetable.
+	 * 
+	 * @param service
+	 *            the service to be added to the timetable.
+	 * @throws NullPointerException
+	 *             if service is null
+	 */
+	public void addService(Service service) {
+		if (service == null) {
+			throw new NullPointerException("Service cannot be null");
+		}
+		update(Collections.singleton(service),
+				Collections.<Service> emptySet());
+	}
+
+	/**
+	 * If the timetable contains a service that is equivalent to this one,
+	 * then it is removed from the timetable. If there is no equivalent
+	 * service, then the timetable is unchanged by the operation.
+	 * 
+	 * @param service
+	 *            the service to be removed from the timetable.
+	 */
+	public void removeService(Service service) {
+		if (service != null) {
+			update(Collections.<Service> emptySet(),
+					Collections.singleton(service));
+		}
+	}
+
+	/**
+	 * Atomically removes the given services from the timetable, and then adds
+	 * the given services to it. No other update is made to the timetable while
+	 * this one is in progress.
+	 * 
+	 * (Services to be removed that are not in the timetable, and services to
+	 * be added that already are, are ignored.)
+	 * 
+	 * @param additions
+	 *            the services to be added to the timetable
+	 * @param removals
+	 *            the services to be removed from the timetable
+	 * @throws NullPointerException
+	 *             if either collection is null or contains null, in which
+	 *             case the timetable is unchanged
+	 */
+	public void update(Collection<Service> additions,
+			Collection<Service> removals) {
+		if (additions == null || removals == null) {
+			throw new NullPointerException("Input parameters cannot be null");
+		}
+		// the changes to be made, grouped by source venue
+		Map<Venue, List<Service>> added = group(additions);
+		Map<Venue, List<Service>> removed = group(removals);
+		// the stripes of the source venues affected, in ascending order
+		SortedSet<Integer> stripes = new TreeSet<>();
+		for (Venue source : added.keySet()) {
+			stripes.add(stripe(source));
+		}
+		for (Venue source : removed.keySet()) {
+			stripes.add(stripe(source));
+		}
+		// the stripes whose locks have been taken
+		List<Integer> locked = new ArrayList<>();
+		try {
+			for (int stripe : stripes) {
+				locks[stripe].lock();
+				locked.add(stripe);
+			}
+			// the set of source venues affected
+			Set<Venue> sources = new HashSet<>(added.keySet());
+			sources.addAll(removed.keySet());
+			// true if any of the services were changed
+			boolean changed = false;
+			for (Venue source : sources) {
+				changed |= apply(source, added.get(source),
+						removed.get(source));
+			}
+			if (changed) {
+				version.incrementAndGet();
+			}
+		} finally {
+			for (int stripe : locked) {
+				locks[stripe].unlock();
+			}
+		}
+	}
+
+	/**
+	 * Returns the given services grouped by source venue.
+	 * 
+	 * @throws NullPointerException
+	 *             if any of the services is null
+	 */
+	private static Map<Venue, List<Service>> group(
+			Collection<Service> services) {
+		// the services by source venue
+		Map<Venue, List<Service>> groups = new HashMap<>();
+		for (Service service : services) {
+			if (service == null) {
+				throw new NullPointerException("Services cannot be null");
+			}
+			// the services from the same source venue
+			List<Service> group = groups.get(service.getSource());
+			if (group == null) {
+				group = new ArrayList<>();
+				groups.put(service.getSource(), group);
+			}
+			group.add(service);
+		}
+		return groups;
+	}
+
+	/**
+	 * Publishes a copy of the map of the services departing the given source
+	 * venue with the given services removed and then the given services added
+	 * (either of which may be null), returning true if that changes the map.
+	 * The caller must hold the lock of the venue's stripe.
+	 */
+	private boolean apply(Venue source, List<Service> additions,
+			List<Service> removals) {
+		// the map currently published for the source venue
+		Map<Integer, Set<Venue>> current = departures.get(source);
+		// the copy being changed, with each set copied before changing it
+		Map<Integer, Set<Venue>> copy = current == null ? new HashMap<>()
+				: new HashMap<>(current);
+		// the sessions whose sets in the copy have already been copied
+		Set<Integer> copied = new HashSet<>();
+		// the change in the number of services
+		int delta = 0;
+		// true if any service has been removed or added
+		boolean changed = false;
+		if (removals != null) {
+			for (Service service : removals) {
+				if (!contains(copy, service)) {
+					continue;
+				}
+				// the destinations in the session of the service
+				Set<Venue> destinations = writable(copy, copied,
+						service.getSession());
+				destinations.remove(service.getDestination());
+				if (destinations.isEmpty()) {
+					copy.remove(service.getSession());
+					copied.remove(service.getSession());
+				}
+				delta--;
+				changed = true;
+			}
+		}
+		if (additions != null) {
+			for (Service service : additions) {
+				if (contains(copy, service)) {
+					continue;
+				}
+				writable(copy, copied, service.getSession()).add(
+						service.getDestination());
+				delta++;
+				changed = true;
+			}
+		}
+		if (!changed) {
+			return false;
+		}
+		if (copy.isEmpty()) {
+			departures.remove(source);
+		} else {
+			departures.put(source, copy);
+		}
+		size.addAndGet(delta);
+		return true;
+	}
+
+	/**
+	 * Returns true if the given map of sessions holds the destination of the
+	 * given service in its session.
+	 */
+	private static boolean contains(Map<Integer, Set<Venue>> sessions,
+			Service service) {
+		// the destinations in the session of the service
+		Set<Venue> destinations = sessions.get(service.getSession());
+		return destinations != null
+				&& destinations.contains(service.getDestination());
+	}
+
+	/**
+	 * Returns the set of destinations for the given session in the given map
+	 * of sessions (which is a private copy), first replacing it with a private
+	 * copy of its own, or a new set, unless that has already been done.
+	 */
+	private static Set<Venue> writable(Map<Integer, Set<Venue>> sessions,
+			Set<Integer> copied, int session) {
+		// the destinations in the session
+		Set<Venue> destinations = sessions.get(session);
+		if (copied.add(session)) {
+			destinations = destinations == null ? new HashSet<>()
+					: new HashSet<>(destinations);
+			sessions.put(session, destinations);
+		}
+		return destinations;
+	}
+
+	/**
+	 * Returns the stripe that the given source venue belongs to.
+	 */
+	private static int stripe(Venue source) {
+		// the hash code of the venue, with its high bits spread downwards
+		int hash = source.hashCode();
+		hash ^= hash >>> 16;
+		return (hash & 0x7fffffff) % STRIPES;
+	}
+
+	/**
+	 * Returns the version of the timetable: a counter that starts at 0 and is
+	 * incremented by every update that adds or removes a service.
+	 * 
+	 * @return the version of the timetable
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+	@Override
+	public boolean hasService(Service service) {
+		return service != null
+				&& ShuttleTimetable.contains(departures, service.getSource(),
+						service.getSession(), service.getDestination());
+	}
+
+	/**
+	 * Returns the number of services in the timetable. (While an update is in
+	 * progress, the number may include some of its changes but not others.)
+	 */
+	@Override
+	public int size() {
+		return size.get();
+	}
+
+	@Override
+	public Set<Venue> getDestinations(Venue source, int session) {
+		if (source == null) {
+			throw new NullPointerException("The source venue cannot be null");
+		}
+		if (session <= 0) {
+			throw new InvalidSessionException("Session number " + session
+					+ " must be positive");
+		}
+		return ShuttleTimetable.lookup(departures, source, session);
+	}
+
+	/**
+	 * Passes each venue that you can get to by catching an available shuttle
+	 * service from the source venue at the end of the given session to the
+	 * given action, without creating a set of the venues. (The venues are
+	 * read from the private copy of the sessions of the source venue that was
+	 * current when the call started, so an update in progress is either seen
+	 * in full for the source venue or not at all.)
+	 */
+	@Override
+	public void forEachDestination(Venue source, int session,
+			Consumer<? super Venue> action) {
+		if (source == null || action == null) {
+			throw new NullPointerException("Input parameters cannot be null");
+		}
+		if (session <= 0) {
+			throw new InvalidSessionException("Session number " + session
+					+ " must be positive");
+		}
+		ShuttleTimetable.forEach(departures, source, session, action);
+	}
+
+	/**
+	 * Returns the set of venues from which at least one service in the
+	 * timetable departs. (While an update is in progress, the set may reflect
+	 * some of its changes but not others.)
+	 */
+	@Override
+	public Set<Venue> getSourceVenues() {
+		return new HashSet<>(departures.keySet());
+	}
+
+	/**
+	 * Returns the last session in which a service departs, or 0 if there are
+	 * no services in the timetable. (While an update is in progress, the
+	 * result may reflect some of its changes but not others.)
+	 */
+	@Override
+	public int getLastSession() {
+		return ShuttleTimetable.lastSession(departures);
+	}
+
+	/**
+	 * Returns a weakly consistent iterator over the services in the timetable.
+	 * (Services removed through the iterator are removed from the timetable.)
+	 */
+	@Override
+	public Iterator<Service> iterator() {
+		return new Iterator<Service>() {
+			// the underlying iterator over the services
+			private Iterator<Service> iterator = new TimetableSnapshot(
+					departures, size.get()).iterator();
+			// the service most recently returned by next(), or null if it
+			// has been removed
+			private Service last;
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Service next() {
+				last = iterator.next();
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				if (last == null) {
+					throw new IllegalStateException();
+				}
+				removeService(last);
+				last = null;
+			}
+		};
+	}
+
+	/**
+	 * Returns a list of the services in the timetable, in the order of its
+	 * iterator.
+	 */
+	@Override
+	public String toString() {
+		return new TimetableSnapshot(departures, size.get()).toString();
+	}
+
+	/**
+	 * Determines whether this ConcurrentShuttleTimetable is internally
+	 * consistent (i.e. it satisfies its class invariant). (The result is only
+	 * meaningful while no update is in progress.)
+	 * 
+	 * @return true if this ConcurrentShuttleTimetable is internally
+	 *         consistent, and false otherwise.
+	 */
+	public boolean checkInvariant() {
+		return departures != null && locks != null && locks.length == STRIPES
+				&& size != null && version != null
+				&& new TimetableSnapshot(departures, size.get())
+						.checkInvariant();
+	}
+
+}
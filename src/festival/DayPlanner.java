@@ -1,28 +1,142 @@
 package festival;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
 
 /**
  * A class with functionality for helping a festival-goer to plan their day at a
  * festival.
  */
-public class DayPlanner {
+public class DayPlanner implements AutoCloseable {
 
-	// the timetable of the festival
-	private ShuttleTimetable timetable;
+	// the number of plans checked by one task before it is split up
+	private static final int PLANS_PER_TASK = 1024;
+	// the number of plans read from an iterator before they are checked
+	private static final int PLANS_PER_BATCH = 1 << 16;
+
+	// a snapshot of the timetable of the festival, or the timetable itself
+	// if the day-planner follows its changes
+	private Timetable timetable;
+	// answers whether one venue can be reached from another in time, or null
+	// until the first plan is checked (or a change to a followed timetable
+	// could not be applied to it)
+	private Reachability reachability;
+	// the timetable whose changes the day-planner follows, or null if it
+	// does not follow changes
+	private ShuttleTimetable followed;
+	// the listener keeping the reachability engine up to date with the
+	// followed timetable, or null if there is none
+	private TimetableListener listener;
 
 	/**
 	 * @require timetable!=null
-	 * @ensure Creates a new day planner for a festival with a copy of the given
-	 *         shuttle timetable (so that changes to the parameter timetable
-	 *         from outside of this class won't affect the timetable of the
-	 *         day-planner.)
+	 * @ensure Creates a new day planner for a festival with a snapshot of the
+	 *         given shuttle timetable (so that changes to the parameter
+	 *         timetable from outside of this class won't affect the timetable
+	 *         of the day-planner.) The snapshot shares its services with the
+	 *         parameter timetable rather than copying them, and the
+	 *         reachability structures are built when the first plan is
+	 *         checked, and shared by all the day-planners created from the
+	 *         timetable while it is unchanged.
 	 */
 	public DayPlanner(ShuttleTimetable timetable) {
-		this.timetable = new ShuttleTimetable();
-		for (Service service : timetable) {
-			this.timetable.addService(service);
+		this(timetable, false);
+	}
+
+	/**
+	 * @require timetable!=null
+	 * @ensure If live is false, creates a new day planner for a festival with
+	 *         a snapshot of the given shuttle timetable, as for
+	 *         DayPlanner(ShuttleTimetable).
+	 * 
+	 *         If live is true, creates a new day planner for a festival that
+	 *         follows the changes made to the given shuttle timetable until
+	 *         detach() is called. Each service added to or removed from the
+	 *         timetable is applied to the day-planner's reachability structures
+	 *         in time independent of the size of the timetable (unless it
+	 *         involves a venue or session that is new to the day-planner, in
+	 *         which case they are discarded, and rebuilt when the next plan is
+	 *         checked). The timetable must not be changed while the
+	 *         day-planner is checking plans.
+	 * 
+	 *         A day-planner that follows a timetable is registered with it,
+	 *         so the timetable keeps the day-planner and its reachability
+	 *         structures from being garbage collected until detach() or
+	 *         close() is called. A live day-planner should therefore be
+	 *         closed when it is no longer needed (for instance by creating
+	 *         it in a try-with-resources statement).
+	 */
+	public DayPlanner(ShuttleTimetable timetable, boolean live) {
+		if (!live) {
+			this.timetable = timetable.share();
+		} else {
+			this.timetable = timetable;
+			followed = timetable;
+			listener = new TimetableListener() {
+				@Override
+				public void serviceAdded(Service service) {
+					update(service, true);
+				}
+
+				@Override
+				public void serviceRemoved(Service service) {
+					update(service, false);
+				}
+			};
+			timetable.addListener(listener);
+		}
+	}
+
+	/**
+	 * Applies the addition (if added is true) or removal of the given service
+	 * from the timetable to the reachability engine (if it has been built),
+	 * discarding it if the change cannot be applied incrementally.
+	 */
+	private void update(Service service, boolean added) {
+		if (reachability != null && !reachability.update(service, added)) {
+			reachability = null;
+			Instrumentation.get().count("planner.rebuilds", 1);
+		}
+	}
+
+	/**
+	 * Returns the reachability engine for the timetable, building it if it
+	 * has not been built yet (or taking the engine shared by the day-planners
+	 * of a snapshot).
+	 */
+	private Reachability reachability() {
+		if (reachability == null) {
+			reachability = timetable instanceof TimetableSnapshot
+					? ((TimetableSnapshot) timetable).getReachability()
+					: new Reachability(timetable);
 		}
+		return reachability;
+	}
+
+	/**
+	 * @ensure If the day-planner follows the changes made to its timetable,
+	 *         it stops doing so, and keeps a snapshot of the timetable as it
+	 *         is now. Otherwise this method has no effect.
+	 */
+	public void detach() {
+		if (followed != null) {
+			followed.removeListener(listener);
+			timetable = followed.share();
+			followed = null;
+			listener = null;
+		}
+	}
+
+	/**
+	 * @ensure Stops the day-planner following the changes made to its
+	 *         timetable, as for detach(), so that the timetable no longer
+	 *         keeps it from being garbage collected. The day-planner can still
+	 *         be used afterwards.
+	 */
+	@Override
+	public void close() {
+		detach();
 	}
 
 	/**
@@ -43,7 +157,191 @@ public class DayPlanner {
 	 *         See the assignment hand-out for details.
 	 */
 	public boolean compatible(List<Event> plan) {
-		return false; // REMOVE THIS LINE AND WRITE THIS METHOD
+		// the engine answering the reachability queries of the check
+		Reachability engine = reachability();
+		// the metrics the check is reported to
+		Metrics metrics = Instrumentation.get();
+		if (!metrics.isEnabled()) {
+			return compatible(plan, engine.newSet(), engine.newSet());
+		}
+		// the time at which the check started
+		long started = System.nanoTime();
+		// true if the plan is compatible
+		boolean compatible = compatible(plan, engine.newSet(),
+				engine.newSet());
+		metrics.record("planner.check", System.nanoTime() - started);
+		metrics.count("planner.plans", 1);
+		return compatible;
+	}
+
+	/**
+	 * Returns whether the given plan is compatible, as for compatible(List),
+	 * using the two given sets (created by reachability.newSet()) as scratch
+	 * space for the reachability sweeps.
+	 */
+	private boolean compatible(List<Event> plan, long[] current, long[] next) {
+		// the event before the one being checked
+		Event previous = null;
+		for (Event event : plan) {
+			if (previous != null) {
+				// events are ordered by session, so a repeated event or a
+				// second event in the same session follows immediately
+				if (event.getSession() <= previous.getSession()) {
+					return false;
+				}
+				if (!reachability.canReach(previous.getVenue(),
+						previous.getSession(), event.getVenue(),
+						event.getSession(), current, next)) {
+					return false;
+				}
+			}
+			previous = event;
+		}
+		return true;
+	}
+
+	/**
+	 * @require plans!=null && each plan in plans satisfies the requirements of
+	 *          compatible(List)
+	 * @ensure Returns a bit set in which bit i is set exactly when
+	 *         compatible(plans.get(i)) is true.
+	 * 
+	 *         The plans are checked in parallel on the common fork-join pool,
+	 *         sharing the reachability structures of the day-planner, which are
+	 *         built (if need be) before any plan is checked.
+	 */
+	public BitSet compatibleAll(List<List<Event>> plans) {
+		// the plans, in a list that can be indexed in constant time
+		List<List<Event>> indexed = plans instanceof RandomAccess ? plans
+				: new ArrayList<>(plans);
+		// the words of the result under construction
+		long[] words = new long[Bits.words(indexed.size())];
+		// the engine is built here, before the tasks checking the plans
+		// share it
+		reachability();
+		// the metrics the checks are reported to
+		Metrics metrics = Instrumentation.get();
+		// the time at which the checks started
+		long started = metrics.isEnabled() ? System.nanoTime() : 0;
+		ForkJoinPool.commonPool().invoke(
+				new PlanCheck(indexed, 0, indexed.size(), words));
+		if (metrics.isEnabled()) {
+			metrics.record("planner.time", System.nanoTime() - started);
+			metrics.count("planner.plans", indexed.size());
+		}
+		return BitSet.valueOf(words);
+	}
+
+	/**
+	 * @require plans!=null && each plan returned by plans satisfies the
+	 *          requirements of compatible(List)
+	 * @ensure Returns a bit set in which bit i is set exactly when the i-th
+	 *         plan returned by the iterator is compatible (as per
+	 *         compatible(List)).
+	 * 
+	 *         The plans are read from the iterator in batches, and the plans in
+	 *         each batch are checked in parallel on the common fork-join pool,
+	 *         so that only one batch of plans needs to be in memory at a time.
+	 */
+	public BitSet compatibleAll(Iterator<List<Event>> plans) {
+		// the result under construction
+		BitSet result = new BitSet();
+		// the index of the first plan of the current batch
+		int offset = 0;
+		// the current batch of plans
+		List<List<Event>> batch = new ArrayList<>();
+		while (plans.hasNext()) {
+			batch.clear();
+			while (plans.hasNext() && batch.size() < PLANS_PER_BATCH) {
+				batch.add(plans.next());
+			}
+			// the plans in the batch that are compatible
+			BitSet compatible = compatibleAll(batch);
+			for (int i = compatible.nextSetBit(0); i >= 0; i =
+					compatible.nextSetBit(i + 1)) {
+				result.set(offset + i);
+			}
+			offset += batch.size();
+		}
+		return result;
+	}
+
+	/**
+	 * @require plans!=null && each plan in the stream satisfies the
+	 *          requirements of compatible(List)
+	 * @ensure Returns a bit set in which bit i is set exactly when the i-th
+	 *         plan of the stream (in encounter order) is compatible (as per
+	 *         compatible(List)). See compatibleAll(Iterator).
+	 */
+	public BitSet compatibleAll(Stream<List<Event>> plans) {
+		return compatibleAll(plans.iterator());
+	}
+
+	/**
+	 * A fork-join task that checks a range of plans for compatibility,
+	 * recording the result for plan i in bit i of an array of words.
+	 */
+	@SuppressWarnings("serial")
+	private class PlanCheck extends RecursiveAction {
+
+		// the plans to check
+		private List<List<Event>> plans;
+		// the index of the first plan in the range
+		private int from;
+		// the index after the last plan in the range
+		private int to;
+		// the words of the result
+		private long[] words;
+
+		/*
+		 * Invariant: from is a multiple of 64 (so that no two tasks write to
+		 * the same word of the result)
+		 */
+
+		/**
+		 * Creates a task to check the plans from index from up to (but not
+		 * including) index to.
+		 */
+		private PlanCheck(List<List<Event>> plans, int from, int to,
+				long[] words) {
+			this.plans = plans;
+			this.from = from;
+			this.to = to;
+			this.words = words;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > PLANS_PER_TASK) {
+				// the start of the second half, rounded to a whole word
+				int middle = ((from + to) >>> 1) & ~63;
+				invokeAll(new PlanCheck(plans, from, middle, words),
+						new PlanCheck(plans, middle, to, words));
+				return;
+			}
+			// scratch space for the reachability sweeps
+			long[] current = reachability.newSet();
+			long[] next = reachability.newSet();
+			// the metrics the latency of each check is reported to
+			Metrics metrics = Instrumentation.get();
+			if (metrics.isEnabled()) {
+				for (int i = from; i < to; i++) {
+					// the time at which the check started
+					long started = System.nanoTime();
+					if (compatible(plans.get(i), current, next)) {
+						words[i >>> 6] |= 1L << i;
+					}
+					metrics.record("planner.check", System.nanoTime()
+							- started);
+				}
+				return;
+			}
+			for (int i = from; i < to; i++) {
+				if (compatible(plans.get(i), current, next)) {
+					words[i >>> 6] |= 1L << i;
+				}
+			}
+		}
 	}
 
 }
@@ -1,5 +1,7 @@
 package festival;
 
+import java.io.*;
+
 /**
  * <p>
  * An immutable class representing an event at a music festival.
@@ -19,8 +21,13 @@ public class Event implements Comparable<Event> {
 	private int session;
 	// a description of the act that is playing at this event
 	private String act;
+	// the hash code of the event (computed once, since it is immutable)
+	private int hash;
 
-	/* Invariant: venue!= null && act != null && 0 < session */
+	/*
+	 * Invariant: venue!= null && act != null && 0 < session &&
+	 * hash == hash(venue, session, act)
+	 */
 
 	/**
 	 * Creates a new event for the given venue, session and act.
@@ -47,6 +54,7 @@ public class Event implements Comparable<Event> {
 		this.venue = venue;
 		this.session = session;
 		this.act = act;
+		this.hash = hash(venue, session, act);
 	}
 
 	/**
@@ -89,6 +97,20 @@ public class Event implements Comparable<Event> {
 		return act + ": session " + session + " at " + venue;
 	}
 
+	/**
+	 * Writes the string representation of this event (as returned by
+	 * toString) to the given output, without building the string first.
+	 * 
+	 * @param out
+	 *            the output to write to
+	 * @throws IOException
+	 *             if there is an error writing to the output
+	 */
+	void writeTo(Appendable out) throws IOException {
+		out.append(act).append(": session ").append(Integer.toString(session))
+				.append(" at ").append(venue.getName());
+	}
+
 	/**
 	 * <p>
 	 * Returns true if and only if the given object is an Event with the same
@@ -108,8 +130,8 @@ public class Event implements Comparable<Event> {
 			return false;
 		}
 		Event event = (Event) object; // event to compare
-		return (this.venue.equals(event.venue))
-				&& (this.session == event.session)
+		return (this.session == event.session)
+				&& (this.venue.equals(event.venue))
 				&& (this.act.equals(event.act));
 	}
 
@@ -121,6 +143,16 @@ public class Event implements Comparable<Event> {
 	 */
 	@Override
 	public int hashCode() {
+		return hash;
+	}
+
+	/**
+	 * Returns the hash code of an event with the given venue, session and act
+	 * (so that an {@link EventPool} can look up an event without creating
+	 * one). The hash code of an event is computed once, when it is created,
+	 * rather than hashing its act each time the event is hashed.
+	 */
+	static int hash(Venue venue, int session, String act) {
 		// creates a polynomial hashcode based on the fields of the event.
 		final int prime = 31; // an odd base prime
 		int result = 1; // the hash code under construction
@@ -156,6 +188,7 @@ public class Event implements Comparable<Event> {
 	 * @return true if this Event is internally consistent, and false otherwise.
 	 */
 	public boolean checkInvariant() {
-		return (venue != null && act != null && session > 0);
+		return (venue != null && act != null && session > 0
+				&& hash == hash(venue, session, act));
 	}
 }
@@ -0,0 +1,215 @@
+package festival;
+
+import java.util.*;
+
+/**
+ * <p>
+ * A mutable pool of canonical events, so that structurally identical events
+ * created from the same pool are the same object. The acts of the events are
+ * interned too, so that events for the same act in different sessions or at
+ * different venues share one string.
+ * </p>
+ * 
+ * <p>
+ * An event is looked up by its venue, session and act without creating an
+ * event object first, so that only the first request for each event
+ * allocates one. The pool is an open-addressing hash table of the events.
+ * Events cannot be removed from a pool, so a pool keeps each event it has
+ * issued for as long as the pool itself is in use.
+ * </p>
+ * 
+ * <p>
+ * A pool is not safe for use by multiple threads at once without external
+ * synchronisation.
+ * </p>
+ */
+public class EventPool {
+
+	/*
+	 * an open-addressing hash table of the events in the pool (null marks an
+	 * empty slot); its length is always a power of two
+	 */
+	private Event[] table;
+	// the number of events in the pool
+	private int size;
+	// the canonical acts of the events in the pool
+	private Map<String, String> acts;
+
+	/*
+	 * Invariant: table != null && table.length is a power of two &&
+	 * size * 2 <= table.length && size is the number of events in table &&
+	 * no two events in table are equal && each event in table is found by
+	 * probing from the slot chosen by its hash code && acts != null && the
+	 * act of each event in table is the value in acts for that act
+	 */
+
+	/**
+	 * Creates a new pool without any events.
+	 */
+	public EventPool() {
+		table = new Event[32];
+		size = 0;
+		acts = new HashMap<>();
+	}
+
+	/**
+	 * Returns the canonical event in the pool with the given venue, session
+	 * and act, adding a new event to the pool if there is no such event in it
+	 * yet.
+	 * 
+	 * @param venue
+	 *            the venue of the event
+	 * @param session
+	 *            the session number of the event
+	 * @param act
+	 *            the act that will be on at this event
+	 * @return the canonical event in this pool with the given venue, session
+	 *         and act
+	 * @throws NullPointerException
+	 *             if either parameter venue or act is null
+	 * @throws InvalidSessionException
+	 *             if session is not a positive integer
+	 */
+	public Event intern(Venue venue, int session, String act) {
+		if (venue == null || act == null) {
+			throw new NullPointerException("Parameters cannot be null");
+		}
+		// the slot in the table being probed
+		int slot = find(venue, session, act);
+		if (table[slot] == null) {
+			return add(slot, new Event(venue, session, internAct(act)));
+		}
+		return table[slot];
+	}
+
+	/**
+	 * Returns the canonical event in the pool that is equal to the given
+	 * event, adding an event equal to the given one to the pool if there is
+	 * no such event in it yet (the given event itself, unless an equal act has
+	 * already been interned).
+	 * 
+	 * @param event
+	 *            the event to intern
+	 * @return the canonical event in this pool equal to the given event
+	 * @throws NullPointerException
+	 *             if event is null
+	 */
+	public Event intern(Event event) {
+		if (event == null) {
+			throw new NullPointerException("Event cannot be null");
+		}
+		// the slot in the table being probed
+		int slot = find(event.getVenue(), event.getSession(), event.getAct());
+		if (table[slot] == null) {
+			// the canonical act of the event
+			String act = internAct(event.getAct());
+			return add(slot, act == event.getAct() ? event : new Event(
+					event.getVenue(), event.getSession(), act));
+		}
+		return table[slot];
+	}
+
+	/**
+	 * Returns the number of events in the pool.
+	 * 
+	 * @return the number of events in the pool
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the canonical act equal to the given act, making it canonical
+	 * if there is none.
+	 */
+	private String internAct(String act) {
+		// the canonical act
+		String canonical = acts.get(act);
+		if (canonical == null) {
+			acts.put(act, act);
+			canonical = act;
+		}
+		return canonical;
+	}
+
+	/**
+	 * Returns the slot of the table holding the event with the given venue,
+	 * session and act, or the empty slot at which it would be added.
+	 */
+	private int find(Venue venue, int session, String act) {
+		// the slot in the table being probed
+		int slot = mix(Event.hash(venue, session, act)) & (table.length - 1);
+		while (table[slot] != null) {
+			// the event in the slot
+			Event event = table[slot];
+			if (event.getSession() == session && event.getVenue().equals(venue)
+					&& event.getAct().equals(act)) {
+				break;
+			}
+			slot = (slot + 1) & (table.length - 1);
+		}
+		return slot;
+	}
+
+	/**
+	 * Adds the given event to the table at the given empty slot, resizing the
+	 * table if it has become too full, and returns the event.
+	 */
+	private Event add(int slot, Event event) {
+		table[slot] = event;
+		if (++size * 2 > table.length) {
+			// the table before resizing
+			Event[] old = table;
+			table = new Event[2 * old.length];
+			for (Event entry : old) {
+				if (entry != null) {
+					table[find(entry.getVenue(), entry.getSession(),
+							entry.getAct())] = entry;
+				}
+			}
+		}
+		return event;
+	}
+
+	/**
+	 * Spreads the bits of the given hash, so that the low bits used to choose
+	 * a slot depend on all of them.
+	 */
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	@Override
+	public String toString() {
+		return "EventPool[" + size + " events, " + acts.size() + " acts]";
+	}
+
+	/**
+	 * Determines whether this EventPool is internally consistent (i.e. it
+	 * satisfies its class invariant).
+	 * 
+	 * @return true if this EventPool is internally consistent, and false
+	 *         otherwise.
+	 */
+	public boolean checkInvariant() {
+		if (table == null || Integer.bitCount(table.length) != 1
+				|| size * 2 > table.length || acts == null) {
+			return false;
+		}
+		// the number of events in the table
+		int count = 0;
+		for (Event event : table) {
+			if (event != null) {
+				count++;
+				if (table[find(event.getVenue(), event.getSession(),
+						event.getAct())] != event
+						|| acts.get(event.getAct()) != event.getAct()) {
+					return false;
+				}
+			}
+		}
+		return count == size;
+	}
+
+}
@@ -6,17 +6,106 @@ package festival;
 @SuppressWarnings("serial")
 public class FormatException extends Exception {
 
+	/**
+	 * The kinds of format error found in timetable and line-up files.
+	 */
+	public enum Kind {
+		/** The first line does not give a positive number of sessions. */
+		HEADER,
+		/** An empty line is found where a venue name is expected. */
+		EMPTY_LINE,
+		/** A venue name contains whitespace. */
+		VENUE_NAME,
+		/** A venue has more than one description. */
+		DUPLICATE_VENUE,
+		/** The file ends before the last session line of a venue. */
+		MISSING_SESSION,
+		/** A session line does not start with the expected session number. */
+		SESSION_NUMBER,
+		/** A service runs from a venue to itself. */
+		SELF_SERVICE,
+		/** A service is described more than once. */
+		DUPLICATE_SERVICE,
+		/** The description of a venue is not followed by an empty line. */
+		MISSING_EMPTY_LINE,
+		/** A line of a line-up file does not describe an event. */
+		EVENT,
+		/** Two events in a line-up file are in the same venue and session. */
+		CLASH,
+		/** Any other error. */
+		OTHER
+	}
+
+	// the kind of the error
+	private final Kind kind;
+	// the number of the line of the error, or 0 if it is not known
+	private final int line;
+	// the number of the column of the error, or 0 if it is not known
+	private final int column;
+
 	/**
 	 * Constructs a new exception with null as its detail message.
 	 */
 	public FormatException() {
-		super();
+		this(Kind.OTHER, null, 0, 0);
 	}
 
 	/**
 	 * Constructs a new exception with the specified detail message.
 	 */
 	public FormatException(String message) {
+		this(Kind.OTHER, message, 0, 0);
+	}
+
+	/**
+	 * Constructs a new exception for an error of the given kind with the
+	 * specified detail message.
+	 * 
+	 * @throws NullPointerException
+	 *             if kind is null
+	 */
+	public FormatException(Kind kind, String message) {
+		this(kind, message, 0, 0);
+	}
+
+	/**
+	 * Constructs a new exception for an error of the given kind, found at the
+	 * given line and column of a file (each counted from 1, or 0 if not
+	 * known), with the specified detail message.
+	 * 
+	 * @throws NullPointerException
+	 *             if kind is null
+	 */
+	public FormatException(Kind kind, String message, int line, int column) {
 		super(message);
+		if (kind == null) {
+			throw new NullPointerException("Kind cannot be null");
+		}
+		this.kind = kind;
+		this.line = line;
+		this.column = column;
+	}
+
+	/**
+	 * Returns the kind of the error (OTHER if it was not given).
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * Returns the number of the line of the file on which the error was found
+	 * (counted from 1), or 0 if it is not known.
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * Returns the number of the column of the line at which the error was
+	 * found (counted from 1, in characters), or 0 if it is not known.
+	 */
+	public int getColumn() {
+		return column;
 	}
 }
@@ -0,0 +1,125 @@
+package festival;
+
+import java.lang.management.*;
+import javax.management.*;
+
+/**
+ * <p>
+ * Holds the metrics that the classes of the festival package report their
+ * measurements to. Instrumentation is disabled until metrics are installed.
+ * </p>
+ * 
+ * <p>
+ * The measurements made are:
+ * </p>
+ * <ul>
+ * <li>by ScheduleReader: the counters "reader.bytes", "reader.lines" and
+ * "reader.files" for each file read, the latency "reader.time" of reading a
+ * whole file, and the counter "reader.errors.KIND" for each format error of
+ * the given {@link FormatException.Kind};</li>
+ * <li>by ShuttleTimetable: the gauges "timetable.size" and
+ * "timetable.index.bytes" (an estimate of the memory used by its indexes)
+ * of the timetable most recently changed, and the latency
+ * "timetable.lookup" of getDestinations, getSources, forEachDestination
+ * and forEachSource;</li>
+ * <li>by LineUp: the gauge "lineup.events" of the line-up most recently
+ * changed, and the counter "lineup.clashes" of events (or batches of
+ * events) rejected because their slot was taken;</li>
+ * <li>by DayPlanner: the counter "planner.plans" of plans checked, the
+ * counter "planner.rebuilds" of changes to a followed timetable that made a
+ * day-planner discard its reachability engine, and the latencies
+ * "planner.check" of checking one plan and "planner.time" of checking a list
+ * of plans in parallel;</li>
+ * <li>by QueryCache: the counters "cache.hits" and "cache.misses".</li>
+ * </ul>
+ */
+public final class Instrumentation {
+
+	// the name under which the metrics are registered as an MBean
+	private static final String MBEAN_NAME = "festival:type=Metrics";
+
+	// the metrics that measurements are reported to
+	private static volatile Metrics metrics = Metrics.NONE;
+
+	/**
+	 * This class cannot be instantiated.
+	 */
+	private Instrumentation() {
+	}
+
+	/**
+	 * Returns the metrics that measurements are reported to.
+	 * 
+	 * @return the installed metrics, or {@link Metrics#NONE} if
+	 *         instrumentation is disabled
+	 */
+	public static Metrics get() {
+		return metrics;
+	}
+
+	/**
+	 * Installs the given metrics, so that measurements are reported to them
+	 * from now on.
+	 * 
+	 * @param metrics
+	 *            the metrics to install ({@link Metrics#NONE} to disable
+	 *            instrumentation)
+	 * @throws NullPointerException
+	 *             if metrics is null
+	 */
+	public static void set(Metrics metrics) {
+		if (metrics == null) {
+			throw new NullPointerException("Metrics cannot be null");
+		}
+		Instrumentation.metrics = metrics;
+	}
+
+	/**
+	 * Installs new recording metrics, and registers them with the platform
+	 * MBean server under the name "festival:type=Metrics" (replacing any
+	 * metrics registered under that name), so that they can be inspected with
+	 * a JMX console.
+	 * 
+	 * @return the metrics installed
+	 * @throws IllegalStateException
+	 *             if the metrics cannot be registered
+	 */
+	public static RecordingMetrics enable() {
+		// the metrics to install
+		RecordingMetrics recording = new RecordingMetrics();
+		// the server to register them with
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			// the name to register them under
+			ObjectName name = new ObjectName(MBEAN_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(recording, name);
+		} catch (JMException e) {
+			throw new IllegalStateException(e);
+		}
+		set(recording);
+		return recording;
+	}
+
+	/**
+	 * Disables instrumentation, and unregisters any metrics registered by
+	 * {@link #enable()}.
+	 */
+	public static void disable() {
+		set(Metrics.NONE);
+		// the server the metrics may be registered with
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			// the name they are registered under
+			ObjectName name = new ObjectName(MBEAN_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
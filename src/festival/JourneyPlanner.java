@@ -0,0 +1,292 @@
+package festival;
+
+import java.util.*;
+
+/**
+ * <p>
+ * An immutable engine that finds, for a festival-goer at a venue in a given
+ * session, the earliest session in which they can be at each other venue,
+ * and a journey (a sequence of shuttle services) that gets them there.
+ * </p>
+ * 
+ * <p>
+ * The engine uses the connection scan algorithm: the services of the timetable
+ * are sorted by session once, when the engine is created, and a query makes a
+ * single pass over the services departing in or after its starting session.
+ * Among the journeys with the earliest arrival at a venue, the engine finds
+ * one with the fewest shuttle rides.
+ * </p>
+ */
+public class JourneyPlanner {
+
+	// the registry issuing the ids of the venues
+	private VenueRegistry registry;
+	// the number of venue ids covered by the engine
+	private int venues;
+	// the last session in which a service departs (0 if there are none)
+	private int sessions;
+	// the source venue ids of the services, ordered by session
+	private int[] sources;
+	// the destination venue ids of the services, ordered by session
+	private int[] destinations;
+	/*
+	 * the services departing at the end of session s are those from index
+	 * firstService[s - 1] up to (but not including) firstService[s]
+	 */
+	private int[] firstService;
+
+	/*
+	 * Invariant: registry != null && 0 <= venues <= registry.size() &&
+	 * sources.length == destinations.length && firstService.length ==
+	 * sessions + 1 && firstService[0] == 0 && firstService is non-decreasing
+	 * && firstService[sessions] == sources.length
+	 */
+
+	/**
+	 * Creates a journey planner for the services in the given timetable, using
+	 * a new registry to issue the ids of its venues.
+	 * 
+	 * @param timetable
+	 *            the timetable of the festival
+	 * @throws NullPointerException
+	 *             if timetable is null
+	 */
+	public JourneyPlanner(Timetable timetable) {
+		this(timetable instanceof CompactTimetable ? (CompactTimetable) timetable
+				: new CompactTimetable(timetable));
+	}
+
+	/**
+	 * Creates a journey planner for the services in the given compact
+	 * timetable, sharing the registry of the compact timetable.
+	 * 
+	 * @param timetable
+	 *            the timetable of the festival
+	 * @throws NullPointerException
+	 *             if timetable is null
+	 */
+	public JourneyPlanner(CompactTimetable timetable) {
+		registry = timetable.getRegistry();
+		venues = timetable.getVenueCount();
+		sessions = timetable.getLastSession();
+		sources = new int[timetable.size()];
+		destinations = new int[timetable.size()];
+		firstService = new int[sessions + 1];
+		// count the services in each session, then turn the counts into the
+		// index of the first service of each session
+		for (int source = 0; source < venues; source++) {
+			for (int session = 1; session <= sessions; session++) {
+				firstService[session] +=
+						timetable.end(source, session)
+								- timetable.start(source, session);
+			}
+		}
+		for (int session = 1; session <= sessions; session++) {
+			firstService[session] += firstService[session - 1];
+		}
+		// the next free index in each session
+		int[] next = Arrays.copyOf(firstService, sessions);
+		for (int source = 0; source < venues; source++) {
+			for (int session = 1; session <= sessions; session++) {
+				for (int i = timetable.start(source, session); i < timetable
+						.end(source, session); i++) {
+					sources[next[session - 1]] = source;
+					destinations[next[session - 1]] = timetable.destination(i);
+					next[session - 1]++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the registry issuing the ids of the venues known to this
+	 * planner.
+	 * 
+	 * @return the registry of this planner
+	 */
+	public VenueRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Finds the earliest session in which a festival-goer who is at the given
+	 * venue during the given session can be at each other venue (catching at
+	 * most one shuttle service at the end of each session), and for each venue
+	 * a journey with the fewest shuttle rides among those arriving then.
+	 * 
+	 * @param start
+	 *            the starting venue
+	 * @param afterSession
+	 *            the session spent at the starting venue
+	 * @return the earliest arrivals at, and journeys to, every venue
+	 * @throws NullPointerException
+	 *             if start is null
+	 * @throws InvalidSessionException
+	 *             if afterSession is not positive
+	 */
+	public Journeys earliestArrivals(Venue start, int afterSession) {
+		if (start == null) {
+			throw new NullPointerException("The start venue cannot be null");
+		}
+		if (afterSession <= 0) {
+			throw new InvalidSessionException("Session number " + afterSession
+					+ " must be positive");
+		}
+		// the labels of the journeys found, starting with the empty journey
+		Labels labels = new Labels();
+		// the id of the start venue
+		int origin = registry.getId(start);
+		labels.add(origin, afterSession, 0, -1, -1);
+		/*
+		 * best[v] is the label of the journey to the venue with id v with the
+		 * fewest rides among those found so far, and first[v] is the label of
+		 * the journey with the earliest arrival, or -1 if there are none
+		 */
+		int[] best = new int[venues];
+		int[] first = new int[venues];
+		Arrays.fill(best, -1);
+		Arrays.fill(first, -1);
+		if (origin < 0 || origin >= venues) {
+			return new Journeys(this, start, afterSession, first, labels);
+		}
+		best[origin] = first[origin] = 0;
+		/*
+		 * the best journey found into each venue at the end of the current
+		 * session, as its number of rides, the label it extends and the index
+		 * of its last service, valid only where stamp[v] is the session
+		 */
+		int[] stamp = new int[venues];
+		int[] rides = new int[venues];
+		int[] parent = new int[venues];
+		int[] service = new int[venues];
+		// the ids of the venues reached at the end of the current session
+		int[] touched = new int[venues];
+		for (int session = afterSession; session <= sessions; session++) {
+			// the number of venues reached at the end of the session
+			int count = 0;
+			for (int i = firstService[session - 1]; i < firstService[session];
+					i++) {
+				// the label of the journey to the source of the service
+				int label = best[sources[i]];
+				if (label < 0) {
+					continue;
+				}
+				// the destination of the service
+				int destination = destinations[i];
+				if (stamp[destination] != session) {
+					stamp[destination] = session;
+					touched[count++] = destination;
+				} else if (rides[destination] <= labels.rides[label] + 1) {
+					continue;
+				}
+				rides[destination] = labels.rides[label] + 1;
+				parent[destination] = label;
+				service[destination] = i;
+			}
+			// only now may the journeys found be extended, since at most one
+			// service can be caught at the end of each session
+			for (int j = 0; j < count; j++) {
+				// the venue reached
+				int venue = touched[j];
+				if (best[venue] < 0
+						|| rides[venue] < labels.rides[best[venue]]) {
+					best[venue] = labels.add(venue, session + 1, rides[venue],
+							parent[venue], service[venue]);
+					if (first[venue] < 0) {
+						first[venue] = best[venue];
+					}
+				}
+			}
+		}
+		return new Journeys(this, start, afterSession, first, labels);
+	}
+
+	/**
+	 * Returns the service at the given index in the order of this planner.
+	 */
+	Service getService(int index) {
+		// the bounds on the session in which the service departs, which is the
+		// first session s with firstService[s] > index
+		int low = 1;
+		int high = sessions;
+		while (low < high) {
+			// the session halfway between the bounds
+			int middle = (low + high) >>> 1;
+			if (firstService[middle] > index) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return new Service(registry.getVenue(sources[index]),
+				registry.getVenue(destinations[index]), low);
+	}
+
+	/**
+	 * Returns the number of venue ids covered by this planner.
+	 */
+	int getVenueCount() {
+		return venues;
+	}
+
+	/**
+	 * Determines whether this JourneyPlanner is internally consistent (i.e. it
+	 * satisfies its class invariant).
+	 * 
+	 * @return true if this JourneyPlanner is internally consistent, and false
+	 *         otherwise.
+	 */
+	public boolean checkInvariant() {
+		if (registry == null || venues < 0 || venues > registry.size()
+				|| sources == null || destinations == null
+				|| sources.length != destinations.length
+				|| firstService == null || firstService.length != sessions + 1
+				|| firstService[0] != 0
+				|| firstService[sessions] != sources.length) {
+			return false;
+		}
+		for (int session = 1; session <= sessions; session++) {
+			if (firstService[session - 1] > firstService[session]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The journeys found by a query, each one a label recording the venue it
+	 * reaches, the session it arrives for, its number of rides, the label of
+	 * the journey it extends and the index of the service it ends with.
+	 */
+	static final class Labels {
+
+		// the fields of each label, indexed by label
+		int[] venue = new int[16];
+		int[] session = new int[16];
+		int[] rides = new int[16];
+		int[] parent = new int[16];
+		int[] service = new int[16];
+		// the number of labels
+		int size = 0;
+
+		/**
+		 * Adds a label with the given fields, returning its index.
+		 */
+		int add(int venue, int session, int rides, int parent, int service) {
+			if (size == this.venue.length) {
+				this.venue = Arrays.copyOf(this.venue, 2 * size);
+				this.session = Arrays.copyOf(this.session, 2 * size);
+				this.rides = Arrays.copyOf(this.rides, 2 * size);
+				this.parent = Arrays.copyOf(this.parent, 2 * size);
+				this.service = Arrays.copyOf(this.service, 2 * size);
+			}
+			this.venue[size] = venue;
+			this.session[size] = session;
+			this.rides[size] = rides;
+			this.parent[size] = parent;
+			this.service[size] = service;
+			return size++;
+		}
+	}
+
+}
@@ -0,0 +1,148 @@
+package festival;
+
+import java.util.*;
+
+/**
+ * <p>
+ * An immutable class representing the answer to a query of a
+ * {@link JourneyPlanner}: the earliest session in which a festival-goer,
+ * starting at a venue in a given session, can be at each other venue, and a
+ * journey with the fewest shuttle rides that gets them there.
+ * </p>
+ */
+public class Journeys {
+
+	// the planner that answered the query
+	private JourneyPlanner planner;
+	// the starting venue of the journeys
+	private Venue start;
+	// the session spent at the starting venue
+	private int startSession;
+	// the label of the chosen journey to each venue id, or -1 if there is none
+	private int[] arrivals;
+	// the labels of the journeys found by the query
+	private JourneyPlanner.Labels labels;
+
+	/*
+	 * Invariant: planner != null && start != null && startSession > 0 &&
+	 * arrivals.length == planner.getVenueCount() && each arrivals[v] is -1 or
+	 * the index of a label of v
+	 */
+
+	/**
+	 * Creates the answer to a query of the given planner.
+	 * 
+	 * @param planner
+	 *            the planner that answered the query
+	 * @param start
+	 *            the starting venue
+	 * @param startSession
+	 *            the session spent at the starting venue
+	 * @param arrivals
+	 *            the label of the chosen journey to each venue id, or -1
+	 * @param labels
+	 *            the labels of the journeys found by the query
+	 */
+	Journeys(JourneyPlanner planner, Venue start, int startSession,
+			int[] arrivals, JourneyPlanner.Labels labels) {
+		this.planner = planner;
+		this.start = start;
+		this.startSession = startSession;
+		this.arrivals = arrivals;
+		this.labels = labels;
+	}
+
+	/**
+	 * Returns the starting venue of the journeys.
+	 * 
+	 * @return the starting venue
+	 */
+	public Venue getStart() {
+		return start;
+	}
+
+	/**
+	 * Returns the session spent at the starting venue.
+	 * 
+	 * @return the starting session
+	 */
+	public int getStartSession() {
+		return startSession;
+	}
+
+	/**
+	 * Returns the earliest session in which the given venue can be reached, or
+	 * 0 if it cannot be reached at all. (The starting venue is reached in the
+	 * starting session.)
+	 * 
+	 * @param venue
+	 *            the venue to look up
+	 * @return the earliest session in which the venue can be reached, or 0
+	 * @throws NullPointerException
+	 *             if venue is null
+	 */
+	public int getArrivalSession(Venue venue) {
+		// the label of the chosen journey to the venue
+		int label = label(venue);
+		return label < 0 ? 0 : labels.session[label];
+	}
+
+	/**
+	 * Returns the number of shuttle rides on the chosen journey to the given
+	 * venue (the fewest among the journeys arriving in the earliest session),
+	 * or -1 if it cannot be reached.
+	 * 
+	 * @param venue
+	 *            the venue to look up
+	 * @return the number of rides to the venue, or -1
+	 * @throws NullPointerException
+	 *             if venue is null
+	 */
+	public int getRides(Venue venue) {
+		// the label of the chosen journey to the venue
+		int label = label(venue);
+		return label < 0 ? -1 : labels.rides[label];
+	}
+
+	/**
+	 * Returns the shuttle services of the chosen journey to the given venue,
+	 * in the order they are caught, or null if the venue cannot be reached.
+	 * (The journey to the starting venue has no services.)
+	 * 
+	 * @param venue
+	 *            the venue to look up
+	 * @return the services of the journey to the venue, or null
+	 * @throws NullPointerException
+	 *             if venue is null
+	 */
+	public List<Service> getJourney(Venue venue) {
+		// the label of the chosen journey to the venue
+		int label = label(venue);
+		if (label < 0) {
+			return null;
+		}
+		// the services of the journey, from last to first
+		LinkedList<Service> journey = new LinkedList<>();
+		for (; labels.parent[label] >= 0; label = labels.parent[label]) {
+			journey.addFirst(planner.getService(labels.service[label]));
+		}
+		return new ArrayList<>(journey);
+	}
+
+	/**
+	 * Returns the label of the chosen journey to the given venue, or -1 if it
+	 * cannot be reached.
+	 */
+	private int label(Venue venue) {
+		if (venue == null) {
+			throw new NullPointerException("Venue cannot be null");
+		}
+		if (venue.equals(start)) {
+			return 0;
+		}
+		// the id of the venue in the planner's registry
+		int id = planner.getRegistry().getId(venue);
+		return id < 0 || id >= arrivals.length ? -1 : arrivals[id];
+	}
+
+}
@@ -0,0 +1,171 @@
+package festival;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * <p>
+ * A histogram of latencies in nanoseconds, which many threads may record to
+ * at once without locking.
+ * </p>
+ * 
+ * <p>
+ * Latencies below 8 have a bucket each. Above that, each power of two is
+ * split into 8 buckets of equal width, so that a percentile is reported to
+ * within 12.5% of the true value whatever its magnitude.
+ * </p>
+ */
+final class LatencyHistogram {
+
+	// the number of buckets each power of two is split into (a power of two)
+	private static final int SUB_BUCKETS = 8;
+	// the base-2 logarithm of SUB_BUCKETS
+	private static final int SUB_BITS = 3;
+	// the number of buckets needed for all non-negative longs
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+	// the number of latencies recorded in each bucket
+	private final AtomicLongArray counts;
+	// the number of latencies recorded
+	private final LongAdder count;
+	// the sum of the latencies recorded
+	private final LongAdder sum;
+	// the largest latency recorded
+	private final AtomicLong max;
+
+	/*
+	 * Invariant: counts.length() == BUCKETS && when no latency is being
+	 * recorded, count is the sum of counts, and max is at least the smallest
+	 * latency held by the largest bucket that is not empty
+	 */
+
+	/**
+	 * Creates an empty histogram.
+	 */
+	LatencyHistogram() {
+		counts = new AtomicLongArray(BUCKETS);
+		count = new LongAdder();
+		sum = new LongAdder();
+		max = new AtomicLong();
+	}
+
+	/**
+	 * Records the given latency (negative latencies are recorded as 0).
+	 */
+	void record(long nanos) {
+		// the latency recorded
+		long latency = Math.max(nanos, 0);
+		counts.incrementAndGet(bucket(latency));
+		count.increment();
+		sum.add(latency);
+		// the largest latency recorded so far
+		long largest = max.get();
+		while (latency > largest && !max.compareAndSet(largest, latency)) {
+			largest = max.get();
+		}
+	}
+
+	/**
+	 * Returns the index of the bucket holding the given non-negative latency.
+	 */
+	static int bucket(long latency) {
+		if (latency < SUB_BUCKETS) {
+			return (int) latency;
+		}
+		// the position of the highest bit of the latency
+		int exponent = 63 - Long.numberOfLeadingZeros(latency);
+		// the next SUB_BITS bits of the latency
+		int sub = (int) (latency >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Returns the largest latency held by the bucket with the given index.
+	 */
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		// the position of the highest bit of the latencies in the bucket
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		// the width of the bucket
+		long width = 1L << (exponent - SUB_BITS);
+		return (SUB_BUCKETS + bucket % SUB_BUCKETS) * width + width - 1;
+	}
+
+	/**
+	 * Returns the number of latencies recorded.
+	 */
+	long count() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns the mean of the latencies recorded, or 0 if there are none.
+	 */
+	long mean() {
+		// the number of latencies recorded
+		long n = count.sum();
+		return n == 0 ? 0 : sum.sum() / n;
+	}
+
+	/**
+	 * Returns the sum of the latencies recorded.
+	 */
+	long total() {
+		return sum.sum();
+	}
+
+	/**
+	 * Returns the largest latency recorded, or 0 if there are none.
+	 */
+	long max() {
+		return max.get();
+	}
+
+	/**
+	 * Returns an upper bound on the given percentile (from 0 to 100) of the
+	 * latencies recorded, or 0 if there are none.
+	 */
+	long percentile(double percentile) {
+		// the number of latencies recorded in the buckets
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += counts.get(i);
+		}
+		if (total == 0) {
+			return 0;
+		}
+		// the number of latencies at or below the percentile
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		// the number of latencies in the buckets passed so far
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Determines whether this LatencyHistogram is internally consistent (i.e.
+	 * it satisfies its class invariant). (The result is only meaningful while
+	 * no latency is being recorded.)
+	 */
+	boolean checkInvariant() {
+		// the number of latencies in the buckets
+		long total = 0;
+		// the largest bucket that is not empty
+		int largest = -1;
+		for (int i = 0; i < counts.length(); i++) {
+			total += counts.get(i);
+			if (counts.get(i) > 0) {
+				largest = i;
+			}
+		}
+		return counts.length() == BUCKETS && total == count.sum()
+				&& (largest < 0 || max.get() > upperBound(largest - 1));
+	}
+
+}
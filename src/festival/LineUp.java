@@ -1,6 +1,8 @@
 package festival;
 
+import java.io.*;
 import java.util.*;
+import java.util.function.*;
 
 /**
  * <p>
@@ -24,25 +26,78 @@ import java.util.*;
  * although there is no requirement that there is an event scheduled at a venue
  * for every session.
  * </p>
+ * 
+ * <p>
+ * The events are indexed by their (venue, session) slot, by venue (ordered by
+ * session) and by session (ordered by venue name), so that clashes are found
+ * in constant time and the events for a venue or session are retrieved
+ * without searching or sorting the whole line-up.
+ * </p>
  */
 public class LineUp implements Iterable<Event> {
 
 	// Correct line separator for executing machine (used in toString method)
 	private static String LINE_SEPARATOR = System.getProperty("line.separator");
+	// the smallest batch of events worth sorting in parallel
+	private static final int PARALLEL_THRESHOLD = 1 << 13;
 
-	// the events in the line-up
-	private List<Event> events;
+	// the events in the line-up, keyed by their slot, in the order added
+	private Map<Slot, Event> events;
+	// the events in the line-up, by venue name and then by session
+	private NavigableMap<String, NavigableMap<Integer, Event>> byVenue;
+	// the events in the line-up, by session and then by venue name
+	private NavigableMap<Integer, NavigableMap<String, Event>> bySession;
 
 	/*
-	 * Invariant: events!=null && !events.contains(null) && there are no two
-	 * events scheduled in the same venue for the same session
+	 * Invariant: events!=null && !events.containsValue(null) && each event e
+	 * in events is keyed by the slot of its venue and session (so there are no
+	 * two events scheduled in the same venue for the same session) && byVenue
+	 * and bySession hold exactly the events in events, each under its venue
+	 * name and session, with no empty inner maps
 	 */
 
+	/**
+	 * The venue and session of an event, which at most one event in a line-up
+	 * can have.
+	 */
+	private static final class Slot {
+
+		// the venue of the slot
+		private Venue venue;
+		// the session of the slot
+		private int session;
+
+		/**
+		 * Creates the slot for the given venue and session.
+		 */
+		private Slot(Venue venue, int session) {
+			this.venue = venue;
+			this.session = session;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Slot)) {
+				return false;
+			}
+			Slot slot = (Slot) object; // slot to compare
+			return this.session == slot.session
+					&& this.venue.equals(slot.venue);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * venue.hashCode() + session;
+		}
+	}
+
 	/**
 	 * Creates a new line-up with no events scheduled.
 	 */
 	public LineUp() {
-		events = new ArrayList<>();
+		events = new LinkedHashMap<>();
+		byVenue = new TreeMap<>();
+		bySession = new TreeMap<>();
 	}
 
 	/**
@@ -61,45 +116,220 @@ public class LineUp implements Iterable<Event> {
 			throw new NullPointerException(
 					"Cannot add a null event to a line-up.");
 		}
-		if (sessionTaken(event.getVenue(), event.getSession())) {
+		// the slot of the event
+		Slot slot = new Slot(event.getVenue(), event.getSession());
+		if (events.containsKey(slot)) {
+			Instrumentation.get().count("lineup.clashes", 1);
 			throw new InvalidLineUpException(
 					"Line up already includes an event at venue "
 							+ event.getVenue() + " at time "
 							+ event.getSession());
 		}
-		events.add(event);
+		events.put(slot, event);
+		index(event);
+		measure();
 	}
 
 	/**
-	 * Returns true if the given venue is already occupied for the given
-	 * session.
+	 * <p>
+	 * Adds each of the given events to the line-up, as if by calling addEvent
+	 * for each of them in the order given (so that they are iterated over in
+	 * that order), except that if any of them cannot be added, none of them
+	 * are.
+	 * </p>
 	 * 
-	 * @param venue
-	 *            the venue to check
-	 * @param session
-	 *            the session to check
-	 * @return true if there is already an event scheduled for the given venue
-	 *         and session.
+	 * <p>
+	 * This is much faster than adding a large number of events one at a time:
+	 * the events are sorted once (in parallel, for a large batch) into their
+	 * natural ordering, so that events in the same slot are next to each
+	 * other; the clashes are then found in a single pass over the sorted
+	 * events, looking up the events already at each venue only once; and the
+	 * indexes of the line-up are filled in that order, one venue at a time.
+	 * </p>
+	 * 
+	 * @param batch
+	 *            the events to be added to the line-up
+	 * @throws NullPointerException
+	 *             if batch is null or contains null
+	 * @throws InvalidLineUpException
+	 *             if two of the given events are scheduled for the same venue
+	 *             and session, or one of them is scheduled for the same venue
+	 *             and session as an event already in the line-up (in which
+	 *             case the line-up is unchanged)
 	 */
-	private boolean sessionTaken(Venue venue, int session) {
-		for (Event e : events) {
-			if (e.getVenue().equals(venue) && e.getSession() == session) {
-				return true;
+	public void addEvents(Collection<? extends Event> batch) {
+		if (batch == null) {
+			throw new NullPointerException(
+					"Cannot add a null collection of events to a line-up.");
+		}
+		// the events to add, in the order given
+		Event[] added = batch.toArray(new Event[batch.size()]);
+		for (Event event : added) {
+			if (event == null) {
+				throw new NullPointerException(
+						"Cannot add a null event to a line-up.");
+			}
+		}
+		// the events to add, in their natural ordering
+		Event[] sorted = added.clone();
+		if (sorted.length >= PARALLEL_THRESHOLD) {
+			Arrays.parallelSort(sorted);
+		} else {
+			Arrays.sort(sorted);
+		}
+		checkClashes(sorted);
+		if (events.isEmpty()) {
+			events = new LinkedHashMap<>(
+					(int) (added.length / 0.75f) + 1);
+		}
+		for (Event event : added) {
+			events.put(new Slot(event.getVenue(), event.getSession()), event);
+		}
+		// the events at the venue of the event being indexed
+		NavigableMap<Integer, Event> venueEvents = null;
+		for (int i = 0; i < sorted.length; i++) {
+			// the name of the venue of the event
+			String name = sorted[i].getVenue().getName();
+			if (i == 0 || !name.equals(sorted[i - 1].getVenue().getName())) {
+				venueEvents = byVenue.get(name);
+				if (venueEvents == null) {
+					venueEvents = new TreeMap<>();
+					byVenue.put(name, venueEvents);
+				}
+			}
+			venueEvents.put(sorted[i].getSession(), sorted[i]);
+			// the events in the session of the event
+			NavigableMap<String, Event> sessionEvents =
+					bySession.get(sorted[i].getSession());
+			if (sessionEvents == null) {
+				sessionEvents = new TreeMap<>();
+				bySession.put(sorted[i].getSession(), sessionEvents);
+			}
+			sessionEvents.put(name, sorted[i]);
+		}
+		measure();
+	}
+
+	/**
+	 * Checks, in a single pass, that none of the given events (which are in
+	 * their natural ordering) is in the same slot as the one before it or as
+	 * an event already in the line-up.
+	 * 
+	 * @param sorted
+	 *            the events to check, in their natural ordering
+	 * @throws InvalidLineUpException
+	 *             if one of the events clashes
+	 */
+	private void checkClashes(Event[] sorted) {
+		// the events already at the venue of the event being checked
+		NavigableMap<Integer, Event> venueEvents = null;
+		for (int i = 0; i < sorted.length; i++) {
+			// the event being checked
+			Event event = sorted[i];
+			// true if the event is at the same venue as the one before it
+			boolean sameVenue = i > 0 && event.getVenue().getName().equals(
+					sorted[i - 1].getVenue().getName());
+			if (!sameVenue) {
+				venueEvents = byVenue.get(event.getVenue().getName());
+			}
+			if (sameVenue && event.getSession() == sorted[i - 1].getSession()) {
+				Instrumentation.get().count("lineup.clashes", 1);
+				throw new InvalidLineUpException(
+						"Events to add include more than one event at venue "
+								+ event.getVenue() + " at time "
+								+ event.getSession());
 			}
+			if (venueEvents != null
+					&& venueEvents.containsKey(event.getSession())) {
+				Instrumentation.get().count("lineup.clashes", 1);
+				throw new InvalidLineUpException(
+						"Line up already includes an event at venue "
+								+ event.getVenue() + " at time "
+								+ event.getSession());
+			}
+		}
+	}
+
+	/**
+	 * Reports the number of events in the line-up to the installed metrics
+	 * (if they are enabled).
+	 */
+	private void measure() {
+		// the metrics to report to
+		Metrics metrics = Instrumentation.get();
+		if (metrics.isEnabled()) {
+			metrics.gauge("lineup.events", events.size());
+		}
+	}
+
+	/**
+	 * Adds the given event (which has just been added to events) to the venue
+	 * and session indexes.
+	 * 
+	 * @param event
+	 *            the event to add to the indexes
+	 */
+	private void index(Event event) {
+		// the events at the venue of the event
+		NavigableMap<Integer, Event> venueEvents =
+				byVenue.get(event.getVenue().getName());
+		if (venueEvents == null) {
+			venueEvents = new TreeMap<>();
+			byVenue.put(event.getVenue().getName(), venueEvents);
+		}
+		venueEvents.put(event.getSession(), event);
+		// the events in the session of the event
+		NavigableMap<String, Event> sessionEvents =
+				bySession.get(event.getSession());
+		if (sessionEvents == null) {
+			sessionEvents = new TreeMap<>();
+			bySession.put(event.getSession(), sessionEvents);
+		}
+		sessionEvents.put(event.getVenue().getName(), event);
+	}
+
+	/**
+	 * Removes the given event (which has just been removed from events) from
+	 * the venue and session indexes.
+	 * 
+	 * @param event
+	 *            the event to remove from the indexes
+	 */
+	private void unindex(Event event) {
+		// the events at the venue of the event
+		NavigableMap<Integer, Event> venueEvents =
+				byVenue.get(event.getVenue().getName());
+		venueEvents.remove(event.getSession());
+		if (venueEvents.isEmpty()) {
+			byVenue.remove(event.getVenue().getName());
+		}
+		// the events in the session of the event
+		NavigableMap<String, Event> sessionEvents =
+				bySession.get(event.getSession());
+		sessionEvents.remove(event.getVenue().getName());
+		if (sessionEvents.isEmpty()) {
+			bySession.remove(event.getSession());
 		}
-		return false;
 	}
 
 	/**
 	 * If the line-up contains an event that is equivalent to this one, then it
 	 * is removed from the line-up. If there is no equivalent event, then the
 	 * line-up is unchanged by the operation.
-	 *
+	 * 
 	 * @param event
 	 *            the event to be removed from the line-up.
 	 */
 	public void removeEvent(Event event) {
-		events.remove(event);
+		if (event == null) {
+			return;
+		}
+		// the slot of the event
+		Slot slot = new Slot(event.getVenue(), event.getSession());
+		if (event.equals(events.get(slot))) {
+			unindex(events.remove(slot));
+			measure();
+		}
 	}
 
 	/**
@@ -119,14 +349,48 @@ public class LineUp implements Iterable<Event> {
 					"Cannot retrieve events for a null venue.");
 		}
 		// the events for the given venue
-		List<Event> venueEvents = new ArrayList<>();
-		for (Event e : events) {
-			if (venue.equals(e.getVenue())) {
-				venueEvents.add(e);
-			}
+		NavigableMap<Integer, Event> venueEvents = byVenue.get(venue.getName());
+		if (venueEvents == null) {
+			return new ArrayList<>();
+		}
+		return new ArrayList<>(venueEvents.values());
+	}
+
+	/**
+	 * Returns a list of the events scheduled for the given venue in sessions
+	 * from fromSession up to and including toSession. The list of events is
+	 * ordered by session number (in ascending order).
+	 * 
+	 * @param venue
+	 *            the venue for which the events will be retrieved
+	 * @param fromSession
+	 *            the first session to retrieve events for
+	 * @param toSession
+	 *            the last session to retrieve events for
+	 * @return a list of the events scheduled for the given venue in the given
+	 *         range of sessions, ordered by session number (which is empty if
+	 *         fromSession > toSession)
+	 * @throws NullPointerException
+	 *             if the given venue is null
+	 * @throws InvalidSessionException
+	 *             if fromSession <= 0 or toSession <= 0
+	 */
+	public List<Event> getEvents(Venue venue, int fromSession, int toSession) {
+		if (venue == null) {
+			throw new NullPointerException(
+					"Cannot retrieve events for a null venue.");
+		}
+		if (fromSession <= 0 || toSession <= 0) {
+			throw new InvalidSessionException("Session numbers "
+					+ fromSession + " and " + toSession + " must be positive");
+		}
+		// the events for the given venue
+		NavigableMap<Integer, Event> venueEvents = byVenue.get(venue.getName());
+		if (venueEvents == null || fromSession > toSession) {
+			return new ArrayList<>();
 		}
-		Collections.sort(venueEvents);
-		return venueEvents;
+		return new ArrayList<>(venueEvents.subMap(fromSession, true,
+				toSession, true).values());
 	}
 
 	/**
@@ -146,14 +410,118 @@ public class LineUp implements Iterable<Event> {
 					+ " must be positive");
 		}
 		// the events for the given session
-		List<Event> sessionEvents = new ArrayList<>();
-		for (Event e : events) {
-			if (session == e.getSession()) {
-				sessionEvents.add(e);
-			}
+		NavigableMap<String, Event> sessionEvents = bySession.get(session);
+		if (sessionEvents == null) {
+			return new ArrayList<>();
+		}
+		return new ArrayList<>(sessionEvents.values());
+	}
+
+	/**
+	 * Passes each event scheduled for the given venue to the given action, in
+	 * order of session number, straight from the venue index of the line-up
+	 * without creating a list of the events. (The action must not change the
+	 * line-up.)
+	 * 
+	 * @param venue
+	 *            the venue whose events will be visited
+	 * @param action
+	 *            the action to pass each event to
+	 * @throws NullPointerException
+	 *             if the given venue or action is null
+	 */
+	public void forEachEvent(Venue venue, Consumer<? super Event> action) {
+		if (venue == null || action == null) {
+			throw new NullPointerException(
+					"Cannot visit events for a null venue or action.");
+		}
+		// the events for the given venue
+		NavigableMap<Integer, Event> venueEvents = byVenue.get(venue.getName());
+		if (venueEvents == null) {
+			return;
+		}
+		for (Event event : venueEvents.values()) {
+			action.accept(event);
+		}
+	}
+
+	/**
+	 * Passes each event scheduled for the given venue in sessions from
+	 * fromSession up to and including toSession to the given action, in order
+	 * of session number, without creating a list of the events. (The events
+	 * are found by stepping from one session key to the next in the venue
+	 * index, rather than through a view of the range, so that no objects are
+	 * created. The action must not change the line-up.)
+	 * 
+	 * @param venue
+	 *            the venue whose events will be visited
+	 * @param fromSession
+	 *            the first session to visit events for
+	 * @param toSession
+	 *            the last session to visit events for
+	 * @param action
+	 *            the action to pass each event to
+	 * @throws NullPointerException
+	 *             if the given venue or action is null
+	 * @throws InvalidSessionException
+	 *             if fromSession <= 0 or toSession <= 0
+	 */
+	public void forEachEvent(Venue venue, int fromSession, int toSession,
+			Consumer<? super Event> action) {
+		if (venue == null || action == null) {
+			throw new NullPointerException(
+					"Cannot visit events for a null venue or action.");
+		}
+		if (fromSession <= 0 || toSession <= 0) {
+			throw new InvalidSessionException("Session numbers "
+					+ fromSession + " and " + toSession + " must be positive");
+		}
+		// the events for the given venue
+		NavigableMap<Integer, Event> venueEvents = byVenue.get(venue.getName());
+		if (venueEvents == null) {
+			return;
+		}
+		// the session of the next event to visit
+		Integer session = venueEvents.ceilingKey(Sessions.key(fromSession));
+		while (session != null && session <= toSession) {
+			action.accept(venueEvents.get(session));
+			session = venueEvents.higherKey(session);
+		}
+	}
+
+	/**
+	 * Passes each event scheduled for the given session (across all venues) to
+	 * the given action, in order of venue name, straight from the session
+	 * index of the line-up without creating a list of the events. (The action
+	 * must not change the line-up.)
+	 * 
+	 * @param session
+	 *            the session whose events will be visited
+	 * @param action
+	 *            the action to pass each event to
+	 * @throws NullPointerException
+	 *             if action is null
+	 * @throws InvalidSessionException
+	 *             if session <= 0
+	 */
+	public void forEachEvent(int session, Consumer<? super Event> action) {
+		if (action == null) {
+			throw new NullPointerException(
+					"Cannot visit events for a null action.");
+		}
+		if (session <= 0) {
+			throw new InvalidSessionException("Session number " + session
+					+ " must be positive");
+		}
+		// the events for the given session
+		NavigableMap<String, Event> sessionEvents =
+				bySession.get(Sessions.key(session));
+		if (sessionEvents == null) {
+			return;
+		}
+		for (Event event : sessionEvents.values()) {
+			action.accept(event);
 		}
-		Collections.sort(sessionEvents);
-		return sessionEvents;
 	}
 
 	/**
@@ -164,8 +532,8 @@ public class LineUp implements Iterable<Event> {
 	 */
 	public Set<Venue> getVenues() {
 		Set<Venue> venues = new HashSet<>(); // venues used by the line-up
-		for (Event e : events) {
-			venues.add(e.getVenue());
+		for (NavigableMap<Integer, Event> venueEvents : byVenue.values()) {
+			venues.add(venueEvents.firstEntry().getValue().getVenue());
 		}
 		return venues;
 	}
@@ -179,17 +547,7 @@ public class LineUp implements Iterable<Event> {
 	 *         number that an event is scheduled for, and 0 otherwise.
 	 */
 	public int getFirstUsedSession() {
-		if (events.isEmpty()) {
-			return 0;
-		}
-		// the minimum session number that there is an event scheduled for
-		int result = events.get(0).getSession();
-		for (Event e : events) {
-			if (e.getSession() < result) {
-				result = e.getSession();
-			}
-		}
-		return result;
+		return bySession.isEmpty() ? 0 : bySession.firstKey();
 	}
 
 	/**
@@ -201,25 +559,40 @@ public class LineUp implements Iterable<Event> {
 	 *         number that an event is scheduled for, and 0 otherwise.
 	 */
 	public int getLastUsedSession() {
-		if (events.isEmpty()) {
-			return 0;
-		}
-		// the maximum session number that there is an event scheduled for
-		int result = events.get(0).getSession();
-		for (Event e : events) {
-			if (e.getSession() > result) {
-				result = e.getSession();
-			}
-		}
-		return result;
+		return bySession.isEmpty() ? 0 : bySession.lastKey();
 	}
 
 	/**
-	 * Returns an iterator over the events in the line-up.
+	 * Returns an iterator over the events in the line-up, in the order they
+	 * were added. (Events removed through the iterator are also removed from
+	 * the indexes of the line-up.)
 	 */
 	@Override
 	public Iterator<Event> iterator() {
-		return events.iterator();
+		return new Iterator<Event>() {
+			// the underlying iterator over the events
+			private Iterator<Event> iterator = events.values().iterator();
+			// the event most recently returned by next()
+			private Event last;
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Event next() {
+				last = iterator.next();
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				iterator.remove();
+				unindex(last);
+				measure();
+			}
+		};
 	}
 
 	/**
@@ -234,15 +607,46 @@ public class LineUp implements Iterable<Event> {
 	 */
 	@Override
 	public String toString() {
-		Collections.sort(events);
-		String result = ""; // the string representation under construction
-		for (int i = 0; i < events.size(); i++) {
-			if (i != 0) {
-				result += LINE_SEPARATOR;
+		// the string representation under construction
+		StringBuilder result = new StringBuilder();
+		try {
+			writeTo(result);
+		} catch (IOException e) {
+			// a StringBuilder never throws an IOException
+			throw new IllegalStateException(e);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Writes the string representation of the line-up (as returned by
+	 * toString) to the given output, one event at a time, without building the
+	 * whole string first. The events are written in their natural ordering,
+	 * straight from the venue index of the line-up, which is not modified.
+	 * 
+	 * @param out
+	 *            the output to write to (for example a Writer or a
+	 *            StringBuilder)
+	 * @throws NullPointerException
+	 *             if out is null
+	 * @throws IOException
+	 *             if there is an error writing to the output
+	 */
+	public void writeTo(Appendable out) throws IOException {
+		if (out == null) {
+			throw new NullPointerException("Output cannot be null");
+		}
+		// whether an event has been written yet
+		boolean first = true;
+		for (NavigableMap<Integer, Event> venueEvents : byVenue.values()) {
+			for (Event event : venueEvents.values()) {
+				if (!first) {
+					out.append(LINE_SEPARATOR);
+				}
+				event.writeTo(out);
+				first = false;
 			}
-			result = result + events.get(i).toString();
 		}
-		return result;
 	}
 
 	/**
@@ -253,26 +657,47 @@ public class LineUp implements Iterable<Event> {
 	 *         otherwise.
 	 */
 	public boolean checkInvariant() {
-		return (events != null && !events.contains(null) && !eventsClash());
-	}
-
-	/**
-	 * Returns true if there are two or more events scheduled for both the same
-	 * venue and session time.
-	 * 
-	 * @return true if there are two or more events occurring at the same venue
-	 *         at the same time
-	 */
-	private boolean eventsClash() {
-		for (Event a : events) {
-			for (Event b : events) {
-				if (!a.equals(b) && a.getVenue().equals(b.getVenue())
-						&& a.getSession() == b.getSession()) {
-					return true;
-				}
+		if (events == null || byVenue == null || bySession == null) {
+			return false;
+		}
+		// the number of events in each of the indexes
+		int venueCount = 0;
+		int sessionCount = 0;
+		for (NavigableMap<Integer, Event> venueEvents : byVenue.values()) {
+			if (venueEvents.isEmpty()) {
+				return false;
+			}
+			venueCount += venueEvents.size();
+		}
+		for (NavigableMap<String, Event> sessionEvents : bySession.values()) {
+			if (sessionEvents.isEmpty()) {
+				return false;
+			}
+			sessionCount += sessionEvents.size();
+		}
+		if (venueCount != events.size() || sessionCount != events.size()) {
+			return false;
+		}
+		for (Map.Entry<Slot, Event> entry : events.entrySet()) {
+			// the event in the slot
+			Event event = entry.getValue();
+			if (event == null
+					|| !entry.getKey().equals(
+							new Slot(event.getVenue(), event.getSession()))) {
+				return false;
+			}
+			// the events indexed under the venue and session of the event
+			NavigableMap<Integer, Event> venueEvents =
+					byVenue.get(event.getVenue().getName());
+			NavigableMap<String, Event> sessionEvents =
+					bySession.get(event.getSession());
+			if (venueEvents == null || sessionEvents == null
+					|| venueEvents.get(event.getSession()) != event
+					|| sessionEvents.get(event.getVenue().getName()) != event) {
+				return false;
 			}
 		}
-		return false;
+		return true;
 	}
 
 }
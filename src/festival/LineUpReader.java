@@ -0,0 +1,251 @@
+package festival;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import festival.FormatException.Kind;
+
+/**
+ * Provides methods to read the line-up of a festival from a file.
+ */
+public class LineUpReader {
+
+	/**
+	 * <p>
+	 * Reads a text file called fileName that describes the events of a
+	 * festival, and returns the line-up containing each of the events in the
+	 * file, in file order (so that iterating over the line-up gives the
+	 * events in the order of the lines of the file).
+	 * </p>
+	 * 
+	 * <p>
+	 * Each line of the file describes one event, and consists of the session
+	 * number of the event (a positive integer), a single space, the name of
+	 * the venue of the event (a non-empty string that doesn't contain any
+	 * whitespace characters), a single space, and the act of the event, which
+	 * is the rest of the line (and so may contain spaces, or be empty). For
+	 * example, "3 main-stage The Kinks" describes an event by The Kinks at
+	 * main-stage in session 3. There are no other lines (so an empty file
+	 * describes an empty line-up), and no two events may be scheduled for the
+	 * same venue and session.
+	 * </p>
+	 * 
+	 * <p>
+	 * The file is read one line at a time, and the events are added to the
+	 * line-up all at once, with {@link LineUp#addEvents(Collection)}. The
+	 * file must be encoded in UTF-8 (or ASCII). Files in this format are
+	 * written by {@link LineUpWriter}.
+	 * </p>
+	 * 
+	 * @param fileName
+	 *            the file to read from
+	 * @return the line-up that was read from the file
+	 * @throws IOException
+	 *             if there is an error reading from the input file
+	 * @throws FormatException
+	 *             if there is an error with the input format, with a message
+	 *             giving the number of the line on which it was found
+	 */
+	public static LineUp read(String fileName) throws IOException,
+			FormatException {
+		return read(fileName, new VenueRegistry());
+	}
+
+	/**
+	 * Reads a line-up from the file called fileName, in the format described
+	 * by {@link #read(String)}, looking up the venues named in the file in the
+	 * given registry (so that the venues of the line-up are shared with other
+	 * users of the registry, such as a timetable read by ScheduleReader).
+	 * 
+	 * @param fileName
+	 *            the file to read from
+	 * @param registry
+	 *            the registry used to look up venues
+	 * @return the line-up that was read from the file
+	 * @throws NullPointerException
+	 *             if registry is null
+	 * @throws IOException
+	 *             if there is an error reading from the input file
+	 * @throws FormatException
+	 *             if there is an error with the input format, as for
+	 *             {@link #read(String)}
+	 */
+	public static LineUp read(String fileName, VenueRegistry registry)
+			throws IOException, FormatException {
+		if (registry == null) {
+			throw new NullPointerException("Registry cannot be null");
+		}
+		return read(fileName, registry, new EventPool());
+	}
+
+	/**
+	 * Reads a line-up from the file called fileName as for
+	 * {@link #read(String, VenueRegistry)}, taking the events of the line-up
+	 * from the given pool, so that an event equal to one already in the pool
+	 * (for example, from an earlier read of the same file) is not created
+	 * again, and events for the same act share one string. (The other read
+	 * methods use a new pool for each file, so that the acts within a file
+	 * are still shared.)
+	 * 
+	 * @param fileName
+	 *            the file to read from
+	 * @param registry
+	 *            the registry used to look up venues
+	 * @param pool
+	 *            the pool used to look up events
+	 * @return the line-up that was read from the file
+	 * @throws NullPointerException
+	 *             if registry or pool is null
+	 * @throws IOException
+	 *             if there is an error reading from the input file
+	 * @throws FormatException
+	 *             if there is an error with the input format, as for
+	 *             {@link #read(String)}
+	 */
+	public static LineUp read(String fileName, VenueRegistry registry,
+			EventPool pool) throws IOException, FormatException {
+		if (registry == null || pool == null) {
+			throw new NullPointerException("Input parameters cannot be null");
+		}
+		try (BufferedReader reader =
+				new BufferedReader(new InputStreamReader(new FileInputStream(
+						fileName), StandardCharsets.UTF_8))) {
+			return read(reader, registry, pool);
+		}
+	}
+
+	/**
+	 * Returns the line-up of the events described by the lines of a line-up
+	 * file, read from the given reader.
+	 * 
+	 * @throws IOException
+	 *             if there is an error reading from the reader
+	 * @throws FormatException
+	 *             if there is an error with the input format
+	 */
+	private static LineUp read(BufferedReader reader, VenueRegistry registry,
+			EventPool pool) throws IOException, FormatException {
+		// the events described by the file, in file order
+		List<Event> events = new ArrayList<>();
+		// the line most recently read
+		String line;
+		while ((line = reader.readLine()) != null) {
+			events.add(readEvent(line, events.size() + 1, registry, pool));
+		}
+		// the line-up of the events
+		LineUp lineUp = new LineUp();
+		try {
+			lineUp.addEvents(events);
+		} catch (InvalidLineUpException e) {
+			throw clash(events, e);
+		}
+		return lineUp;
+	}
+
+	/**
+	 * Returns the event from the given pool described by the given line of a
+	 * line-up file, which has the given line number.
+	 * 
+	 * @throws FormatException
+	 *             if the line does not describe an event
+	 */
+	private static Event readEvent(String line, int number,
+			VenueRegistry registry, EventPool pool) throws FormatException {
+		// the space after the session number
+		int first = line.indexOf(' ');
+		// the space after the venue name
+		int second = first < 0 ? -1 : line.indexOf(' ', first + 1);
+		if (second < 0) {
+			throw error(number, Kind.EVENT, "expected a session number,"
+					+ " venue name and act separated by spaces but found '"
+					+ line + "'");
+		}
+		// the session number of the event
+		int session = parseNumber(line, first);
+		if (session <= 0) {
+			throw error(number, Kind.EVENT, "the session number must be a"
+					+ " positive integer but was '" + line.substring(0, first)
+					+ "'");
+		}
+		// the name of the venue of the event
+		String name = line.substring(first + 1, second);
+		if (name.isEmpty()) {
+			throw error(number, Kind.VENUE_NAME, "expected a venue name after"
+					+ " the session number");
+		}
+		for (int i = 0; i < name.length(); i++) {
+			if (Character.isWhitespace(name.charAt(i))) {
+				throw error(number, Kind.VENUE_NAME, "venue name '" + name
+						+ "' contains whitespace");
+			}
+		}
+		return pool.intern(registry.intern(name), session,
+				line.substring(second + 1));
+	}
+
+	/**
+	 * Returns the non-negative integer given by the decimal digits of the
+	 * given line before the given end, or -1 if there are none or they are
+	 * not all digits (or the number is too large for an int).
+	 */
+	private static int parseNumber(String line, int end) {
+		if (end == 0) {
+			return -1;
+		}
+		// the number under construction
+		long number = 0;
+		for (int i = 0; i < end; i++) {
+			// the digit at i
+			char digit = line.charAt(i);
+			if (digit < '0' || digit > '9') {
+				return -1;
+			}
+			number = 10 * number + (digit - '0');
+			if (number > Integer.MAX_VALUE) {
+				return -1;
+			}
+		}
+		return (int) number;
+	}
+
+	/**
+	 * Returns a format exception for the first of the given events (in file
+	 * order) that is in the same slot as an earlier one, given the exception
+	 * thrown when the events were added to a line-up. (This is only done once
+	 * a clash is known to exist, so that reading a valid file does not
+	 * require a second index of the events.)
+	 */
+	private static FormatException clash(List<Event> events,
+			InvalidLineUpException cause) {
+		// the sessions of the events seen so far, by venue
+		Map<Venue, Set<Integer>> seen = new HashMap<>();
+		for (int i = 0; i < events.size(); i++) {
+			// the event on the line
+			Event event = events.get(i);
+			// the sessions of the events seen so far at its venue
+			Set<Integer> sessions = seen.get(event.getVenue());
+			if (sessions == null) {
+				sessions = new HashSet<>();
+				seen.put(event.getVenue(), sessions);
+			}
+			if (!sessions.add(event.getSession())) {
+				return error(i + 1, Kind.CLASH, "venue " + event.getVenue()
+						+ " already has an event in session "
+						+ event.getSession());
+			}
+		}
+		return new FormatException(Kind.CLASH, cause.getMessage());
+	}
+
+	/**
+	 * Returns a format exception for an error on the given line of a file
+	 * (whose column is not known).
+	 */
+	private static FormatException error(int line, Kind kind,
+			String message) {
+		return new FormatException(kind, "Line " + line + ": " + message, line,
+				0);
+	}
+
+}
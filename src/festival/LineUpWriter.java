@@ -0,0 +1,124 @@
+package festival;
+
+import java.io.*;
+import java.nio.charset.*;
+
+/**
+ * <p>
+ * Provides methods to write the line-up of a festival to a file, in the format
+ * read by {@link LineUpReader#read(String)}, so that reading the file gives
+ * back a line-up with the same events.
+ * </p>
+ * 
+ * <p>
+ * The events are written one per line, in the order in which the line-up
+ * iterates over them, so that writing a line-up read from a file written by
+ * this class reproduces the file exactly. Each event is written straight to
+ * a buffered writer, without building a string for the line.
+ * </p>
+ */
+public class LineUpWriter {
+
+	// the size of the buffer used when writing to a file
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Writes the given line-up to the file called fileName. The file is
+	 * encoded in UTF-8.
+	 * 
+	 * @param lineUp
+	 *            the line-up to write
+	 * @param fileName
+	 *            the file to write to
+	 * @throws NullPointerException
+	 *             if lineUp is null
+	 * @throws IllegalArgumentException
+	 *             if the name of a venue in the line-up is empty or contains
+	 *             whitespace, or an act contains a line break, so that it
+	 *             cannot be read back (in which case part of the file may have
+	 *             been written)
+	 * @throws IOException
+	 *             if there is an error writing to the file
+	 */
+	public static void write(LineUp lineUp, String fileName)
+			throws IOException {
+		if (lineUp == null) {
+			throw new NullPointerException("Line-up cannot be null");
+		}
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(fileName), StandardCharsets.UTF_8),
+				BUFFER_SIZE)) {
+			write(lineUp, out);
+		}
+	}
+
+	/**
+	 * Writes the given line-up to the given writer. (The writer is not closed
+	 * or flushed, and should be buffered.)
+	 * 
+	 * @param lineUp
+	 *            the line-up to write
+	 * @param out
+	 *            the writer to write to
+	 * @throws NullPointerException
+	 *             if lineUp or out is null
+	 * @throws IllegalArgumentException
+	 *             if the name of a venue in the line-up is empty or contains
+	 *             whitespace, or an act contains a line break (in which case
+	 *             part of the line-up may have been written)
+	 * @throws IOException
+	 *             if there is an error writing to the writer
+	 */
+	public static void write(LineUp lineUp, Writer out) throws IOException {
+		if (lineUp == null || out == null) {
+			throw new NullPointerException("Input parameters cannot be null");
+		}
+		for (Event event : lineUp) {
+			out.write(Integer.toString(event.getSession()));
+			out.write(' ');
+			out.write(checkName(event.getVenue()));
+			out.write(' ');
+			out.write(checkAct(event.getAct()));
+			out.write('\n');
+		}
+	}
+
+	/**
+	 * Returns the name of the given venue, checking that it can be read back
+	 * from a line-up file.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the name is empty or contains whitespace
+	 */
+	private static String checkName(Venue venue) {
+		// the name of the venue
+		String name = venue.getName();
+		if (name.isEmpty()) {
+			throw new IllegalArgumentException(
+					"Venue names cannot be empty in a line-up file");
+		}
+		for (int i = 0; i < name.length(); i++) {
+			if (Character.isWhitespace(name.charAt(i))) {
+				throw new IllegalArgumentException("Venue name '" + name
+						+ "' contains whitespace");
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * Returns the given act, checking that it can be read back from a line-up
+	 * file.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the act contains a line break
+	 */
+	private static String checkAct(String act) {
+		if (act.indexOf('\n') >= 0 || act.indexOf('\r') >= 0) {
+			throw new IllegalArgumentException("Act '" + act
+					+ "' contains a line break");
+		}
+		return act;
+	}
+
+}
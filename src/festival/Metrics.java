@@ -0,0 +1,86 @@
+package festival;
+
+/**
+ * <p>
+ * Receives the measurements made by the instrumented classes of the festival
+ * package: counters, which are incremented; latencies, which are recorded in
+ * nanoseconds; and gauges, which are set to their current value.
+ * </p>
+ * 
+ * <p>
+ * Measurements are identified by dotted names, such as "reader.bytes" or
+ * "timetable.lookup". The measurements made are listed in the documentation
+ * of {@link Instrumentation}.
+ * </p>
+ * 
+ * <p>
+ * Instrumented code asks {@link #isEnabled()} before taking any measurement
+ * that costs more than a method call (such as reading the clock), so an
+ * implementation that is disabled costs almost nothing. Implementations must
+ * be safe for use by many threads at once.
+ * </p>
+ */
+public interface Metrics {
+
+	/**
+	 * Metrics that are disabled, and ignore all measurements.
+	 */
+	Metrics NONE = new Metrics() {
+		@Override
+		public boolean isEnabled() {
+			return false;
+		}
+
+		@Override
+		public void count(String name, long delta) {
+		}
+
+		@Override
+		public void record(String name, long nanos) {
+		}
+
+		@Override
+		public void gauge(String name, long value) {
+		}
+	};
+
+	/**
+	 * Returns true if the metrics record measurements, and false if they
+	 * ignore them.
+	 * 
+	 * @return true iff measurements are recorded
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Adds the given amount to the counter with the given name.
+	 * 
+	 * @param name
+	 *            the name of the counter
+	 * @param delta
+	 *            the amount to add
+	 */
+	void count(String name, long delta);
+
+	/**
+	 * Records one operation of the kind with the given name that took the
+	 * given number of nanoseconds.
+	 * 
+	 * @param name
+	 *            the name of the kind of operation
+	 * @param nanos
+	 *            the time the operation took, in nanoseconds
+	 */
+	void record(String name, long nanos);
+
+	/**
+	 * Sets the gauge with the given name to the given value.
+	 * 
+	 * @param name
+	 *            the name of the gauge
+	 * @param value
+	 *            the current value of the gauge
+	 */
+	void gauge(String name, long value);
+
+}
@@ -0,0 +1,267 @@
+package festival;
+
+import java.util.*;
+
+/**
+ * <p>
+ * A bounded cache of the answers to queries about a shuttle timetable, which
+ * is cleared automatically whenever the timetable changes.
+ * </p>
+ * 
+ * <p>
+ * The cache holds the destinations of services departing a venue at the end of
+ * a session, and the sets of venues that can be reached from a venue in one
+ * session by another session (each found by a forward sweep of a
+ * {@link Reachability} engine, and shared by all queries with the same start
+ * and sessions, whatever venue they ask about). When a cache is full, the
+ * answer that was least recently used is evicted. Before each query, the
+ * version of the timetable is compared with the version the cached answers
+ * were derived from, and if it has changed, all of the answers (and the
+ * reachability engine) are discarded.
+ * </p>
+ * 
+ * <p>
+ * A query cache is not safe for use by more than one thread at a time.
+ * </p>
+ */
+public class QueryCache {
+
+	// the timetable whose answers are cached
+	private ShuttleTimetable timetable;
+	// the version of the timetable the cached answers were derived from
+	private long version;
+	// the reachability engine for that version, or null if not yet created
+	private Reachability reachability;
+	// the cached destinations, by source venue and session
+	private Lru<Query, Set<Venue>> destinations;
+	// the cached sets of reached venue ids, by start venue and sessions
+	private Lru<Query, long[]> reached;
+
+	/*
+	 * Invariant: timetable != null && destinations != null && reached != null
+	 * && if version == timetable.getVersion() then each cached answer is the
+	 * answer for the current state of the timetable, and reachability is null
+	 * or an engine for that state.
+	 */
+
+	/**
+	 * Creates a cache of the answers to queries about the given timetable,
+	 * holding at most the given number of answers of each kind.
+	 * 
+	 * @param timetable
+	 *            the timetable whose answers are cached
+	 * @param capacity
+	 *            the maximum number of answers of each kind to hold
+	 * @throws NullPointerException
+	 *             if timetable is null
+	 * @throws IllegalArgumentException
+	 *             if capacity is not positive
+	 */
+	public QueryCache(ShuttleTimetable timetable, int capacity) {
+		if (timetable == null) {
+			throw new NullPointerException("The timetable cannot be null");
+		}
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("The capacity " + capacity
+					+ " must be positive");
+		}
+		this.timetable = timetable;
+		this.version = timetable.getVersion();
+		this.destinations = new Lru<>(capacity);
+		this.reached = new Lru<>(capacity);
+	}
+
+	/**
+	 * Returns the set of venues that you can get to by catching an available
+	 * shuttle service from the source venue at the end of the given session,
+	 * as for {@link ShuttleTimetable#getDestinations(Venue, int)}.
+	 * 
+	 * (The returned set is shared by the cache, and cannot be modified.)
+	 * 
+	 * @param source
+	 *            the source venue
+	 * @param session
+	 *            the session number
+	 * @return an unmodifiable set of the venues that can be reached by catching
+	 *         a single shuttle service from the source venue at the end of the
+	 *         given session
+	 * @throws NullPointerException
+	 *             if source is null
+	 * @throws InvalidSessionException
+	 *             if the session number is not positive
+	 */
+	public Set<Venue> getDestinations(Venue source, int session) {
+		if (source == null) {
+			throw new NullPointerException("The source venue cannot be null");
+		}
+		if (session <= 0) {
+			throw new InvalidSessionException("Session number " + session
+					+ " must be positive");
+		}
+		validate();
+		// the query being answered
+		Query query = new Query(source, session, session);
+		// the cached answer to the query
+		Set<Venue> result = destinations.get(query);
+		counted(result != null);
+		if (result == null) {
+			result = Collections.unmodifiableSet(timetable.getDestinations(
+					source, session));
+			destinations.put(query, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns true if a festival-goer who is at the venue from during the
+	 * session fromSession can be at the venue to during the session toSession,
+	 * as for {@link Reachability#canReach(Venue, int, Venue, int)}.
+	 * 
+	 * @param from
+	 *            the starting venue
+	 * @param fromSession
+	 *            the session spent at the starting venue
+	 * @param to
+	 *            the venue to get to
+	 * @param toSession
+	 *            the session by which to be at the venue to
+	 * @return true if the venue to can be reached from the venue from in time
+	 * @throws NullPointerException
+	 *             if from or to is null
+	 * @throws InvalidSessionException
+	 *             if either session number is not positive
+	 */
+	public boolean canReach(Venue from, int fromSession, Venue to,
+			int toSession) {
+		if (from == null || to == null) {
+			throw new NullPointerException("Venues cannot be null");
+		}
+		if (fromSession <= 0 || toSession <= 0) {
+			throw new InvalidSessionException("Session numbers " + fromSession
+					+ " and " + toSession + " must be positive");
+		}
+		if (toSession < fromSession) {
+			return false;
+		}
+		if (from.equals(to)) {
+			return true;
+		}
+		validate();
+		if (reachability == null) {
+			reachability = new Reachability(timetable);
+		}
+		// the id of the venue to get to
+		int target = reachability.id(to);
+		if (target < 0) {
+			return false;
+		}
+		// the query being answered
+		Query query = new Query(from, fromSession, toSession);
+		// the cached set of venues reached by the query
+		long[] result = reached.get(query);
+		counted(result != null);
+		if (result == null) {
+			result = reachability.reached(from, fromSession, toSession);
+			reached.put(query, result);
+		}
+		return Bits.get(result, target);
+	}
+
+	/**
+	 * Counts a query answered from the cache (if hit is true) or not, in the
+	 * installed metrics.
+	 */
+	private static void counted(boolean hit) {
+		Instrumentation.get().count(hit ? "cache.hits" : "cache.misses", 1);
+	}
+
+	/**
+	 * Discards the cached answers if the timetable has changed since they were
+	 * derived.
+	 */
+	private void validate() {
+		if (version != timetable.getVersion()) {
+			destinations.clear();
+			reached.clear();
+			reachability = null;
+			version = timetable.getVersion();
+		}
+	}
+
+	/**
+	 * Determines whether this QueryCache is internally consistent (i.e. it
+	 * satisfies its class invariant).
+	 * 
+	 * @return true if this QueryCache is internally consistent, and false
+	 *         otherwise.
+	 */
+	public boolean checkInvariant() {
+		return timetable != null && destinations != null && reached != null
+				&& destinations.size() <= destinations.capacity
+				&& reached.size() <= reached.capacity
+				&& (reachability == null || reachability.checkInvariant());
+	}
+
+	/**
+	 * A query, identified by a venue and two session numbers.
+	 */
+	private static final class Query {
+
+		// the venue of the query
+		private final Venue venue;
+		// the first and last session numbers of the query
+		private final int first;
+		private final int last;
+
+		/**
+		 * Creates a query with the given venue and session numbers.
+		 */
+		Query(Venue venue, int first, int last) {
+			this.venue = venue;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Query)) {
+				return false;
+			}
+			// the query to compare with
+			Query query = (Query) object;
+			return first == query.first && last == query.last
+					&& venue.equals(query.venue);
+		}
+
+		@Override
+		public int hashCode() {
+			return (venue.hashCode() * 31 + first) * 31 + last;
+		}
+	}
+
+	/**
+	 * A map holding at most a fixed number of entries, which evicts the least
+	 * recently used entry when it is full.
+	 */
+	private static final class Lru<K, V> extends LinkedHashMap<K, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		// the maximum number of entries in the map
+		private final int capacity;
+
+		/**
+		 * Creates an empty map holding at most the given number of entries.
+		 */
+		Lru(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			return size() > capacity;
+		}
+	}
+
+}
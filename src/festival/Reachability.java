@@ -0,0 +1,502 @@
+package festival;
+
+import java.util.*;
+
+/**
+ * <p>
+ * An engine that answers whether a festival-goer at one venue in one
+ * session can get to another venue by a later session, using the shuttle
+ * services of a timetable.
+ * </p>
+ * 
+ * <p>
+ * At the end of each session, a festival-goer may either stay at their current
+ * venue, or catch one shuttle service departing it at the end of that session
+ * (arriving at its destination before the start of the next session). The
+ * engine precomputes, for each session and source venue, the set of
+ * destinations of the services departing at the end of that session, packed
+ * as a bitset of venue ids. A query then sweeps forward over the intermediate
+ * sessions, replacing the set of venues that could have been reached by its
+ * union with the destinations of each of those venues.
+ * </p>
+ * 
+ * <p>
+ * The engine also packs, for each session and destination venue, the set of
+ * sources of the services arriving there after that session, so that the
+ * positions from which a target can still be reached are found by a similar
+ * sweep backward from the target.
+ * </p>
+ * 
+ * <p>
+ * Since queries sweep over the packed services themselves, a change to a
+ * service between venues known to the engine, in a session up to its last
+ * one, is applied by changing one bit in each of two sets (see
+ * {@link #update(Service, boolean)}). An engine must not be updated while it
+ * is being queried.
+ * </p>
+ */
+public class Reachability {
+
+	// the registry issuing the ids of the venues
+	private VenueRegistry registry;
+	// the number of venue ids covered by the engine
+	private int venues;
+	// the last session in which a service departs (0 if there are none)
+	private int sessions;
+	/*
+	 * shuttles[s - 1][v] is the set of destinations of the services departing
+	 * the venue with id v at the end of session s, or null if there are none
+	 * (and shuttles[s - 1] is null if there are no services in session s)
+	 */
+	private long[][][] shuttles;
+	/*
+	 * feeders[s - 1][v] is the set of sources of the services arriving at the
+	 * venue with id v after session s, or null if there are none (and
+	 * feeders[s - 1] is null if and only if shuttles[s - 1] is null)
+	 */
+	private long[][][] feeders;
+	// rows[s - 1] is the number of non-null rows of shuttles[s - 1]
+	private int[] rows;
+
+	/*
+	 * Invariant: registry != null && 0 <= venues <= registry.size() &&
+	 * shuttles.length == feeders.length == sessions && each non-null
+	 * shuttles[s] and feeders[s] has length venues, each non-null
+	 * shuttles[s][v] or feeders[s][v] is a non-empty set of Bits.words(venues)
+	 * words that does not contain v, rows.length == sessions && rows[s] is the
+	 * number of non-null rows of shuttles[s], which is null if and only if
+	 * rows[s] == 0, and u is in shuttles[s][v] if and only if v is in
+	 * feeders[s][u].
+	 */
+
+	/**
+	 * Creates a reachability engine for the services in the given timetable,
+	 * using a new registry to issue the ids of its venues.
+	 * 
+	 * @param timetable
+	 *            the timetable of the festival
+	 * @throws NullPointerException
+	 *             if timetable is null
+	 */
+	public Reachability(Timetable timetable) {
+		this(timetable instanceof CompactTimetable ? (CompactTimetable) timetable
+				: new CompactTimetable(timetable));
+	}
+
+	/**
+	 * Creates a reachability engine for the services in the given compact
+	 * timetable, sharing the registry of the compact timetable.
+	 * 
+	 * @param timetable
+	 *            the timetable of the festival
+	 * @throws NullPointerException
+	 *             if timetable is null
+	 */
+	public Reachability(CompactTimetable timetable) {
+		registry = timetable.getRegistry();
+		venues = timetable.getVenueCount();
+		sessions = timetable.getLastSession();
+		shuttles = new long[sessions][][];
+		feeders = new long[sessions][][];
+		rows = new int[sessions];
+		// the number of words in each set of venues
+		int words = Bits.words(venues);
+		for (int session = 1; session <= sessions; session++) {
+			for (int source = 0; source < venues; source++) {
+				// the destinations of the services departing the source
+				int start = timetable.start(source, session);
+				int end = timetable.end(source, session);
+				if (start == end) {
+					continue;
+				}
+				if (shuttles[session - 1] == null) {
+					shuttles[session - 1] = new long[venues][];
+					feeders[session - 1] = new long[venues][];
+				}
+				// the set of destinations under construction
+				long[] row = new long[words];
+				for (int i = start; i < end; i++) {
+					// the id of the destination of the service
+					int destination = timetable.destination(i);
+					Bits.set(row, destination);
+					if (feeders[session - 1][destination] == null) {
+						feeders[session - 1][destination] = new long[words];
+					}
+					Bits.set(feeders[session - 1][destination], source);
+				}
+				shuttles[session - 1][source] = row;
+				rows[session - 1]++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the registry issuing the ids of the venues known to this engine.
+	 * 
+	 * @return the registry of this engine
+	 */
+	public VenueRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Returns true if a festival-goer who is at the venue from during the
+	 * session fromSession can be at the venue to during the session toSession
+	 * (catching at most one shuttle service at the end of each session in
+	 * between), and false otherwise.
+	 * 
+	 * @param from
+	 *            the starting venue
+	 * @param fromSession
+	 *            the session spent at the starting venue
+	 * @param to
+	 *            the venue to get to
+	 * @param toSession
+	 *            the session by which to be at the venue to
+	 * @return true if the venue to can be reached from the venue from in time
+	 * @throws NullPointerException
+	 *             if from or to is null
+	 * @throws InvalidSessionException
+	 *             if either session number is not positive
+	 */
+	public boolean canReach(Venue from, int fromSession, Venue to,
+			int toSession) {
+		if (from == null || to == null) {
+			throw new NullPointerException("Venues cannot be null");
+		}
+		if (fromSession <= 0 || toSession <= 0) {
+			throw new InvalidSessionException("Session numbers " + fromSession
+					+ " and " + toSession + " must be positive");
+		}
+		return canReach(from, fromSession, to, toSession, newSet(), newSet());
+	}
+
+	/**
+	 * Updates the engine after the given service has been added to (if added
+	 * is true) or removed from the timetable it was created from, returning
+	 * true if the change could be applied. A change involving a venue that has
+	 * no id below the engine's venue count, or a session after the last
+	 * session of the engine, cannot be applied, and the engine must then be
+	 * created again.
+	 * 
+	 * @param service
+	 *            the service that was added or removed
+	 * @param added
+	 *            true if the service was added, and false if it was removed
+	 * @return true if the change was applied, and false if it could not be
+	 */
+	boolean update(Service service, boolean added) {
+		// the ids of the venues of the service
+		int source = id(service.getSource());
+		int destination = id(service.getDestination());
+		// the index of the session of the service
+		int session = service.getSession() - 1;
+		if (source < 0 || destination < 0 || session >= sessions) {
+			return false;
+		}
+		if (added) {
+			if (shuttles[session] == null) {
+				shuttles[session] = new long[venues][];
+				feeders[session] = new long[venues][];
+			}
+			if (shuttles[session][source] == null) {
+				shuttles[session][source] = newSet();
+				rows[session]++;
+			}
+			if (feeders[session][destination] == null) {
+				feeders[session][destination] = newSet();
+			}
+			Bits.set(shuttles[session][source], destination);
+			Bits.set(feeders[session][destination], source);
+		} else if (shuttles[session] != null) {
+			if (shuttles[session][source] != null) {
+				Bits.clear(shuttles[session][source], destination);
+				if (Bits.isEmpty(shuttles[session][source])) {
+					shuttles[session][source] = null;
+					rows[session]--;
+				}
+			}
+			if (feeders[session][destination] != null) {
+				Bits.clear(feeders[session][destination], source);
+				if (Bits.isEmpty(feeders[session][destination])) {
+					feeders[session][destination] = null;
+				}
+			}
+			if (rows[session] == 0) {
+				shuttles[session] = null;
+				feeders[session] = null;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a new, empty set of venue ids of the right size for this engine,
+	 * for use as scratch space by queries.
+	 * 
+	 * @return a new set of venue ids
+	 */
+	long[] newSet() {
+		return new long[Bits.words(venues)];
+	}
+
+	/**
+	 * Answers the same question as the public canReach method, using the two
+	 * given sets (each of which must have been created by newSet) as scratch
+	 * space so that a caller making many queries need not allocate new ones.
+	 */
+	boolean canReach(Venue from, int fromSession, Venue to, int toSession,
+			long[] current, long[] next) {
+		if (toSession < fromSession) {
+			return false;
+		}
+		if (from.equals(to)) {
+			return true;
+		}
+		// the ids of the two venues
+		int source = id(from);
+		int target = id(to);
+		if (source < 0 || target < 0) {
+			return false;
+		}
+		Arrays.fill(current, 0L);
+		Bits.set(current, source);
+		// the last session whose services can help reach the target in time
+		int last = Math.min(toSession - 1, sessions);
+		for (int session = fromSession; session <= last; session++) {
+			// the services departing at the end of the session
+			long[][] departing = shuttles[session - 1];
+			if (departing == null) {
+				continue;
+			}
+			System.arraycopy(current, 0, next, 0, current.length);
+			for (int word = 0; word < current.length; word++) {
+				// the venues in this word that have been reached
+				long reached = current[word];
+				while (reached != 0) {
+					// the id of the next reached venue in the word
+					int venue = (word << 6) + Long.numberOfTrailingZeros(reached);
+					reached &= reached - 1;
+					if (departing[venue] != null) {
+						Bits.or(next, departing[venue]);
+					}
+				}
+			}
+			if (Bits.get(next, target)) {
+				return true;
+			}
+			// swap the sets of reached venues, reusing the old one
+			long[] swap = current;
+			current = next;
+			next = swap;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the set of ids of all the venues at which a festival-goer who is
+	 * at the venue from during the session fromSession can be during the
+	 * session toSession (which must be at least fromSession). The set is empty
+	 * if the venue from has no services in the engine's timetable.
+	 */
+	long[] reached(Venue from, int fromSession, int toSession) {
+		// the set of reached venues, and scratch space for the next one
+		long[] current = newSet();
+		long[] next = newSet();
+		// the id of the starting venue
+		int source = id(from);
+		if (source < 0) {
+			return current;
+		}
+		Bits.set(current, source);
+		// the last session whose services can be caught in time
+		int last = Math.min(toSession - 1, sessions);
+		for (int session = fromSession; session <= last; session++) {
+			// the services departing at the end of the session
+			long[][] departing = shuttles[session - 1];
+			if (departing == null) {
+				continue;
+			}
+			System.arraycopy(current, 0, next, 0, current.length);
+			for (int word = 0; word < current.length; word++) {
+				// the venues in this word that have been reached
+				long bits = current[word];
+				while (bits != 0) {
+					// the id of the next reached venue in the word
+					int venue =
+							(word << 6) + Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+					if (departing[venue] != null) {
+						Bits.or(next, departing[venue]);
+					}
+				}
+			}
+			// swap the sets of reached venues, reusing the old one
+			long[] swap = current;
+			current = next;
+			next = swap;
+		}
+		return current;
+	}
+
+	/**
+	 * Returns, for each session from the first up to that of the given event,
+	 * the set of ids (in the registry of this engine) of the venues at which a
+	 * festival-goer can spend that session and still be at the venue of the
+	 * event in time for it (catching at most one shuttle service at the end of
+	 * each session in between).
+	 * 
+	 * <p>
+	 * The set for session s is at index s - 1 of the returned array. The sets
+	 * are found by a single sweep backward from the session of the event, each
+	 * set being the previous one together with the sources of the services
+	 * arriving at its venues. The venue of the event is in every set, since
+	 * a festival-goer can wait there.
+	 * </p>
+	 * 
+	 * <p>
+	 * If the venue of the event has no id in the registry, no services run to
+	 * or from it, so the event can only be reached by waiting at its venue.
+	 * That venue cannot be in a set of ids, so every set is then empty, and
+	 * the caller must treat the venue of the event as an origin itself. (The
+	 * registry is only read, so the engine can be queried from several
+	 * threads at once.)
+	 * </p>
+	 * 
+	 * @param target
+	 *            the event to get to
+	 * @return the venues from which the event can still be reached, by session
+	 * @throws NullPointerException
+	 *             if target is null
+	 */
+	public BitSet[] getOrigins(Event target) {
+		if (target == null) {
+			throw new NullPointerException("The target event cannot be null");
+		}
+		// the sets of venues from which the target can be reached, by session
+		BitSet[] origins = new BitSet[target.getSession()];
+		// the id of the venue of the event
+		int id = registry.getId(target.getVenue());
+		if (id < 0 || id >= venues) {
+			// no services arrive at the venue, so it can only be waited at
+			for (int session = 1; session <= origins.length; session++) {
+				origins[session - 1] = new BitSet();
+				if (id >= 0) {
+					origins[session - 1].set(id);
+				}
+			}
+			return origins;
+		}
+		// the set of venues from which the target can be reached
+		long[] current = newSet();
+		Bits.set(current, id);
+		origins[origins.length - 1] = BitSet.valueOf(current);
+		for (int session = origins.length - 1; session >= 1; session--) {
+			// the services arriving after the session
+			long[][] arriving = session <= sessions ? feeders[session - 1]
+					: null;
+			if (arriving != null) {
+				// the set of venues found so far, before adding to it
+				long[] reached = current.clone();
+				for (int word = 0; word < reached.length; word++) {
+					// the venues in this word from which the target is reached
+					long bits = reached[word];
+					while (bits != 0) {
+						// the id of the next venue in the word
+						int venue =
+								(word << 6) + Long.numberOfTrailingZeros(bits);
+						bits &= bits - 1;
+						if (arriving[venue] != null) {
+							Bits.or(current, arriving[venue]);
+						}
+					}
+				}
+			}
+			origins[session - 1] = BitSet.valueOf(current);
+		}
+		return origins;
+	}
+
+	/**
+	 * Returns the id of the given venue, or -1 if it has no services in the
+	 * engine's timetable.
+	 */
+	int id(Venue venue) {
+		// the id of the venue in the registry
+		int id = registry.getId(venue);
+		return id < venues ? id : -1;
+	}
+
+	/**
+	 * Determines whether this Reachability is internally consistent (i.e. it
+	 * satisfies its class invariant).
+	 * 
+	 * @return true if this Reachability is internally consistent, and false
+	 *         otherwise.
+	 */
+	public boolean checkInvariant() {
+		if (registry == null || venues < 0 || venues > registry.size()
+				|| shuttles == null || shuttles.length != sessions
+				|| feeders == null || feeders.length != sessions
+				|| rows == null || rows.length != sessions) {
+			return false;
+		}
+		for (int session = 0; session < sessions; session++) {
+			if ((shuttles[session] == null) != (feeders[session] == null)
+					|| (shuttles[session] == null) != (rows[session] == 0)) {
+				return false;
+			}
+			// the number of non-null rows of the matrix of the session
+			int count = 0;
+			for (int source = 0; shuttles[session] != null
+					&& source < venues; source++) {
+				if (shuttles[session][source] != null) {
+					count++;
+				}
+			}
+			if (count != rows[session]) {
+				return false;
+			}
+			for (int source = 0; shuttles[session] != null
+					&& source < venues; source++) {
+				for (int destination = 0; destination < venues; destination++) {
+					// whether the sets record a service between the venues
+					boolean departs = shuttles[session][source] != null
+							&& Bits.get(shuttles[session][source], destination);
+					boolean arrives = feeders[session][destination] != null
+							&& Bits.get(feeders[session][destination], source);
+					if (departs != arrives) {
+						return false;
+					}
+				}
+			}
+		}
+		return rowsValid(shuttles) && rowsValid(feeders);
+	}
+
+	/**
+	 * Returns true if each non-null matrix of the given rows has length
+	 * venues, and each of its non-null rows is a non-empty set of
+	 * Bits.words(venues) words that does not contain the venue of the row.
+	 */
+	private boolean rowsValid(long[][][] rows) {
+		for (long[][] matrix : rows) {
+			if (matrix == null) {
+				continue;
+			}
+			if (matrix.length != venues) {
+				return false;
+			}
+			for (int venue = 0; venue < venues; venue++) {
+				if (matrix[venue] != null
+						&& (matrix[venue].length != Bits.words(venues)
+								|| Bits.isEmpty(matrix[venue])
+								|| Bits.get(matrix[venue], venue))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+}
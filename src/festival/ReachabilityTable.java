@@ -0,0 +1,284 @@
+package festival;
+
+import java.util.*;
+
+/**
+ * <p>
+ * An immutable table that answers whether a festival-goer at one venue in one
+ * session can get to another venue by a later session, in time logarithmic in
+ * the number of sessions in between.
+ * </p>
+ * 
+ * <p>
+ * At the end of each session, a festival-goer may either stay at their current
+ * venue, or catch one shuttle service departing it at the end of that session.
+ * The table precomputes, for each aligned block of 2^k consecutive sessions
+ * (sessions j * 2^k + 1 to (j + 1) * 2^k), the boolean reachability matrix of
+ * the venues across the block, each row packed as a bitset of venue ids. The
+ * matrix of a block is the product of the matrices of its two halves. A query
+ * covers the sessions between its two venues with O(log n) aligned blocks, and
+ * applies the matrix of each block in turn to the set of reached venues.
+ * </p>
+ * 
+ * <p>
+ * (Compared with {@link Reachability}, which sweeps over every session in
+ * between, this table uses more memory, roughly two matrices per session, in
+ * exchange for faster queries over long spans of sessions.)
+ * </p>
+ */
+public class ReachabilityTable {
+
+	// the registry issuing the ids of the venues
+	private VenueRegistry registry;
+	// the number of venue ids covered by the table
+	private int venues;
+	// the last session in which a service departs (0 if there are none)
+	private int sessions;
+	/*
+	 * blocks[k][j][v] is the set of venues reachable from the venue with id v
+	 * across the sessions j * 2^k + 1 to (j + 1) * 2^k, or null if that set is
+	 * just v itself
+	 */
+	private long[][][][] blocks;
+
+	/*
+	 * Invariant: registry != null && 0 <= venues <= registry.size() &&
+	 * blocks.length >= 1 && blocks[k].length == ceil(sessions / 2^k) && each
+	 * blocks[k][j] has length venues, and each non-null blocks[k][j][v] is a
+	 * set of Bits.words(venues) words that contains v.
+	 */
+
+	/**
+	 * Creates a reachability table for the services in the given timetable,
+	 * using a new registry to issue the ids of its venues.
+	 * 
+	 * @param timetable
+	 *            the timetable of the festival
+	 * @throws NullPointerException
+	 *             if timetable is null
+	 */
+	public ReachabilityTable(Timetable timetable) {
+		this(timetable instanceof CompactTimetable ? (CompactTimetable) timetable
+				: new CompactTimetable(timetable));
+	}
+
+	/**
+	 * Creates a reachability table for the services in the given compact
+	 * timetable, sharing the registry of the compact timetable.
+	 * 
+	 * @param timetable
+	 *            the timetable of the festival
+	 * @throws NullPointerException
+	 *             if timetable is null
+	 */
+	public ReachabilityTable(CompactTimetable timetable) {
+		registry = timetable.getRegistry();
+		venues = timetable.getVenueCount();
+		sessions = timetable.getLastSession();
+		// the number of levels of blocks, so that the top level has one block
+		int levels = 1;
+		while ((1 << (levels - 1)) < sessions) {
+			levels++;
+		}
+		blocks = new long[levels][][][];
+		blocks[0] = new long[sessions][][];
+		for (int session = 1; session <= sessions; session++) {
+			blocks[0][session - 1] = step(timetable, session);
+		}
+		for (int level = 1; level < levels; level++) {
+			// the blocks of the level below, to be paired up
+			long[][][] below = blocks[level - 1];
+			blocks[level] = new long[(below.length + 1) / 2][][];
+			for (int j = 0; j < blocks[level].length; j++) {
+				blocks[level][j] = 2 * j + 1 < below.length ? compose(
+						below[2 * j], below[2 * j + 1]) : below[2 * j];
+			}
+		}
+	}
+
+	/**
+	 * Returns the matrix of venues reachable across the single given session
+	 * (by staying put, or catching a service at the end of the session).
+	 */
+	private long[][] step(CompactTimetable timetable, int session) {
+		// the matrix under construction
+		long[][] matrix = new long[venues][];
+		for (int source = 0; source < venues; source++) {
+			// the destinations of the services departing the source
+			int start = timetable.start(source, session);
+			int end = timetable.end(source, session);
+			if (start == end) {
+				continue;
+			}
+			matrix[source] = new long[Bits.words(venues)];
+			Bits.set(matrix[source], source);
+			for (int i = start; i < end; i++) {
+				Bits.set(matrix[source], timetable.destination(i));
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * Returns the matrix of venues reachable across the sessions of first
+	 * followed by the sessions of second. (Rows are shared between matrices
+	 * where they are unchanged, so none of them may be modified.)
+	 */
+	private long[][] compose(long[][] first, long[][] second) {
+		// the matrix under construction
+		long[][] matrix = new long[venues][];
+		for (int source = 0; source < venues; source++) {
+			if (first[source] == null) {
+				matrix[source] = second[source];
+			} else {
+				matrix[source] = new long[Bits.words(venues)];
+				apply(second, first[source], matrix[source]);
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * Sets reached to the set of venues reachable across the sessions of the
+	 * given matrix from the venues in the set from.
+	 */
+	private void apply(long[][] matrix, long[] from, long[] reached) {
+		for (int word = 0; word < from.length; word++) {
+			// the venues in this word to start from
+			long bits = from[word];
+			while (bits != 0) {
+				// the id of the next venue to start from
+				int venue = (word << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				if (matrix[venue] == null) {
+					Bits.set(reached, venue);
+				} else {
+					Bits.or(reached, matrix[venue]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the registry issuing the ids of the venues known to this table.
+	 * 
+	 * @return the registry of this table
+	 */
+	public VenueRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Returns true if a festival-goer who is at the venue from during the
+	 * session afterSession can be at the venue to during the session
+	 * bySession (catching at most one shuttle service at the end of each
+	 * session from afterSession up to, but not including, bySession), and
+	 * false otherwise.
+	 * 
+	 * @param from
+	 *            the starting venue
+	 * @param afterSession
+	 *            the session spent at the starting venue
+	 * @param to
+	 *            the venue to get to
+	 * @param bySession
+	 *            the session by which to be at the venue to
+	 * @return true if the venue to can be reached from the venue from in time
+	 * @throws NullPointerException
+	 *             if from or to is null
+	 * @throws InvalidSessionException
+	 *             if either session number is not positive
+	 */
+	public boolean canReach(Venue from, int afterSession, Venue to,
+			int bySession) {
+		if (from == null || to == null) {
+			throw new NullPointerException("Venues cannot be null");
+		}
+		if (afterSession <= 0 || bySession <= 0) {
+			throw new InvalidSessionException("Session numbers "
+					+ afterSession + " and " + bySession + " must be positive");
+		}
+		if (bySession < afterSession) {
+			return false;
+		}
+		if (from.equals(to)) {
+			return true;
+		}
+		// the ids of the two venues
+		int source = id(from);
+		int target = id(to);
+		if (source < 0 || target < 0) {
+			return false;
+		}
+		// the set of reached venues, and scratch space for the next one
+		long[] reached = new long[Bits.words(venues)];
+		long[] next = new long[reached.length];
+		Bits.set(reached, source);
+		// the first session whose services have not been applied yet
+		int session = afterSession;
+		// the last session whose services can help reach the target in time
+		int last = Math.min(bySession - 1, sessions);
+		while (session <= last) {
+			// the largest aligned block starting at the session that fits
+			int level = Math.min(Integer.numberOfTrailingZeros(session - 1),
+					blocks.length - 1);
+			while ((1 << level) > last - session + 1) {
+				level--;
+			}
+			Arrays.fill(next, 0L);
+			apply(blocks[level][(session - 1) >>> level], reached, next);
+			if (Bits.get(next, target)) {
+				return true;
+			}
+			// swap the sets of reached venues, reusing the old one
+			long[] swap = reached;
+			reached = next;
+			next = swap;
+			session += 1 << level;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the id of the given venue, or -1 if it has no services in the
+	 * table's timetable.
+	 */
+	private int id(Venue venue) {
+		// the id of the venue in the registry
+		int id = registry.getId(venue);
+		return id < venues ? id : -1;
+	}
+
+	/**
+	 * Determines whether this ReachabilityTable is internally consistent (i.e.
+	 * it satisfies its class invariant).
+	 * 
+	 * @return true if this ReachabilityTable is internally consistent, and
+	 *         false otherwise.
+	 */
+	public boolean checkInvariant() {
+		if (registry == null || venues < 0 || venues > registry.size()
+				|| blocks == null || blocks.length < 1) {
+			return false;
+		}
+		for (int level = 0; level < blocks.length; level++) {
+			if (blocks[level].length != (sessions + (1 << level) - 1) >>> level) {
+				return false;
+			}
+			for (long[][] matrix : blocks[level]) {
+				if (matrix.length != venues) {
+					return false;
+				}
+				for (int venue = 0; venue < venues; venue++) {
+					if (matrix[venue] != null
+							&& (matrix[venue].length != Bits.words(venues)
+									|| !Bits.get(matrix[venue], venue))) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+}
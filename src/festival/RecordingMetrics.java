@@ -0,0 +1,259 @@
+package festival;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * <p>
+ * Metrics that record measurements in memory: counters in adders, gauges in
+ * atomic longs, and latencies in histograms, each created on first use. Many
+ * threads may record measurements at once without contending for a lock.
+ * </p>
+ * 
+ * <p>
+ * The measurements can be read directly, or through JMX once the metrics are
+ * registered with an MBean server (see {@link Instrumentation#enable()}).
+ * </p>
+ */
+public class RecordingMetrics implements Metrics, RecordingMetricsMXBean {
+
+	// the suffix of the names of the latencies that throughputs are based on
+	private static final String TIME = ".time";
+
+	// the counters, by name
+	private ConcurrentMap<String, LongAdder> counters;
+	// the gauges, by name
+	private ConcurrentMap<String, AtomicLong> gauges;
+	// the histograms of latencies, by name
+	private ConcurrentMap<String, LatencyHistogram> latencies;
+
+	/*
+	 * Invariant: counters != null && gauges != null && latencies != null &&
+	 * none of the maps contains null
+	 */
+
+	/**
+	 * Creates metrics with no measurements recorded.
+	 */
+	public RecordingMetrics() {
+		counters = new ConcurrentHashMap<>();
+		gauges = new ConcurrentHashMap<>();
+		latencies = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Returns true: recording metrics are always enabled.
+	 */
+	@Override
+	public boolean isEnabled() {
+		return true;
+	}
+
+	@Override
+	public void count(String name, long delta) {
+		// the counter with the name
+		LongAdder counter = counters.get(name);
+		if (counter == null) {
+			counter = new LongAdder();
+			// the counter added by another thread in the meantime, if any
+			LongAdder existing = counters.putIfAbsent(name, counter);
+			if (existing != null) {
+				counter = existing;
+			}
+		}
+		counter.add(delta);
+	}
+
+	@Override
+	public void record(String name, long nanos) {
+		// the histogram of the latencies with the name
+		LatencyHistogram histogram = latencies.get(name);
+		if (histogram == null) {
+			histogram = new LatencyHistogram();
+			// the histogram added by another thread in the meantime, if any
+			LatencyHistogram existing = latencies.putIfAbsent(name, histogram);
+			if (existing != null) {
+				histogram = existing;
+			}
+		}
+		histogram.record(nanos);
+	}
+
+	@Override
+	public void gauge(String name, long value) {
+		// the gauge with the name
+		AtomicLong gauge = gauges.get(name);
+		if (gauge == null) {
+			gauge = new AtomicLong();
+			// the gauge added by another thread in the meantime, if any
+			AtomicLong existing = gauges.putIfAbsent(name, gauge);
+			if (existing != null) {
+				gauge = existing;
+			}
+		}
+		gauge.set(value);
+	}
+
+	/**
+	 * Returns the current value of the counter with the given name (0 if
+	 * nothing has been counted).
+	 * 
+	 * @param name
+	 *            the name of the counter
+	 * @return the value of the counter
+	 */
+	public long getCounter(String name) {
+		// the counter with the name
+		LongAdder counter = counters.get(name);
+		return counter == null ? 0 : counter.sum();
+	}
+
+	/**
+	 * Returns the current value of the gauge with the given name (0 if it has
+	 * not been set).
+	 * 
+	 * @param name
+	 *            the name of the gauge
+	 * @return the value of the gauge
+	 */
+	public long getGauge(String name) {
+		// the gauge with the name
+		AtomicLong gauge = gauges.get(name);
+		return gauge == null ? 0 : gauge.get();
+	}
+
+	/**
+	 * Returns the number of operations of the kind with the given name whose
+	 * latencies have been recorded.
+	 * 
+	 * @param name
+	 *            the name of the kind of operation
+	 * @return the number of latencies recorded
+	 */
+	public long getLatencyCount(String name) {
+		// the histogram of the latencies with the name
+		LatencyHistogram histogram = latencies.get(name);
+		return histogram == null ? 0 : histogram.count();
+	}
+
+	/**
+	 * Returns an upper bound (accurate to within 12.5%) on the given
+	 * percentile of the latencies recorded for the kind of operation with the
+	 * given name, or 0 if none have been recorded.
+	 * 
+	 * @param name
+	 *            the name of the kind of operation
+	 * @param percentile
+	 *            the percentile, from 0 to 100
+	 * @return the percentile of the latencies, in nanoseconds
+	 * @throws IllegalArgumentException
+	 *             if the percentile is not from 0 to 100
+	 */
+	public long getLatencyPercentile(String name, double percentile) {
+		if (!(percentile >= 0 && percentile <= 100)) {
+			throw new IllegalArgumentException("The percentile " + percentile
+					+ " must be from 0 to 100");
+		}
+		// the histogram of the latencies with the name
+		LatencyHistogram histogram = latencies.get(name);
+		return histogram == null ? 0 : histogram.percentile(percentile);
+	}
+
+	@Override
+	public Map<String, Long> getCounters() {
+		// the values under construction, sorted by name
+		Map<String, Long> values = new TreeMap<>();
+		for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+			values.put(counter.getKey(), counter.getValue().sum());
+		}
+		return values;
+	}
+
+	@Override
+	public Map<String, Long> getGauges() {
+		// the values under construction, sorted by name
+		Map<String, Long> values = new TreeMap<>();
+		for (Map.Entry<String, AtomicLong> gauge : gauges.entrySet()) {
+			values.put(gauge.getKey(), gauge.getValue().get());
+		}
+		return values;
+	}
+
+	@Override
+	public Map<String, Long> getLatencies() {
+		// the summaries under construction, sorted by name
+		Map<String, Long> values = new TreeMap<>();
+		for (Map.Entry<String, LatencyHistogram> latency : latencies
+				.entrySet()) {
+			// the name of the kind of operation
+			String name = latency.getKey();
+			// the histogram of its latencies
+			LatencyHistogram histogram = latency.getValue();
+			values.put(name + ".count", histogram.count());
+			values.put(name + ".mean", histogram.mean());
+			values.put(name + ".p50", histogram.percentile(50));
+			values.put(name + ".p90", histogram.percentile(90));
+			values.put(name + ".p99", histogram.percentile(99));
+			values.put(name + ".max", histogram.max());
+		}
+		return values;
+	}
+
+	@Override
+	public Map<String, Double> getRates() {
+		// the throughputs under construction, sorted by name
+		Map<String, Double> rates = new TreeMap<>();
+		for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+			// the name of the counter
+			String name = counter.getKey();
+			// the position of the last dot in the name
+			int dot = name.lastIndexOf('.');
+			// the histogram of the time taken by the counted operations
+			LatencyHistogram time = dot < 0 ? null : latencies.get(name
+					.substring(0, dot) + TIME);
+			if (time != null && time.total() > 0
+					&& !name.endsWith(TIME)) {
+				rates.put(name + "/s", counter.getValue().sum() * 1e9
+						/ time.total());
+			}
+		}
+		return rates;
+	}
+
+	@Override
+	public double getCacheHitRatio() {
+		// the number of queries answered from and not from a cache
+		long hits = getCounter("cache.hits");
+		long misses = getCounter("cache.misses");
+		return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+	}
+
+	@Override
+	public void reset() {
+		counters.clear();
+		gauges.clear();
+		latencies.clear();
+	}
+
+	/**
+	 * Determines whether this RecordingMetrics is internally consistent (i.e.
+	 * it satisfies its class invariant). (The result is only meaningful while
+	 * no measurement is being recorded.)
+	 * 
+	 * @return true if this RecordingMetrics is internally consistent, and
+	 *         false otherwise.
+	 */
+	public boolean checkInvariant() {
+		if (counters == null || gauges == null || latencies == null) {
+			return false;
+		}
+		for (LatencyHistogram histogram : latencies.values()) {
+			if (!histogram.checkInvariant()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
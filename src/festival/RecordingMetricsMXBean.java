@@ -0,0 +1,58 @@
+package festival;
+
+import java.util.*;
+
+/**
+ * The management interface through which {@link RecordingMetrics} are
+ * inspected with JMX.
+ */
+public interface RecordingMetricsMXBean {
+
+	/**
+	 * Returns the current value of each counter, by name.
+	 * 
+	 * @return the values of the counters
+	 */
+	Map<String, Long> getCounters();
+
+	/**
+	 * Returns the current value of each gauge, by name.
+	 * 
+	 * @return the values of the gauges
+	 */
+	Map<String, Long> getGauges();
+
+	/**
+	 * Returns summaries of the recorded latencies, in nanoseconds. For each
+	 * kind of operation NAME, the map holds NAME.count (the number of
+	 * operations recorded), NAME.mean, NAME.p50, NAME.p90, NAME.p99 and
+	 * NAME.max.
+	 * 
+	 * @return the summaries of the latencies
+	 */
+	Map<String, Long> getLatencies();
+
+	/**
+	 * Returns the throughput of each counter PREFIX.NAME for which latencies
+	 * PREFIX.time are recorded, as PREFIX.NAME/s: the value of the counter
+	 * divided by the total time recorded, in seconds (for example,
+	 * "reader.bytes/s").
+	 * 
+	 * @return the throughputs, by name
+	 */
+	Map<String, Double> getRates();
+
+	/**
+	 * Returns the fraction of the queries answered by a query cache that were
+	 * answered from the cache, or 0 if there have been none.
+	 * 
+	 * @return the cache hit ratio
+	 */
+	double getCacheHitRatio();
+
+	/**
+	 * Discards all of the measurements recorded so far.
+	 */
+	void reset();
+
+}
@@ -0,0 +1,212 @@
+package festival;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * <p>
+ * A fork-join task that parses a piece of the descriptions of venues in a
+ * memory-mapped timetable file, for {@link ScheduleReader#readParallel}.
+ * </p>
+ * 
+ * <p>
+ * Each task looks up venues in a registry of its own, so that tasks never
+ * contend for a shared registry, and records the venues it finds described
+ * and the services it finds as ids in that registry. Parsing stops at the
+ * first format error in the piece. (Whether a venue is described more than
+ * once across pieces can only be decided once all the pieces are parsed.)
+ * </p>
+ */
+@SuppressWarnings("serial")
+final class ScheduleChunk extends RecursiveAction implements
+		ScheduleParser.Sink {
+
+	// the bytes of the whole file
+	private ByteBuffer buffer;
+	// the number of sessions in the festival
+	private int sessions;
+	// the position at which the piece starts (the start of a description)
+	private int from;
+	// the position at or after which no new description is started
+	private int until;
+	// the registry of the venues found in the piece
+	private VenueRegistry registry;
+	// the id and position of each venue description found, in pairs
+	private int[] blocks;
+	// the number of ints used in blocks
+	private int blockCount;
+	// the source id, session and destination id of each service, in triples
+	private int[] services;
+	// the number of ints used in services
+	private int serviceCount;
+	// the first format error found in the piece, or null if there is none
+	private FormatException error;
+	// the position of the line of the error, if there is one
+	private int errorOffset;
+	// the number of lines read from the piece
+	private int lines;
+
+	/**
+	 * Creates a task to parse the descriptions that start in the given range
+	 * of positions in the given bytes.
+	 * 
+	 * @param buffer
+	 *            the bytes of the whole file
+	 * @param sessions
+	 *            the number of sessions in the festival
+	 * @param from
+	 *            the position at which the piece starts
+	 * @param until
+	 *            the position at or after which no new description is started
+	 */
+	ScheduleChunk(ByteBuffer buffer, int sessions, int from, int until) {
+		this.buffer = buffer;
+		this.sessions = sessions;
+		this.from = from;
+		this.until = until;
+		this.registry = new VenueRegistry();
+		this.blocks = new int[16];
+		this.services = new int[96];
+		this.errorOffset = Integer.MAX_VALUE;
+	}
+
+	@Override
+	protected void compute() {
+		// the parser for the piece
+		ScheduleParser parser = new ScheduleParser(buffer, registry, from);
+		try {
+			parser.parseBlocks(sessions, until, this);
+		} catch (FormatException e) {
+			error = e;
+			errorOffset = parser.errorOffset();
+		}
+		lines = parser.lines();
+	}
+
+	@Override
+	public boolean venue(Venue source, int offset) {
+		if (blockCount + 2 > blocks.length) {
+			blocks = Arrays.copyOf(blocks, 2 * blocks.length);
+		}
+		blocks[blockCount++] = source.getId(registry);
+		blocks[blockCount++] = offset;
+		return true;
+	}
+
+	@Override
+	public void service(Venue source, Venue destination, int session) {
+		if (serviceCount + 3 > services.length) {
+			services = Arrays.copyOf(services, 2 * services.length);
+		}
+		services[serviceCount++] = source.getId(registry);
+		services[serviceCount++] = session;
+		services[serviceCount++] = destination.getId(registry);
+	}
+
+	@Override
+	public void endVenue(Venue source) {
+	}
+
+	/**
+	 * Returns the first format error found in the piece, or null if there is
+	 * none.
+	 */
+	FormatException getError() {
+		return error;
+	}
+
+	/**
+	 * Returns the position of the line of the first format error found in the
+	 * piece, or Integer.MAX_VALUE if there is none.
+	 */
+	int getErrorOffset() {
+		return errorOffset;
+	}
+
+	/**
+	 * Returns the number of lines read from the piece.
+	 */
+	int lines() {
+		return lines;
+	}
+
+	/**
+	 * Returns the venues of the given registry that correspond to each of the
+	 * venues found in the piece, indexed by their ids in the piece.
+	 */
+	Venue[] venues(VenueRegistry shared) {
+		// the corresponding venues of the shared registry
+		Venue[] venues = new Venue[registry.size()];
+		for (int id = 0; id < venues.length; id++) {
+			venues[id] = shared.intern(registry.getVenue(id).getName());
+		}
+		return venues;
+	}
+
+	/**
+	 * Returns the number of venue descriptions found in the piece.
+	 */
+	int blockCount() {
+		return blockCount / 2;
+	}
+
+	/**
+	 * Returns the id (in the piece) of the venue of the i-th description
+	 * found in the piece.
+	 */
+	int blockVenue(int i) {
+		return blocks[2 * i];
+	}
+
+	/**
+	 * Returns the position of the start of the i-th description found in the
+	 * piece.
+	 */
+	int blockOffset(int i) {
+		return blocks[2 * i + 1];
+	}
+
+	/**
+	 * Adds each of the services found in the piece to the given timetable,
+	 * using the given venues (indexed by their ids in the piece).
+	 */
+	void addServices(ShuttleTimetable timetable, Venue[] venues) {
+		for (int i = 0; i < serviceCount; i += 3) {
+			timetable.addService(new Service(venues[services[i]],
+					venues[services[i + 2]], services[i + 1]));
+		}
+	}
+
+	/**
+	 * Returns the position of the first description to start after the
+	 * first empty line at or after the given position (or the limit of the
+	 * buffer if there is none). When the descriptions before it are well
+	 * formed, this is where the next description starts.
+	 */
+	static int nextBlockStart(ByteBuffer buffer, int position) {
+		// the start of the line being examined
+		int line = position;
+		while (line < buffer.limit()
+				&& !ScheduleParser.isLineStart(buffer, line)) {
+			line++;
+		}
+		while (line < buffer.limit()) {
+			// whether the line only holds whitespace so far
+			boolean blank = true;
+			// the position of the end of the line
+			int end = line;
+			while (end < buffer.limit()
+					&& !ScheduleParser.isLineEnd(buffer.get(end))) {
+				blank &= ScheduleParser.isWhitespace(buffer.get(end));
+				end++;
+			}
+			line = ScheduleParser.skipLineEnd(buffer, end);
+			if (blank) {
+				return line;
+			}
+		}
+		return buffer.limit();
+	}
+
+}
@@ -0,0 +1,59 @@
+package festival;
+
+/**
+ * <p>
+ * Receives the contents of a timetable file as it is parsed by
+ * {@link ScheduleReader#parse(String, ScheduleHandler)} or
+ * {@link ScheduleReader#parseLenient(String, ScheduleHandler)}, so that the
+ * services it describes can be filtered, counted or stored elsewhere without
+ * building a whole timetable in memory.
+ * </p>
+ * 
+ * <p>
+ * The methods are called in file order: startTimetable once, then for each
+ * description of a venue, startVenue, service for each service described,
+ * and endVenue, and finally endTimetable (unless the parse is abandoned
+ * because of a format error).
+ * </p>
+ */
+public interface ScheduleHandler {
+
+	/**
+	 * Called when the first line of the file, giving the number of sessions in
+	 * the festival, has been parsed.
+	 * 
+	 * @param sessions
+	 *            the number of sessions in the festival
+	 */
+	void startTimetable(int sessions);
+
+	/**
+	 * Called when the description of the given venue starts.
+	 * 
+	 * @param source
+	 *            the venue being described
+	 */
+	void startVenue(Venue source);
+
+	/**
+	 * Called for each service found in the description of a venue.
+	 * 
+	 * @param service
+	 *            the service found
+	 */
+	void service(Service service);
+
+	/**
+	 * Called when the description of the given venue ends.
+	 * 
+	 * @param source
+	 *            the venue that was described
+	 */
+	void endVenue(Venue source);
+
+	/**
+	 * Called when the end of the file has been reached.
+	 */
+	void endTimetable();
+
+}
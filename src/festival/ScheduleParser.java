@@ -0,0 +1,674 @@
+package festival;
+
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import festival.FormatException.Kind;
+
+/**
+ * <p>
+ * Parses a shuttle timetable, in the format described by
+ * {@link ScheduleReader#read(String)}, directly from the bytes of a buffer
+ * (typically a memory-mapped file).
+ * </p>
+ * 
+ * <p>
+ * Lines and tokens are located by scanning the bytes in place, and venue names
+ * are looked up in a {@link VenueRegistry} by their bytes, so that no string
+ * is created for each line or token. Bytes with values up to and including
+ * that of a space (' ') are whitespace, as for String.trim().
+ * </p>
+ * 
+ * <p>
+ * A parser can start at any line of the buffer, so that the descriptions of
+ * venues (which are separated by empty lines) can be parsed in pieces, each by
+ * its own parser.
+ * </p>
+ */
+final class ScheduleParser {
+
+	/**
+	 * Receives the venue descriptions and services found by a parser.
+	 */
+	interface Sink {
+
+		/**
+		 * Called when the description of the given venue starts at the given
+		 * position in the buffer. Returns false if the venue has already been
+		 * described, which the parser reports as a format error.
+		 */
+		boolean venue(Venue source, int offset);
+
+		/**
+		 * Called for each service found in the description of a venue.
+		 */
+		void service(Venue source, Venue destination, int session);
+
+		/**
+		 * Called when the description of the given venue ends (unless venue
+		 * returned false for it).
+		 */
+		void endVenue(Venue source);
+	}
+
+	// the bytes being parsed
+	private ByteBuffer buffer;
+	// the registry used to look up the venues named in the bytes
+	private VenueRegistry registry;
+	// the pool the services passed to a handler are interned in, or null if
+	// a new service is created for each of them
+	private ServicePool pool;
+	// the position in the buffer at which the parser started
+	private int origin;
+	// the number of lines before the origin, or -1 if not yet counted
+	private int linesBefore;
+	// the position in the buffer at which the next line starts
+	private int position;
+	// the number of lines read since the origin
+	private int line;
+	// the position in the buffer at which the current line starts
+	private int lineStart;
+	// the position in the buffer at which the current line starts (after
+	// leading whitespace has been removed by trim())
+	private int start;
+	// the position in the buffer at which the current line ends (excluding
+	// the line terminator)
+	private int end;
+	// the position of the line on which the last format error was found
+	private int errorOffset;
+	// the format errors found so far, or null if the parser stops at the
+	// first error
+	private List<FormatException> errors;
+	/*
+	 * the number of the line on which each venue was last named as a
+	 * destination, indexed by venue id (used to find duplicate services)
+	 */
+	private int[] named;
+	// the destinations of the services found on the current session line,
+	// which are passed on once the whole line is known to be valid
+	private Venue[] destinations;
+
+	/**
+	 * Creates a parser for the bytes of the given buffer, from position 0 up to
+	 * its limit.
+	 * 
+	 * @param buffer
+	 *            the bytes to parse
+	 * @param registry
+	 *            the registry used to look up the venues named in the bytes
+	 */
+	ScheduleParser(ByteBuffer buffer, VenueRegistry registry) {
+		this(buffer, registry, 0);
+	}
+
+	/**
+	 * Creates a parser for the bytes of the given buffer, from the given
+	 * position (which must be the start of a line) up to its limit.
+	 * 
+	 * @param buffer
+	 *            the bytes to parse
+	 * @param registry
+	 *            the registry used to look up the venues named in the bytes
+	 * @param origin
+	 *            the position at which to start parsing
+	 */
+	ScheduleParser(ByteBuffer buffer, VenueRegistry registry, int origin) {
+		this.buffer = buffer;
+		this.registry = registry;
+		this.origin = origin;
+		this.linesBefore = origin == 0 ? 0 : -1;
+		this.position = origin;
+		this.line = 0;
+		this.errorOffset = -1;
+		this.named = new int[16];
+		this.destinations = new Venue[16];
+	}
+
+	/**
+	 * Parses the bytes as a whole timetable file, adding each of the services
+	 * it describes to the given timetable.
+	 * 
+	 * @param timetable
+	 *            the timetable to add the services to
+	 * @throws FormatException
+	 *             if the bytes are not in the format of a timetable file
+	 */
+	void parse(final ShuttleTimetable timetable) throws FormatException {
+		parse(new ScheduleHandler() {
+			@Override
+			public void startTimetable(int sessions) {
+			}
+
+			@Override
+			public void startVenue(Venue source) {
+			}
+
+			@Override
+			public void service(Service service) {
+				timetable.addService(service);
+			}
+
+			@Override
+			public void endVenue(Venue source) {
+			}
+
+			@Override
+			public void endTimetable() {
+			}
+		});
+	}
+
+	/**
+	 * Parses the bytes as a whole timetable file, passing its contents to the
+	 * given handler as they are found.
+	 * 
+	 * @param handler
+	 *            the handler receiving the contents of the file
+	 * @throws FormatException
+	 *             if the bytes are not in the format of a timetable file (and
+	 *             errors are not being collected)
+	 */
+	void parse(final ScheduleHandler handler) throws FormatException {
+		// the number of sessions in the festival
+		int sessions = parseHeader();
+		if (sessions <= 0) {
+			return;
+		}
+		handler.startTimetable(sessions);
+		// the ids of the venues that have been described
+		final BitSet described = new BitSet();
+		parseBlocks(sessions, buffer.limit(), new Sink() {
+			@Override
+			public boolean venue(Venue source, int offset) {
+				if (described.get(source.getId(registry))) {
+					return false;
+				}
+				described.set(source.getId(registry));
+				handler.startVenue(source);
+				return true;
+			}
+
+			@Override
+			public void service(Venue source, Venue destination, int session) {
+				handler.service(pool == null ? new Service(source, destination,
+						session) : pool.intern(source, destination, session));
+			}
+
+			@Override
+			public void endVenue(Venue source) {
+				handler.endVenue(source);
+			}
+		});
+		handler.endTimetable();
+	}
+
+	/**
+	 * Parses the bytes as a whole timetable file as for
+	 * parse(ScheduleHandler), but rather than stopping at the first format
+	 * error, carries on past each error and returns all of the errors found,
+	 * in file order.
+	 * 
+	 * (Services on a line with an error, or in a description of a venue with
+	 * an invalid or duplicate name, are not passed to the handler. If the
+	 * first line of the file is invalid, the number of sessions is taken from
+	 * the first description of a venue.)
+	 * 
+	 * @param handler
+	 *            the handler receiving the contents of the file
+	 * @return the format errors found in the bytes
+	 */
+	List<FormatException> parseLenient(ScheduleHandler handler) {
+		errors = new ArrayList<>();
+		try {
+			parse(handler);
+		} catch (FormatException e) {
+			// errors are collected rather than thrown
+			throw new IllegalStateException(e);
+		}
+		return errors;
+	}
+
+	/**
+	 * Interns the services passed to a handler by parse(ScheduleHandler) in
+	 * the given pool, rather than creating a new service for each of them.
+	 * 
+	 * @param pool
+	 *            the pool to intern the services in
+	 */
+	void intern(ServicePool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Returns the number of lines the parser has read.
+	 */
+	int lines() {
+		return line;
+	}
+
+	/**
+	 * Returns the position in the buffer at which the next line starts.
+	 */
+	int position() {
+		return position;
+	}
+
+	/**
+	 * Returns the position in the buffer of the start of the line on which
+	 * the last format error was found, or -1 if none has been found. (The
+	 * error for a missing line at the end of the buffer is found at the limit
+	 * of the buffer.)
+	 */
+	int errorOffset() {
+		return errorOffset;
+	}
+
+	/**
+	 * Parses the next line of the bytes as the first line of a timetable file,
+	 * returning the number of sessions in the festival. (If errors are being
+	 * collected and the line is invalid, the number of sessions is taken from
+	 * the first description of a venue, or -1 is returned if there is none.)
+	 * 
+	 * @throws FormatException
+	 *             if the first line is missing or does not hold a single
+	 *             positive integer
+	 */
+	int parseHeader() throws FormatException {
+		if (!nextLine()) {
+			report(error(1, position, position, Kind.HEADER,
+					"expected the number of sessions but the"
+					+ " file is empty"));
+			return -1;
+		}
+		trim();
+		// the number of sessions in the festival
+		int sessions = parseNumber(start, end);
+		if (sessions <= 0) {
+			report(error(line, lineStart, start, Kind.HEADER,
+					"the number of sessions must be a positive integer but"
+					+ " was '" + text(start, end) + "'"));
+			return inferSessions();
+		}
+		return sessions;
+	}
+
+	/**
+	 * Returns the number of session lines in the description of a venue that
+	 * starts on the next line, or -1 if it does not start a description,
+	 * without moving on from the current line.
+	 */
+	private int inferSessions() {
+		// the position and number of the current line
+		int current = position;
+		int currentLine = line;
+		// the number of lines in the description
+		int count = 0;
+		while (nextLine() && !isBlank()) {
+			count++;
+		}
+		position = current;
+		line = currentLine;
+		return count > 1 ? count - 1 : -1;
+	}
+
+	/**
+	 * Parses descriptions of venues and their services, for a festival with
+	 * the given number of sessions, until the end of the buffer or a
+	 * description that starts at or after the given position. The venues and
+	 * services found are passed to the given sink.
+	 * 
+	 * @param sessions
+	 *            the number of sessions in the festival
+	 * @param until
+	 *            the position at which to stop starting new descriptions
+	 * @param sink
+	 *            the sink receiving the venues and services
+	 * @throws FormatException
+	 *             if the bytes are not in the format of a sequence of
+	 *             descriptions of venues and their services
+	 */
+	void parseBlocks(int sessions, int until, Sink sink)
+			throws FormatException {
+		descriptions: while (position < until && nextLine()) {
+			if (isBlank()) {
+				// the number and position of the blank line
+				int blank = line;
+				int blankStart = lineStart;
+				while (nextLine()) {
+					if (!isBlank()) {
+						report(error(blank, blankStart, blankStart,
+								Kind.EMPTY_LINE, "expected a venue name but"
+										+ " found an empty line"));
+						break;
+					}
+				}
+				if (isBlank()) {
+					return;
+				}
+			}
+			trim();
+			// the end of the first token of the venue name
+			int nameEnd = skipToken(start);
+			// true if the services of the description are passed to the sink
+			boolean valid = nameEnd == end;
+			if (!valid) {
+				report(error(line, lineStart, skipWhitespace(nameEnd),
+						Kind.VENUE_NAME, "venue name '" + text(start, end)
+								+ "' contains whitespace"));
+			}
+			// the venue being described
+			Venue source = registry.intern(buffer, start, nameEnd);
+			if (valid && !sink.venue(source, lineStart)) {
+				report(error(line, lineStart, start, Kind.DUPLICATE_VENUE,
+						"venue " + source + " has more than one description"));
+				valid = false;
+			}
+			for (int session = 1; session <= sessions; session++) {
+				if (!nextLine()) {
+					report(error(line + 1, position, position,
+							Kind.MISSING_SESSION, "expected the line for"
+									+ " session " + session + " of venue "
+									+ source
+									+ " but reached the end of the file"));
+					if (valid) {
+						sink.endVenue(source);
+					}
+					return;
+				}
+				if (!parseSessionLine(sink, source, session, valid)) {
+					if (valid) {
+						sink.endVenue(source);
+					}
+					continue descriptions;
+				}
+			}
+			if (valid) {
+				sink.endVenue(source);
+			}
+			if (nextLine() && !isBlank()) {
+				report(error(line, lineStart, skipWhitespace(lineStart),
+						Kind.MISSING_EMPTY_LINE, "expected an empty line"
+								+ " after the description of venue " + source));
+				pushBack();
+			}
+		}
+	}
+
+	/**
+	 * Parses the current line as the line describing the services departing
+	 * the given venue at the end of the given session, passing them to the
+	 * given sink if valid is true and the line has no errors. Returns true unless (when errors are being
+	 * collected) the line is empty or holds a venue name, so that the
+	 * description of the venue has ended early. (The line is then given back,
+	 * unless it is empty, to be parsed as the start of the next description.)
+	 * 
+	 * @throws FormatException
+	 *             if the line does not start with the session number, or
+	 *             describes a service from the venue to itself or a duplicate
+	 *             service
+	 */
+	private boolean parseSessionLine(Sink sink, Venue source, int session,
+			boolean valid) throws FormatException {
+		// the position of the start of the current token
+		int token = skipWhitespace(start);
+		// the position of the end of the current token
+		int tokenEnd = skipToken(token);
+		if (token == tokenEnd || parseNumber(token, tokenEnd) != session) {
+			report(error(line, lineStart, token, Kind.SESSION_NUMBER,
+					"expected the line for session " + session + " of venue "
+							+ source + " but found '"
+							+ text(start, end).trim() + "'"));
+			if (token == tokenEnd) {
+				return false;
+			}
+			if (parseNumber(token, tokenEnd) < 0
+					&& skipWhitespace(tokenEnd) == end) {
+				pushBack();
+				return false;
+			}
+			return true;
+		}
+		// the number of services found on the line
+		int count = 0;
+		// true if an error has been found on the line
+		boolean failed = false;
+		for (token = skipWhitespace(tokenEnd); token < end; token =
+				skipWhitespace(tokenEnd)) {
+			tokenEnd = skipToken(token);
+			// the venue the service arrives at
+			Venue destination = registry.intern(buffer, token, tokenEnd);
+			if (destination.equals(source)) {
+				report(error(line, lineStart, token, Kind.SELF_SERVICE,
+						"venue " + source
+								+ " has a service to itself in session "
+								+ session));
+				failed = true;
+				continue;
+			}
+			// the id of the destination
+			int id = destination.getId(registry);
+			if (id >= named.length) {
+				named = Arrays.copyOf(named, Math.max(id + 1,
+						2 * named.length));
+			}
+			if (named[id] == line) {
+				report(error(line, lineStart, token, Kind.DUPLICATE_SERVICE,
+						"duplicate service from venue " + source
+								+ " to venue " + destination + " in session "
+								+ session));
+				failed = true;
+				continue;
+			}
+			named[id] = line;
+			if (count == destinations.length) {
+				destinations = Arrays.copyOf(destinations, 2 * count);
+			}
+			destinations[count++] = destination;
+		}
+		for (int i = 0; valid && !failed && i < count; i++) {
+			sink.service(source, destinations[i], session);
+		}
+		return true;
+	}
+
+	/**
+	 * Moves on to the next line of the bytes, returning false if there are no
+	 * more lines.
+	 */
+	private boolean nextLine() {
+		if (position >= buffer.limit()) {
+			return false;
+		}
+		lineStart = position;
+		start = position;
+		end = position;
+		while (end < buffer.limit() && !isLineEnd(buffer.get(end))) {
+			end++;
+		}
+		position = skipLineEnd(buffer, end);
+		line++;
+		return true;
+	}
+
+	/**
+	 * Gives back the current line, so that the next call of nextLine() moves
+	 * on to it again.
+	 */
+	private void pushBack() {
+		position = lineStart;
+		line--;
+	}
+
+	/**
+	 * Returns true if the current line is empty or only holds whitespace.
+	 */
+	private boolean isBlank() {
+		return skipWhitespace(start) == end;
+	}
+
+	/**
+	 * Removes leading and trailing whitespace from the current line.
+	 */
+	private void trim() {
+		start = skipWhitespace(start);
+		while (end > start && isWhitespace(buffer.get(end - 1))) {
+			end--;
+		}
+	}
+
+	/**
+	 * Returns the position of the first byte of the current line, at or after
+	 * the given position, that is not whitespace (or the end of the line).
+	 */
+	private int skipWhitespace(int from) {
+		while (from < end && isWhitespace(buffer.get(from))) {
+			from++;
+		}
+		return from;
+	}
+
+	/**
+	 * Returns the position of the first byte of the current line, at or after
+	 * the given position, that is whitespace (or the end of the line).
+	 */
+	private int skipToken(int from) {
+		while (from < end && !isWhitespace(buffer.get(from))) {
+			from++;
+		}
+		return from;
+	}
+
+	/**
+	 * Returns true if the given byte ends a line. As for
+	 * BufferedReader.readLine, a line is ended by a line feed ('\n'), a
+	 * carriage return ('\r'), or a carriage return followed by a line feed.
+	 */
+	static boolean isLineEnd(byte b) {
+		return b == '\n' || b == '\r';
+	}
+
+	/**
+	 * Returns the position of the start of the line after the line that ends
+	 * at the given position of the buffer (or the limit of the buffer, if the
+	 * line is the last one).
+	 */
+	static int skipLineEnd(ByteBuffer buffer, int end) {
+		if (end >= buffer.limit()) {
+			return end;
+		}
+		if (buffer.get(end) == '\r' && end + 1 < buffer.limit()
+				&& buffer.get(end + 1) == '\n') {
+			return end + 2;
+		}
+		return end + 1;
+	}
+
+	/**
+	 * Returns true if a line of the buffer starts at the given position.
+	 */
+	static boolean isLineStart(ByteBuffer buffer, int position) {
+		if (position == 0) {
+			return true;
+		}
+		// the byte before the position
+		byte before = buffer.get(position - 1);
+		return before == '\n' || before == '\r'
+				&& (position == buffer.limit() || buffer.get(position) != '\n');
+	}
+
+	/**
+	 * Returns the number of lines of the buffer that end before the given
+	 * position (which must be the start of a line).
+	 */
+	static int countLines(ByteBuffer buffer, int position) {
+		// the number of lines found so far
+		int lines = 0;
+		for (int i = 0; i < position; i++) {
+			if (isLineEnd(buffer.get(i)) && isLineStart(buffer, i + 1)) {
+				lines++;
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Returns true if the given byte is whitespace.
+	 */
+	static boolean isWhitespace(byte b) {
+		return b >= 0 && b <= ' ';
+	}
+
+	/**
+	 * Returns the non-negative integer written in decimal digits from position
+	 * from up to (but not including) position to, or -1 if those bytes are
+	 * not all digits or the number is too large for an int.
+	 */
+	private int parseNumber(int from, int to) {
+		if (from == to) {
+			return -1;
+		}
+		// the number under construction
+		long number = 0;
+		for (int i = from; i < to; i++) {
+			// the byte at position i
+			byte b = buffer.get(i);
+			if (b < '0' || b > '9') {
+				return -1;
+			}
+			number = 10 * number + (b - '0');
+			if (number > Integer.MAX_VALUE) {
+				return -1;
+			}
+		}
+		return (int) number;
+	}
+
+	/**
+	 * Returns the bytes from position from up to (but not including) position
+	 * to, decoded as a string. (This is only used to describe errors.)
+	 */
+	private String text(int from, int to) {
+		// the bytes to decode
+		byte[] bytes = new byte[to - from];
+		for (int i = from; i < to; i++) {
+			bytes[i - from] = buffer.get(i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Throws the given format error, or adds it to the errors found if errors
+	 * are being collected.
+	 */
+	private void report(FormatException error) throws FormatException {
+		if (errors == null) {
+			throw error;
+		}
+		errors.add(error);
+	}
+
+	/**
+	 * Records the position of an error found on the given line (counted from
+	 * the origin of the parser), which starts at the given position, and
+	 * returns a format exception describing it, with the column of the given
+	 * position of the error in the line.
+	 */
+	private FormatException error(int number, int offset, int at, Kind kind,
+			String message) {
+		if (linesBefore < 0) {
+			linesBefore = countLines(buffer, origin);
+		}
+		errorOffset = offset;
+		// the column of the error, counting the first bytes of characters
+		int column = 1;
+		for (int i = offset; i < at; i++) {
+			if ((buffer.get(i) & 0xC0) != 0x80) {
+				column++;
+			}
+		}
+		return new FormatException(kind, "Line " + (linesBefore + number)
+				+ ": " + message, linesBefore + number, column);
+	}
+
+}
@@ -1,12 +1,26 @@
 package festival;
 
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import festival.FormatException.Kind;
 
 /**
- * Provides a method to read a shuttle timetable from a file.
+ * Provides methods to read a shuttle timetable from a file.
  */
 public class ScheduleReader {
 
+	// the smallest number of bytes of venue descriptions worth splitting up
+	// to read in parallel
+	private static final int PARALLEL_THRESHOLD = 1 << 20;
+	// the number of pieces per worker thread that a file is split into
+	private static final int PIECES_PER_THREAD = 4;
+
 	/**
 	 * <p>
 	 * Reads a text file called fileName that describes the shuttle services
@@ -54,6 +68,13 @@ public class ScheduleReader {
 	 * its services if it doesn't have any.
 	 * </p>
 	 * 
+	 * <p>
+	 * Lines may end with a line feed ('\n'), a carriage return ('\r'), or a
+	 * carriage return followed by a line feed, as for
+	 * BufferedReader.readLine. The other methods of this class that read
+	 * files in this format accept the same line terminators.
+	 * </p>
+	 * 
 	 * @param fileName
 	 *            the file to read from.
 	 * @return the shuttle timetable that was read from the file.
@@ -68,7 +89,734 @@ public class ScheduleReader {
 	 */
 	public static ShuttleTimetable read(String fileName) throws IOException,
 			FormatException {
-		return null; // REMOVE THIS LINE AND WRITE THIS METHOD
+		return read(fileName, new VenueRegistry());
+	}
+
+	/**
+	 * Reads a shuttle timetable from the file called fileName, in the format
+	 * described by {@link #read(String)}, looking up the venues named in the
+	 * file in the given registry (so that the venues of the timetable are
+	 * shared with other users of the registry).
+	 * 
+	 * @param fileName
+	 *            the file to read from.
+	 * @param registry
+	 *            the registry used to look up venues
+	 * @return the shuttle timetable that was read from the file.
+	 * @throws NullPointerException
+	 *             if registry is null
+	 * @throws IOException
+	 *             if there is an error reading from the input file.
+	 * @throws FormatException
+	 *             if there is an error with the input format, as for
+	 *             {@link #read(String)}.
+	 */
+	public static ShuttleTimetable read(String fileName,
+			VenueRegistry registry) throws IOException, FormatException {
+		if (registry == null) {
+			throw new NullPointerException("Registry cannot be null");
+		}
+		// the metrics the reading is reported to
+		Metrics metrics = Instrumentation.get();
+		// the time at which the reading started
+		long started = metrics.isEnabled() ? System.nanoTime() : 0;
+		// the timetable under construction
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		// the number of lines in the file
+		int lines;
+		try (BufferedReader reader =
+				new BufferedReader(new InputStreamReader(new FileInputStream(
+						fileName), StandardCharsets.UTF_8))) {
+			lines = read(reader, timetable, registry);
+		} catch (FormatException e) {
+			throw counted(metrics, e);
+		}
+		if (metrics.isEnabled()) {
+			measured(metrics, started, new File(fileName).length(), lines);
+		}
+		return timetable;
+	}
+
+	/**
+	 * Adds the services described by the lines of a timetable file, read from
+	 * the given reader, to the given timetable, returning the number of lines
+	 * read.
+	 * 
+	 * @throws IOException
+	 *             if there is an error reading from the reader
+	 * @throws FormatException
+	 *             if there is an error with the input format
+	 */
+	private static int read(BufferedReader reader, ShuttleTimetable timetable,
+			VenueRegistry registry) throws IOException, FormatException {
+		// the number of the line most recently read
+		int number = 1;
+		// the line most recently read
+		String line = reader.readLine();
+		if (line == null) {
+			throw error(1, Kind.HEADER, "expected the number of sessions"
+					+ " but the file is empty");
+		}
+		// the number of sessions in the festival
+		int sessions = parseNumber(line.trim());
+		if (sessions <= 0) {
+			throw error(1, Kind.HEADER, "the number of sessions must be a"
+					+ " positive integer but was '" + line.trim() + "'");
+		}
+		// the venues that have been described
+		Set<Venue> described = new HashSet<>();
+		while ((line = reader.readLine()) != null) {
+			number++;
+			if (line.trim().isEmpty()) {
+				// the number of the blank line
+				int blank = number;
+				while ((line = reader.readLine()) != null) {
+					number++;
+					if (!line.trim().isEmpty()) {
+						throw error(blank, Kind.EMPTY_LINE,
+								"expected a venue name but"
+								+ " found an empty line");
+					}
+				}
+				break;
+			}
+			if (tokens(line).size() != 1) {
+				throw error(number, Kind.VENUE_NAME, "venue name '"
+						+ line.trim() + "' contains whitespace");
+			}
+			// the venue being described
+			Venue source = registry.intern(line.trim());
+			if (!described.add(source)) {
+				throw error(number, Kind.DUPLICATE_VENUE, "venue " + source
+						+ " has more than one description");
+			}
+			for (int session = 1; session <= sessions; session++) {
+				line = reader.readLine();
+				number++;
+				if (line == null) {
+					throw error(number, Kind.MISSING_SESSION,
+							"expected the line for session "
+							+ session + " of venue " + source
+							+ " but reached the end of the file");
+				}
+				readSessionLine(timetable, registry, line, source,
+						session, number);
+			}
+			line = reader.readLine();
+			if (line == null) {
+				break;
+			}
+			number++;
+			if (!line.trim().isEmpty()) {
+				throw error(number, Kind.MISSING_EMPTY_LINE, "expected an"
+						+ " empty line after the description of venue "
+						+ source);
+			}
+		}
+		return number;
+	}
+
+	/**
+	 * Adds the services described by the tokens of a line of a timetable file
+	 * to the given timetable, where the line describes the services departing
+	 * the given venue at the end of the given session.
+	 * 
+	 * @throws FormatException
+	 *             if the line does not start with the session number, or
+	 *             describes a service from the venue to itself or a duplicate
+	 *             service
+	 */
+	private static void readSessionLine(ShuttleTimetable timetable,
+			VenueRegistry registry, String line, Venue source, int session,
+			int number) throws FormatException {
+		// the session number and venue names on the line
+		List<String> tokens = tokens(line);
+		if (tokens.isEmpty() || parseNumber(tokens.get(0)) != session) {
+			throw error(number, Kind.SESSION_NUMBER, "expected the line for"
+					+ " session " + session + " of venue " + source
+					+ " but found '" + line.trim() + "'");
+		}
+		for (String token : tokens.subList(1, tokens.size())) {
+			// the venue the service arrives at
+			Venue destination = registry.intern(token);
+			if (destination.equals(source)) {
+				throw error(number, Kind.SELF_SERVICE, "venue " + source
+						+ " has a service to itself in session " + session);
+			}
+			// the service described by the token
+			Service service = new Service(source, destination, session);
+			if (timetable.hasService(service)) {
+				throw error(number, Kind.DUPLICATE_SERVICE, "duplicate service"
+						+ " from venue " + source + " to venue " + destination
+						+ " in session " + session);
+			}
+			timetable.addService(service);
+		}
+	}
+
+	/**
+	 * Reads a shuttle timetable from the file called fileName, in the format
+	 * described by {@link #read(String)}, by memory-mapping the file and
+	 * parsing its bytes in place (so that no string is created for each line
+	 * or venue name in the file). The file must be encoded in UTF-8 (or
+	 * ASCII).
+	 * 
+	 * @param fileName
+	 *            the file to read from.
+	 * @return the shuttle timetable that was read from the file.
+	 * @throws IOException
+	 *             if there is an error reading from the input file, or it is
+	 *             too large to be mapped into memory in one piece (2GB).
+	 * @throws FormatException
+	 *             if there is an error with the input format, as for
+	 *             {@link #read(String)}.
+	 */
+	public static ShuttleTimetable readMapped(String fileName)
+			throws IOException, FormatException {
+		return readMapped(fileName, new VenueRegistry());
+	}
+
+	/**
+	 * Reads a shuttle timetable from the file called fileName as for
+	 * {@link #readMapped(String)}, looking up the venues named in the file in
+	 * the given registry.
+	 * 
+	 * @param fileName
+	 *            the file to read from.
+	 * @param registry
+	 *            the registry used to look up venues
+	 * @return the shuttle timetable that was read from the file.
+	 * @throws NullPointerException
+	 *             if registry is null
+	 * @throws IOException
+	 *             if there is an error reading from the input file, or it is
+	 *             too large to be mapped into memory in one piece (2GB).
+	 * @throws FormatException
+	 *             if there is an error with the input format, as for
+	 *             {@link #read(String)}.
+	 */
+	public static ShuttleTimetable readMapped(String fileName,
+			VenueRegistry registry) throws IOException, FormatException {
+		if (registry == null) {
+			throw new NullPointerException("Registry cannot be null");
+		}
+		// the metrics the reading is reported to
+		Metrics metrics = Instrumentation.get();
+		// the time at which the reading started
+		long started = metrics.isEnabled() ? System.nanoTime() : 0;
+		// the timetable under construction
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		// the bytes of the file
+		ByteBuffer buffer = map(fileName);
+		// the parser of the bytes
+		ScheduleParser parser = new ScheduleParser(buffer, registry);
+		try {
+			parser.parse(timetable);
+		} catch (FormatException e) {
+			throw counted(metrics, e);
+		}
+		if (metrics.isEnabled()) {
+			measured(metrics, started, buffer.limit(), parser.lines());
+		}
+		return timetable;
+	}
+
+	/**
+	 * Parses the file called fileName, in the format described by
+	 * {@link #read(String)}, passing the services it describes (and the
+	 * boundaries of the descriptions of venues) to the given handler as they
+	 * are found, without building a timetable. The file is memory-mapped and
+	 * parsed in place, as for {@link #readMapped(String)}. Parsing stops at
+	 * the first format error, by which time the handler may have received
+	 * some of the services.
+	 * 
+	 * @param fileName
+	 *            the file to parse
+	 * @param handler
+	 *            the handler receiving the contents of the file
+	 * @throws NullPointerException
+	 *             if handler is null
+	 * @throws IOException
+	 *             if there is an error reading from the input file, or it is
+	 *             too large to be mapped into memory in one piece (2GB).
+	 * @throws FormatException
+	 *             if there is an error with the input format, as for
+	 *             {@link #read(String)}.
+	 */
+	public static void parse(String fileName, ScheduleHandler handler)
+			throws IOException, FormatException {
+		parse(fileName, new VenueRegistry(), handler);
+	}
+
+	/**
+	 * Parses the file called fileName as for
+	 * {@link #parse(String, ScheduleHandler)}, looking up the venues named in
+	 * the file in the given registry.
+	 * 
+	 * @param fileName
+	 *            the file to parse
+	 * @param registry
+	 *            the registry used to look up venues
+	 * @param handler
+	 *            the handler receiving the contents of the file
+	 * @throws NullPointerException
+	 *             if registry or handler is null
+	 * @throws IOException
+	 *             if there is an error reading from the input file, or it is
+	 *             too large to be mapped into memory in one piece (2GB).
+	 * @throws FormatException
+	 *             if there is an error with the input format, as for
+	 *             {@link #read(String)}.
+	 */
+	public static void parse(String fileName, VenueRegistry registry,
+			ScheduleHandler handler) throws IOException, FormatException {
+		if (registry == null || handler == null) {
+			throw new NullPointerException("Input parameters cannot be null");
+		}
+		parseMapped(fileName, registry, null, handler);
+	}
+
+	/**
+	 * Parses the file called fileName as for
+	 * {@link #parse(String, VenueRegistry, ScheduleHandler)}, passing the
+	 * canonical services from the given pool to the handler, rather than a
+	 * new service object for each service in the file (so that a handler that
+	 * keeps the services, for example across reloads of the same file, keeps
+	 * only one object for each distinct service).
+	 * 
+	 * @param fileName
+	 *            the file to parse
+	 * @param registry
+	 *            the registry used to look up venues
+	 * @param pool
+	 *            the pool used to look up services
+	 * @param handler
+	 *            the handler receiving the contents of the file
+	 * @throws NullPointerException
+	 *             if registry, pool or handler is null
+	 * @throws IOException
+	 *             if there is an error reading from the input file, or it is
+	 *             too large to be mapped into memory in one piece (2GB).
+	 * @throws FormatException
+	 *             if there is an error with the input format, as for
+	 *             {@link #read(String)}.
+	 */
+	public static void parse(String fileName, VenueRegistry registry,
+			ServicePool pool, ScheduleHandler handler) throws IOException,
+			FormatException {
+		if (registry == null || pool == null || handler == null) {
+			throw new NullPointerException("Input parameters cannot be null");
+		}
+		parseMapped(fileName, registry, pool, handler);
+	}
+
+	/**
+	 * Parses the file called fileName by memory-mapping it, passing its
+	 * contents to the given handler, with the services interned in the given
+	 * pool (unless it is null).
+	 * 
+	 * @throws IOException
+	 *             if there is an error reading from the input file
+	 * @throws FormatException
+	 *             if there is an error with the input format
+	 */
+	private static void parseMapped(String fileName, VenueRegistry registry,
+			ServicePool pool, ScheduleHandler handler) throws IOException,
+			FormatException {
+		// the metrics the parsing is reported to
+		Metrics metrics = Instrumentation.get();
+		// the time at which the parsing started
+		long started = metrics.isEnabled() ? System.nanoTime() : 0;
+		// the bytes of the file
+		ByteBuffer buffer = map(fileName);
+		// the parser of the bytes
+		ScheduleParser parser = new ScheduleParser(buffer, registry);
+		parser.intern(pool);
+		try {
+			parser.parse(handler);
+		} catch (FormatException e) {
+			throw counted(metrics, e);
+		}
+		if (metrics.isEnabled()) {
+			measured(metrics, started, buffer.limit(), parser.lines());
+		}
+	}
+
+	/**
+	 * <p>
+	 * Parses the file called fileName as for
+	 * {@link #parse(String, ScheduleHandler)}, but rather than stopping at the
+	 * first format error, carries on past each error to the end of the file,
+	 * and returns all of the errors found, in file order. Each error records
+	 * the line and column at which it was found. The file is valid if (and
+	 * only if) no errors are returned.
+	 * </p>
+	 * 
+	 * <p>
+	 * Services on a line with an error are not passed to the handler, and
+	 * neither is a description of a venue whose name contains whitespace or
+	 * that has already been described. A session line with the wrong session
+	 * number is skipped, while an empty line or a venue name in place of a
+	 * session line ends the description early. If the first line of the file
+	 * is invalid, the number of sessions is taken from the first description
+	 * of a venue (and if there is none, nothing is passed to the handler).
+	 * </p>
+	 * 
+	 * @param fileName
+	 *            the file to parse
+	 * @param handler
+	 *            the handler receiving the contents of the file
+	 * @return the format errors found in the file, in file order
+	 * @throws NullPointerException
+	 *             if handler is null
+	 * @throws IOException
+	 *             if there is an error reading from the input file, or it is
+	 *             too large to be mapped into memory in one piece (2GB).
+	 */
+	public static List<FormatException> parseLenient(String fileName,
+			ScheduleHandler handler) throws IOException {
+		return parseLenient(fileName, new VenueRegistry(), handler);
+	}
+
+	/**
+	 * Parses the file called fileName as for
+	 * {@link #parseLenient(String, ScheduleHandler)}, looking up the venues
+	 * named in the file in the given registry.
+	 * 
+	 * @param fileName
+	 *            the file to parse
+	 * @param registry
+	 *            the registry used to look up venues
+	 * @param handler
+	 *            the handler receiving the contents of the file
+	 * @return the format errors found in the file, in file order
+	 * @throws NullPointerException
+	 *             if registry or handler is null
+	 * @throws IOException
+	 *             if there is an error reading from the input file, or it is
+	 *             too large to be mapped into memory in one piece (2GB).
+	 */
+	public static List<FormatException> parseLenient(String fileName,
+			VenueRegistry registry, ScheduleHandler handler)
+			throws IOException {
+		if (registry == null || handler == null) {
+			throw new NullPointerException("Input parameters cannot be null");
+		}
+		// the metrics the parsing is reported to
+		Metrics metrics = Instrumentation.get();
+		// the time at which the parsing started
+		long started = metrics.isEnabled() ? System.nanoTime() : 0;
+		// the bytes of the file
+		ByteBuffer buffer = map(fileName);
+		// the parser of the bytes
+		ScheduleParser parser = new ScheduleParser(buffer, registry);
+		// the errors found
+		List<FormatException> errors = parser.parseLenient(handler);
+		if (metrics.isEnabled()) {
+			for (FormatException error : errors) {
+				counted(metrics, error);
+			}
+			measured(metrics, started, buffer.limit(), parser.lines());
+		}
+		return errors;
+	}
+
+	/**
+	 * Reads a shuttle timetable from the file called fileName, in the format
+	 * described by {@link #read(String)}, by memory-mapping the file and
+	 * parsing the descriptions of its venues in parallel on the common
+	 * fork-join pool.
+	 * 
+	 * @param fileName
+	 *            the file to read from.
+	 * @return the shuttle timetable that was read from the file.
+	 * @throws IOException
+	 *             if there is an error reading from the input file, or it is
+	 *             too large to be mapped into memory in one piece (2GB).
+	 * @throws FormatException
+	 *             if there is an error with the input format, as for
+	 *             {@link #read(String)}.
+	 */
+	public static ShuttleTimetable readParallel(String fileName)
+			throws IOException, FormatException {
+		return readParallel(fileName, new VenueRegistry(),
+				ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * <p>
+	 * Reads a shuttle timetable from the file called fileName, in the format
+	 * described by {@link #read(String)}, by memory-mapping the file and
+	 * parsing the descriptions of its venues in parallel on the given
+	 * fork-join pool. The venues named in the file are looked up in the given
+	 * registry.
+	 * </p>
+	 * 
+	 * <p>
+	 * The file is split into pieces at empty lines (where descriptions of
+	 * venues start), each piece is parsed by its own task, and the services
+	 * found are then merged into one timetable. If the file has format errors,
+	 * the error reported is the one closest to the start of the file, which is
+	 * the same error reported by {@link #read(String)}.
+	 * </p>
+	 * 
+	 * @param fileName
+	 *            the file to read from.
+	 * @param registry
+	 *            the registry used to look up venues
+	 * @param pool
+	 *            the pool used to parse the pieces of the file
+	 * @return the shuttle timetable that was read from the file.
+	 * @throws NullPointerException
+	 *             if registry or pool is null
+	 * @throws IOException
+	 *             if there is an error reading from the input file, or it is
+	 *             too large to be mapped into memory in one piece (2GB).
+	 * @throws FormatException
+	 *             if there is an error with the input format, as for
+	 *             {@link #read(String)}.
+	 */
+	public static ShuttleTimetable readParallel(String fileName,
+			VenueRegistry registry, ForkJoinPool pool) throws IOException,
+			FormatException {
+		return readParallel(fileName, registry, pool, PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * Reads a shuttle timetable from the file called fileName as for
+	 * {@link #readParallel(String, VenueRegistry, ForkJoinPool)}, splitting
+	 * the descriptions of the venues into pieces if they take at least the
+	 * given number of bytes, and parsing them as one piece otherwise. (The
+	 * other methods split files whose descriptions take at least 1MB, since
+	 * smaller ones are parsed faster by a single task. A threshold of 0
+	 * splits every file, which is how the splitting can be tested on small
+	 * files.)
+	 * 
+	 * @param fileName
+	 *            the file to read from.
+	 * @param registry
+	 *            the registry used to look up venues
+	 * @param pool
+	 *            the pool used to parse the pieces of the file
+	 * @param threshold
+	 *            the smallest number of bytes of venue descriptions that are
+	 *            split into pieces
+	 * @return the shuttle timetable that was read from the file.
+	 * @throws NullPointerException
+	 *             if registry or pool is null
+	 * @throws IllegalArgumentException
+	 *             if threshold is negative
+	 * @throws IOException
+	 *             if there is an error reading from the input file, or it is
+	 *             too large to be mapped into memory in one piece (2GB).
+	 * @throws FormatException
+	 *             if there is an error with the input format, as for
+	 *             {@link #read(String)}.
+	 */
+	public static ShuttleTimetable readParallel(String fileName,
+			VenueRegistry registry, ForkJoinPool pool, int threshold)
+			throws IOException, FormatException {
+		if (registry == null || pool == null) {
+			throw new NullPointerException("Input parameters cannot be null");
+		}
+		if (threshold < 0) {
+			throw new IllegalArgumentException("The threshold " + threshold
+					+ " cannot be negative");
+		}
+		// the metrics the reading is reported to
+		Metrics metrics = Instrumentation.get();
+		// the time at which the reading started
+		long started = metrics.isEnabled() ? System.nanoTime() : 0;
+		// the bytes of the file
+		ByteBuffer buffer = map(fileName);
+		// the parser of the first line of the file
+		ScheduleParser header = new ScheduleParser(buffer, registry);
+		// the number of sessions in the festival
+		int sessions;
+		try {
+			sessions = header.parseHeader();
+		} catch (FormatException e) {
+			throw counted(metrics, e);
+		}
+		// the position at which the descriptions of venues start
+		int body = header.position();
+		// the number of pieces to split the descriptions into
+		int pieces = buffer.limit() - body < threshold ? 1
+				: pool.getParallelism() * PIECES_PER_THREAD;
+		// the tasks parsing each piece, in file order
+		List<ScheduleChunk> chunks = new ArrayList<>();
+		// the position at which the next piece starts
+		int from = body;
+		for (int piece = 1; piece <= pieces && from < buffer.limit(); piece++) {
+			// the position at which the piece ends
+			int until = piece == pieces ? buffer.limit()
+					: ScheduleChunk.nextBlockStart(buffer, (int) (body
+							+ (long) (buffer.limit() - body) * piece / pieces));
+			if (until > from) {
+				chunks.add(new ScheduleChunk(buffer, sessions, from, until));
+				from = until;
+			}
+		}
+		for (ScheduleChunk chunk : chunks) {
+			pool.execute(chunk);
+		}
+		// the format error closest to the start of the file, if any
+		FormatException error = null;
+		// the position of the line of that error
+		int errorOffset = Integer.MAX_VALUE;
+		for (ScheduleChunk chunk : chunks) {
+			chunk.join();
+			if (chunk.getErrorOffset() < errorOffset) {
+				error = chunk.getError();
+				errorOffset = chunk.getErrorOffset();
+			}
+		}
+		// the venues of the registry found in each piece, indexed by their ids
+		// in the piece
+		List<Venue[]> venues = new ArrayList<>();
+		// the ids of the venues that have been described
+		BitSet described = new BitSet();
+		for (ScheduleChunk chunk : chunks) {
+			venues.add(chunk.venues(registry));
+			for (int i = 0; i < chunk.blockCount()
+					&& chunk.blockOffset(i) < errorOffset; i++) {
+				// the venue being described
+				Venue source = venues.get(venues.size() - 1)[chunk
+						.blockVenue(i)];
+				if (described.get(registry.getId(source))) {
+					errorOffset = chunk.blockOffset(i);
+					error = error(lineAt(buffer, errorOffset),
+							Kind.DUPLICATE_VENUE, "venue "
+							+ source + " has more than one description");
+					break;
+				}
+				described.set(registry.getId(source));
+			}
+		}
+		if (error != null) {
+			throw counted(metrics, error);
+		}
+		// the timetable under construction
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		// the number of lines in the file
+		int lines = header.lines();
+		for (int i = 0; i < chunks.size(); i++) {
+			chunks.get(i).addServices(timetable, venues.get(i));
+			lines += chunks.get(i).lines();
+		}
+		if (metrics.isEnabled()) {
+			measured(metrics, started, buffer.limit(), lines);
+		}
+		return timetable;
+	}
+
+	/**
+	 * Returns the number of the line of the given buffer that holds the given
+	 * position.
+	 */
+	private static int lineAt(ByteBuffer buffer, int position) {
+		return 1 + ScheduleParser.countLines(buffer, position);
+	}
+
+	/**
+	 * Maps the whole of the file called fileName into memory, read-only.
+	 * 
+	 * @throws IOException
+	 *             if there is an error opening the file, or it is too large to
+	 *             be mapped in one piece
+	 */
+	static ByteBuffer map(String fileName) throws IOException {
+		try (FileChannel channel =
+				FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("File " + fileName
+						+ " is too large to be mapped into memory");
+			}
+			// the mapping stays valid after the channel is closed
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		}
+	}
+
+	/**
+	 * Returns the tokens of the given line, that is, its maximal runs of
+	 * characters that are not whitespace (characters up to and including a
+	 * space, as for String.trim()).
+	 */
+	private static List<String> tokens(String line) {
+		// the tokens found so far
+		List<String> tokens = new ArrayList<>();
+		// the index of the start of the current token, or -1 if there is none
+		int start = -1;
+		for (int i = 0; i <= line.length(); i++) {
+			if (i == line.length() || line.charAt(i) <= ' ') {
+				if (start >= 0) {
+					tokens.add(line.substring(start, i));
+					start = -1;
+				}
+			} else if (start < 0) {
+				start = i;
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Returns the non-negative integer written in decimal digits in the given
+	 * string, or -1 if it is not all digits or the number is too large for an
+	 * int.
+	 */
+	private static int parseNumber(String digits) {
+		if (digits.isEmpty()) {
+			return -1;
+		}
+		// the number under construction
+		long number = 0;
+		for (int i = 0; i < digits.length(); i++) {
+			if (digits.charAt(i) < '0' || digits.charAt(i) > '9') {
+				return -1;
+			}
+			number = 10 * number + (digits.charAt(i) - '0');
+			if (number > Integer.MAX_VALUE) {
+				return -1;
+			}
+		}
+		return (int) number;
+	}
+
+	/**
+	 * Reports the reading of a file with the given numbers of bytes and lines,
+	 * which started at the given time (by System.nanoTime()), to the given
+	 * metrics.
+	 */
+	private static void measured(Metrics metrics, long started, long bytes,
+			int lines) {
+		metrics.record("reader.time", System.nanoTime() - started);
+		metrics.count("reader.files", 1);
+		metrics.count("reader.bytes", bytes);
+		metrics.count("reader.lines", lines);
+	}
+
+	/**
+	 * Counts the given format error, by kind, in the given metrics, and
+	 * returns it.
+	 */
+	private static FormatException counted(Metrics metrics,
+			FormatException error) {
+		if (metrics.isEnabled()) {
+			metrics.count("reader.errors." + error.getKind(), 1);
+		}
+		return error;
+	}
+
+	/**
+	 * Returns a format exception for an error on the given line of a file
+	 * (whose column is not known).
+	 */
+	private static FormatException error(int line, Kind kind,
+			String message) {
+		return new FormatException(kind, "Line " + line + ": " + message, line,
+				0);
 	}
 
 }
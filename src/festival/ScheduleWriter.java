@@ -0,0 +1,218 @@
+package festival;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * <p>
+ * Provides methods to write a shuttle timetable to a file, in the format read
+ * by {@link ScheduleReader#read(String)}, so that reading the file gives back
+ * a timetable with the same services.
+ * </p>
+ * 
+ * <p>
+ * The output is deterministic: the descriptions of venues are written in
+ * order of venue name, and so are the destinations on each line, so that
+ * writing a timetable read from a file written by this class reproduces the
+ * file exactly. Venues from which no service departs are not described. Only
+ * the venue names and the destinations of one line at a time are sorted, the
+ * destinations of each line are collected into a reusable array with
+ * {@link Timetable#forEachDestination(Venue, int, Consumer)}, and the text is
+ * written straight to a buffered writer without building a string for each
+ * line.
+ * </p>
+ */
+public class ScheduleWriter {
+
+	// the size of the buffer used when writing to a file
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Writes the given timetable to the file called fileName, with the number
+	 * of sessions in the festival taken to be the last session in which a
+	 * service departs (or 1 if there are no services).
+	 * 
+	 * @param timetable
+	 *            the timetable to write
+	 * @param fileName
+	 *            the file to write to
+	 * @throws NullPointerException
+	 *             if timetable is null
+	 * @throws IllegalArgumentException
+	 *             if the name of a venue in the timetable is empty or contains
+	 *             whitespace, so that it cannot be read back (in which case
+	 *             part of the file may have been written)
+	 * @throws IOException
+	 *             if there is an error writing to the file
+	 */
+	public static void write(Timetable timetable, String fileName)
+			throws IOException {
+		if (timetable == null) {
+			throw new NullPointerException("Timetable cannot be null");
+		}
+		write(timetable, Math.max(1, timetable.getLastSession()), fileName);
+	}
+
+	/**
+	 * Writes the given timetable to the file called fileName, for a festival
+	 * with the given number of sessions. The file is encoded in UTF-8.
+	 * 
+	 * @param timetable
+	 *            the timetable to write
+	 * @param sessions
+	 *            the number of sessions in the festival
+	 * @param fileName
+	 *            the file to write to
+	 * @throws NullPointerException
+	 *             if timetable is null
+	 * @throws IllegalArgumentException
+	 *             if sessions is not positive or a service departs after the
+	 *             last session, or the name of a venue in the timetable is
+	 *             empty or contains whitespace (in which case part of the file
+	 *             may have been written)
+	 * @throws IOException
+	 *             if there is an error writing to the file
+	 */
+	public static void write(Timetable timetable, int sessions,
+			String fileName) throws IOException {
+		if (timetable == null) {
+			throw new NullPointerException("Timetable cannot be null");
+		}
+		checkSessions(timetable, sessions);
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(fileName), StandardCharsets.UTF_8),
+				BUFFER_SIZE)) {
+			write(timetable, sessions, out);
+		}
+	}
+
+	/**
+	 * Writes the given timetable to the given writer, for a festival with the
+	 * given number of sessions. (The writer is not closed or flushed, and
+	 * should be buffered.)
+	 * 
+	 * @param timetable
+	 *            the timetable to write
+	 * @param sessions
+	 *            the number of sessions in the festival
+	 * @param out
+	 *            the writer to write to
+	 * @throws NullPointerException
+	 *             if timetable or out is null
+	 * @throws IllegalArgumentException
+	 *             if sessions is not positive or a service departs after the
+	 *             last session, or the name of a venue in the timetable is
+	 *             empty or contains whitespace (in which case part of the
+	 *             timetable may have been written)
+	 * @throws IOException
+	 *             if there is an error writing to the writer
+	 */
+	public static void write(Timetable timetable, int sessions, Writer out)
+			throws IOException {
+		if (timetable == null || out == null) {
+			throw new NullPointerException("Input parameters cannot be null");
+		}
+		checkSessions(timetable, sessions);
+		// the source venues, by name
+		SortedMap<String, Venue> sources = new TreeMap<>();
+		for (Venue source : timetable.getSourceVenues()) {
+			sources.put(checkName(source), source);
+		}
+		// the text of each session number
+		String[] numbers = new String[sessions + 1];
+		for (int session = 1; session <= sessions; session++) {
+			numbers[session] = Integer.toString(session);
+		}
+		// the names of the destinations of a line, sorted in place
+		Names names = new Names();
+		out.write(numbers[sessions]);
+		out.write('\n');
+		// true if a description of a venue has been written
+		boolean described = false;
+		for (Map.Entry<String, Venue> source : sources.entrySet()) {
+			if (described) {
+				out.write('\n');
+			}
+			out.write(source.getKey());
+			out.write('\n');
+			for (int session = 1; session <= sessions; session++) {
+				out.write(numbers[session]);
+				names.count = 0;
+				timetable.forEachDestination(source.getValue(), session,
+						names);
+				Arrays.sort(names.names, 0, names.count);
+				for (int i = 0; i < names.count; i++) {
+					out.write(' ');
+					out.write(names.names[i]);
+				}
+				out.write('\n');
+			}
+			described = true;
+		}
+	}
+
+	/**
+	 * Collects the checked names of the venues passed to it into an array,
+	 * which is reused from one line to the next.
+	 */
+	private static final class Names implements Consumer<Venue> {
+
+		// the names collected, in the order the venues were passed
+		private String[] names = new String[16];
+		// the number of names collected
+		private int count;
+
+		@Override
+		public void accept(Venue venue) {
+			if (count == names.length) {
+				names = Arrays.copyOf(names, 2 * names.length);
+			}
+			names[count++] = checkName(venue);
+		}
+	}
+
+	/**
+	 * Checks that the given number of sessions is positive and that no
+	 * service in the given timetable departs after the last of them.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the number of sessions is not valid
+	 */
+	private static void checkSessions(Timetable timetable, int sessions) {
+		if (sessions <= 0) {
+			throw new IllegalArgumentException("The number of sessions "
+					+ sessions + " must be positive");
+		}
+		if (timetable.getLastSession() > sessions) {
+			throw new IllegalArgumentException("A service departs in session "
+					+ timetable.getLastSession() + ", after the last session "
+					+ sessions);
+		}
+	}
+
+	/**
+	 * Returns the name of the given venue, checking that it can be read back
+	 * from a timetable file.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the name is empty or contains whitespace
+	 */
+	private static String checkName(Venue venue) {
+		// the name of the venue
+		String name = venue.getName();
+		if (name.isEmpty()) {
+			throw new IllegalArgumentException(
+					"Venue names cannot be empty in a timetable file");
+		}
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) <= ' ') {
+				throw new IllegalArgumentException("Venue name '" + name
+						+ "' contains whitespace");
+			}
+		}
+		return name;
+	}
+
+}
@@ -19,10 +19,13 @@ public class Service {
 	private Venue destination;
 	// the service departs for its destination at the end of this session
 	private int session;
+	// the hash code of the service (computed once, since it is immutable)
+	private int hash;
 
 	/*
 	 * Invariant: source != null && destination != null &&
-	 * !source.equals(destination) && session > 0
+	 * !source.equals(destination) && session > 0 &&
+	 * hash == hash(source, destination, session)
 	 */
 
 	/**
@@ -58,6 +61,7 @@ public class Service {
 		this.source = source;
 		this.destination = destination;
 		this.session = session;
+		this.hash = hash(source, destination, session);
 	}
 
 	/**
@@ -103,13 +107,26 @@ public class Service {
 			return false;
 		}
 		Service service = (Service) object; // service to compare
-		return this.source.equals(service.source)
-				&& this.destination.equals(service.destination)
-				&& this.session == service.session;
+		return this.session == service.session
+				&& this.source.equals(service.source)
+				&& this.destination.equals(service.destination);
 	}
 
+	/**
+	 * Returns the hash code of this service, which is computed when the
+	 * service is created rather than each time it is hashed.
+	 */
 	@Override
 	public int hashCode() {
+		return hash;
+	}
+
+	/**
+	 * Returns the hash code of a service with the given source, destination
+	 * and session (so that a {@link ServicePool} can look up a service without
+	 * creating one).
+	 */
+	static int hash(Venue source, Venue destination, int session) {
 		// calculates polynomial hashcode
 		final int prime = 31; // a prime
 		int result = 1; // hash code under construction
@@ -143,6 +160,7 @@ public class Service {
 	 */
 	public boolean checkInvariant() {
 		return (source != null && destination != null
-				&& !source.equals(destination) && session > 0);
+				&& !source.equals(destination) && session > 0
+				&& hash == hash(source, destination, session));
 	}
 }
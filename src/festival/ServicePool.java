@@ -0,0 +1,195 @@
+package festival;
+
+/**
+ * <p>
+ * A mutable pool of canonical services, so that structurally identical
+ * services created from the same pool are the same object.
+ * </p>
+ * 
+ * <p>
+ * A service is looked up by its source, destination and session without
+ * creating a service object first, so that only the first request for each
+ * service allocates one. The pool is an open-addressing hash table of the
+ * services, and looking up services whose venues come from one
+ * {@link VenueRegistry} compares the venues by identity. Services cannot be
+ * removed from a pool, so a pool keeps each service it has issued for as long
+ * as the pool itself is in use.
+ * </p>
+ * 
+ * <p>
+ * A pool is not safe for use by multiple threads at once without external
+ * synchronisation.
+ * </p>
+ */
+public class ServicePool {
+
+	/*
+	 * an open-addressing hash table of the services in the pool (null marks
+	 * an empty slot); its length is always a power of two
+	 */
+	private Service[] table;
+	// the number of services in the pool
+	private int size;
+
+	/*
+	 * Invariant: table != null && table.length is a power of two &&
+	 * size * 2 <= table.length && size is the number of services in table &&
+	 * no two services in table are equal && each service in table is found
+	 * by probing from the slot chosen by its hash code
+	 */
+
+	/**
+	 * Creates a new pool without any services.
+	 */
+	public ServicePool() {
+		table = new Service[32];
+		size = 0;
+	}
+
+	/**
+	 * Returns the canonical service in the pool with the given source,
+	 * destination and session, adding a new service to the pool if there is no
+	 * such service in it yet.
+	 * 
+	 * @param source
+	 *            the venue that the service departs from
+	 * @param destination
+	 *            the venue that the service arrives at
+	 * @param session
+	 *            the session when the service departs
+	 * @return the canonical service in this pool with the given source,
+	 *         destination and session
+	 * @throws NullPointerException
+	 *             if either the source or destination is null
+	 * @throws InvalidServiceException
+	 *             if the source venue equals the destination venue
+	 * @throws InvalidSessionException
+	 *             if session <= 0
+	 */
+	public Service intern(Venue source, Venue destination, int session) {
+		if (source == null || destination == null) {
+			throw new NullPointerException("Input parameters cannot be null");
+		}
+		// the slot in the table being probed
+		int slot = find(source, destination, session);
+		if (table[slot] == null) {
+			return add(slot, new Service(source, destination, session));
+		}
+		return table[slot];
+	}
+
+	/**
+	 * Returns the canonical service in the pool that is equal to the given
+	 * service, adding the given service to the pool if there is no equal
+	 * service in it yet.
+	 * 
+	 * @param service
+	 *            the service to intern
+	 * @return the canonical service in this pool equal to the given service
+	 * @throws NullPointerException
+	 *             if service is null
+	 */
+	public Service intern(Service service) {
+		if (service == null) {
+			throw new NullPointerException("Service cannot be null");
+		}
+		// the slot in the table being probed
+		int slot = find(service.getSource(), service.getDestination(),
+				service.getSession());
+		if (table[slot] == null) {
+			return add(slot, service);
+		}
+		return table[slot];
+	}
+
+	/**
+	 * Returns the number of services in the pool.
+	 * 
+	 * @return the number of services in the pool
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the slot of the table holding the service with the given source,
+	 * destination and session, or the empty slot at which it would be added.
+	 */
+	private int find(Venue source, Venue destination, int session) {
+		// the slot in the table being probed
+		int slot = mix(Service.hash(source, destination, session))
+				& (table.length - 1);
+		while (table[slot] != null) {
+			// the service in the slot
+			Service service = table[slot];
+			if (service.getSession() == session
+					&& service.getSource().equals(source)
+					&& service.getDestination().equals(destination)) {
+				break;
+			}
+			slot = (slot + 1) & (table.length - 1);
+		}
+		return slot;
+	}
+
+	/**
+	 * Adds the given service to the table at the given empty slot, resizing the
+	 * table if it has become too full, and returns the service.
+	 */
+	private Service add(int slot, Service service) {
+		table[slot] = service;
+		if (++size * 2 > table.length) {
+			// the table before resizing
+			Service[] old = table;
+			table = new Service[2 * old.length];
+			for (Service entry : old) {
+				if (entry != null) {
+					table[find(entry.getSource(), entry.getDestination(),
+							entry.getSession())] = entry;
+				}
+			}
+		}
+		return service;
+	}
+
+	/**
+	 * Spreads the bits of the given hash, so that the low bits used to choose
+	 * a slot depend on all of them.
+	 */
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	@Override
+	public String toString() {
+		return "ServicePool[" + size + " services]";
+	}
+
+	/**
+	 * Determines whether this ServicePool is internally consistent (i.e. it
+	 * satisfies its class invariant).
+	 * 
+	 * @return true if this ServicePool is internally consistent, and false
+	 *         otherwise.
+	 */
+	public boolean checkInvariant() {
+		if (table == null || Integer.bitCount(table.length) != 1
+				|| size * 2 > table.length) {
+			return false;
+		}
+		// the number of services in the table
+		int count = 0;
+		for (Service service : table) {
+			if (service != null) {
+				count++;
+				if (table[find(service.getSource(), service.getDestination(),
+						service.getSession())] != service) {
+					return false;
+				}
+			}
+		}
+		return count == size;
+	}
+
+}
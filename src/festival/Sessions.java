@@ -0,0 +1,34 @@
+package festival;
+
+/**
+ * Static helper methods for session numbers used as the keys of maps.
+ */
+final class Sessions {
+
+	// the boxed session numbers from 0 up to (but not including) its length
+	private static final Integer[] KEYS = new Integer[1 << 12];
+
+	static {
+		for (int session = 0; session < KEYS.length; session++) {
+			KEYS[session] = session;
+		}
+	}
+
+	/**
+	 * This class only has static methods, and should not be instantiated.
+	 */
+	private Sessions() {
+	}
+
+	/**
+	 * Returns the given session number boxed as a map key. Unlike autoboxing,
+	 * which only caches the numbers up to 127, this returns a shared object
+	 * for every session of a festival with fewer than 4096 sessions, so that
+	 * looking up a session in a map does not allocate.
+	 */
+	static Integer key(int session) {
+		return session >= 0 && session < KEYS.length ? KEYS[session]
+				: Integer.valueOf(session);
+	}
+
+}
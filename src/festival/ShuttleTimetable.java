@@ -1,6 +1,7 @@
 package festival;
 
 import java.util.*;
+import java.util.function.*;
 
 /**
  * <p>
@@ -12,21 +13,67 @@ import java.util.*;
  * A shuttle timetable does not contain duplicate services (no two services run
  * from a source venue to a destination venue at the same time).
  * </p>
+ * 
+ * <p>
+ * An immutable snapshot of the timetable can be taken in constant time, by
+ * sharing the index of its services by source venue with the snapshot. The
+ * first change to the timetable after a snapshot copies the top level of the
+ * index, and the first change to the services departing each venue copies
+ * that venue's part of the index, so that the snapshot is never changed.
+ * </p>
  */
-public class ShuttleTimetable implements Iterable<Service> {
+public class ShuttleTimetable implements Timetable {
 
-	// the services in the shuttle timetable
-	private Set<Service> services;
+	// the estimated number of bytes used by one entry of a map or set
+	private static final long ENTRY_BYTES = 40;
+	// the estimated number of bytes used by an empty map or set, including
+	// its entry in the map that holds it
+	private static final long TABLE_BYTES = 180;
 
+	// the number of services in the shuttle timetable
+	private int size;
+	// the destinations of the services, indexed by source venue and session
+	private Map<Venue, Map<Integer, Set<Venue>>> departures;
+	// the sources of the services, indexed by destination venue and session
+	private Map<Venue, Map<Integer, Set<Venue>>> arrivals;
+	// the number of changes made to the timetable since it was constructed
+	private long version;
+	// true if the departures map is shared with a snapshot of the timetable
+	private boolean shared;
+	// the snapshot most recently taken, or null if the timetable has changed
+	// since then
+	private TimetableSnapshot snapshot;
 	/*
-	 * Invariant: services != null
+	 * the maps of sessions in the departures index that are not shared with a
+	 * snapshot of the timetable (compared by identity)
+	 */
+	private Set<Map<Integer, Set<Venue>>> owned;
+	// the listeners told about each change to the timetable
+	private List<TimetableListener> listeners;
+	// the number of maps of sessions and sets of venues in the two indexes
+	private int tables;
+
+	/*
+	 * Invariant: departures != null && arrivals != null && owned != null &&
+	 * listeners != null && !listeners.contains(null) &&
+	 * for each service s in the timetable,
+	 * departures.get(s.getSource()).get(s.getSession()) contains
+	 * s.getDestination() and arrivals.get(s.getDestination())
+	 * .get(s.getSession()) contains s.getSource(), and neither index contains
+	 * anything else (in particular, no empty maps or sets) && size is the
+	 * number of services in the timetable && version >= 0 && tables is the
+	 * number of maps of sessions and sets of venues in the two indexes &&
+	 * (snapshot == null || shared)
 	 */
 
 	/**
 	 * Constructs a new shuttle timetable without any services.
 	 **/
 	public ShuttleTimetable() {
-		services = new HashSet<>();
+		departures = new HashMap<>();
+		arrivals = new HashMap<>();
+		owned = Collections.newSetFromMap(new IdentityHashMap<>());
+		listeners = new ArrayList<>();
 	}
 
 	/**
@@ -47,9 +94,91 @@ public class ShuttleTimetable implements Iterable<Service> {
 		if (service == null) {
 			throw new NullPointerException("Service cannot be null");
 		}
-		if (!services.contains(service)) {
-			services.add(service);
+		if (!hasService(service)) {
+			own(service.getSource());
+			tables += index(departures, service.getSource(),
+					service.getSession(), service.getDestination());
+			tables += index(arrivals, service.getDestination(),
+					service.getSession(), service.getSource());
+			size++;
+			version++;
+			measure();
+			for (TimetableListener listener : listeners) {
+				listener.serviceAdded(service);
+			}
+		}
+	}
+
+	/**
+	 * Makes sure that neither the departures map, nor the map of sessions in
+	 * it for the given source venue, is shared with a snapshot of the
+	 * timetable, by copying them if they are.
+	 * 
+	 * @param source
+	 *            the source venue of a service about to be added or removed
+	 */
+	private void own(Venue source) {
+		if (shared) {
+			departures = new HashMap<>(departures);
+			owned = Collections.newSetFromMap(new IdentityHashMap<>());
+			shared = false;
+			snapshot = null;
+		}
+		// the sessions in which services depart the source venue
+		Map<Integer, Set<Venue>> sessions = departures.get(source);
+		if (sessions == null || !owned.contains(sessions)) {
+			// the copy of the sessions, owned by the timetable
+			Map<Integer, Set<Venue>> copy = new HashMap<>();
+			if (sessions != null) {
+				for (Map.Entry<Integer, Set<Venue>> session : sessions
+						.entrySet()) {
+					copy.put(session.getKey(),
+							new HashSet<>(session.getValue()));
+				}
+			}
+			departures.put(source, copy);
+			owned.add(copy);
+		}
+	}
+
+	/**
+	 * Adds the given venue to the set indexed by the given key venue and
+	 * session in the given index.
+	 * 
+	 * @param index
+	 *            the index to add to
+	 * @param key
+	 *            the venue the set is indexed by
+	 * @param session
+	 *            the session the set is indexed by
+	 * @param venue
+	 *            the venue to add to the set
+	 * @return the number of maps and sets created in (or first filled in)
+	 *         the index
+	 */
+	private static int index(Map<Venue, Map<Integer, Set<Venue>>> index,
+			Venue key, int session, Venue venue) {
+		// the number of maps and sets created
+		int created = 0;
+		// the sessions indexed for the key venue (which may have been put in
+		// the index empty, by own(Venue), just before the service is added)
+		Map<Integer, Set<Venue>> sessions = index.get(key);
+		if (sessions == null) {
+			sessions = new HashMap<>();
+			index.put(key, sessions);
+		}
+		if (sessions.isEmpty()) {
+			created++;
+		}
+		// the venues indexed for the key venue and session
+		Set<Venue> venues = sessions.get(session);
+		if (venues == null) {
+			venues = new HashSet<>();
+			sessions.put(session, venues);
+			created++;
 		}
+		venues.add(venue);
+		return created;
 	}
 
 	/**
@@ -61,7 +190,135 @@ public class ShuttleTimetable implements Iterable<Service> {
 	 *            the service to be removed from the timetable.
 	 */
 	public void removeService(Service service) {
-		services.remove(service);
+		if (hasService(service)) {
+			own(service.getSource());
+			unindex(service);
+			measure();
+			for (TimetableListener listener : listeners) {
+				listener.serviceRemoved(service);
+			}
+		}
+	}
+
+	/**
+	 * Registers the given listener, so that it is told about each service
+	 * added to or removed from the timetable from now on (after the change
+	 * has been made, in the thread that made it).
+	 * 
+	 * @param listener
+	 *            the listener to register
+	 * @throws NullPointerException
+	 *             if listener is null
+	 */
+	public void addListener(TimetableListener listener) {
+		if (listener == null) {
+			throw new NullPointerException("Listener cannot be null");
+		}
+		listeners.add(listener);
+	}
+
+	/**
+	 * Unregisters the given listener, if it is registered.
+	 * 
+	 * @param listener
+	 *            the listener to unregister
+	 */
+	public void removeListener(TimetableListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Removes the given service (which is in the timetable, and whose part of
+	 * the departures index is owned by the timetable) from the departures and
+	 * arrivals indexes, and counts the change in the size and version of the
+	 * timetable.
+	 * 
+	 * @param service
+	 *            the service to remove from the indexes
+	 */
+	private void unindex(Service service) {
+		size--;
+		version++;
+		// the sessions in which services depart the source venue
+		Map<Integer, Set<Venue>> sessions = departures.get(service.getSource());
+		tables -= unindex(departures, service.getSource(),
+				service.getSession(), service.getDestination());
+		if (!departures.containsKey(service.getSource())) {
+			owned.remove(sessions);
+		}
+		tables -= unindex(arrivals, service.getDestination(),
+				service.getSession(), service.getSource());
+	}
+
+	/**
+	 * Removes the given venue from the set indexed by the given key venue and
+	 * session in the given index, removing any set or map left empty.
+	 * 
+	 * @param index
+	 *            the index to remove from
+	 * @param key
+	 *            the venue the set is indexed by
+	 * @param session
+	 *            the session the set is indexed by
+	 * @param venue
+	 *            the venue to remove from the set
+	 * @return the number of maps and sets removed from the index
+	 */
+	private static int unindex(Map<Venue, Map<Integer, Set<Venue>>> index,
+			Venue key, int session, Venue venue) {
+		// the sessions indexed for the key venue
+		Map<Integer, Set<Venue>> sessions = index.get(key);
+		// the venues indexed for the key venue and session
+		Set<Venue> venues = sessions.get(session);
+		venues.remove(venue);
+		if (!venues.isEmpty()) {
+			return 0;
+		}
+		sessions.remove(session);
+		if (!sessions.isEmpty()) {
+			return 1;
+		}
+		index.remove(key);
+		return 2;
+	}
+
+	/**
+	 * Reports the size of the timetable, and the estimated memory used by its
+	 * indexes, to the installed metrics (if they are enabled).
+	 */
+	private void measure() {
+		// the metrics to report to
+		Metrics metrics = Instrumentation.get();
+		if (metrics.isEnabled()) {
+			metrics.gauge("timetable.size", size);
+			metrics.gauge("timetable.index.bytes", estimateIndexMemory());
+		}
+	}
+
+	/**
+	 * Returns an estimate of the number of bytes of memory used by the
+	 * indexes of the services of the timetable (by source venue and by
+	 * destination venue), based on the typical sizes of hash maps and sets
+	 * and their entries. (Parts of the index shared with snapshots are
+	 * counted in full.)
+	 * 
+	 * @return the estimated memory used by the indexes, in bytes
+	 */
+	public long estimateIndexMemory() {
+		return 2 * TABLE_BYTES + tables * TABLE_BYTES + 2L * size
+				* ENTRY_BYTES;
+	}
+
+	/**
+	 * Returns the version of the timetable: a counter that starts at 0 and is
+	 * incremented by every operation that adds or removes a service. (Answers
+	 * derived from the timetable remain valid for as long as its version is
+	 * unchanged.)
+	 * 
+	 * @return the version of the timetable
+	 */
+	public long getVersion() {
+		return version;
 	}
 
 	/**
@@ -73,21 +330,31 @@ public class ShuttleTimetable implements Iterable<Service> {
 	 * @return true iff the timetable contains a shuttle service equivalent to
 	 *         the given parameter.
 	 */
+	@Override
 	public boolean hasService(Service service) {
-		return services.contains(service);
+		return service != null
+				&& contains(departures, service.getSource(),
+						service.getSession(), service.getDestination());
 	}
 
 	/**
 	 * Returns the number of services in the shuttle timetable.
 	 */
+	@Override
 	public int size() {
-		return services.size();
+		return size;
 	}
 
 	/**
 	 * Returns the set of venues that you can get to by catching an available
 	 * shuttle service from the source venue at the end of the given session.
 	 * 
+	 * (The lookup is answered from an index of the services by source venue
+	 * and session, so it takes time proportional to the number of services
+	 * departing the source venue at the end of the session, rather than the
+	 * size of the timetable. The returned set is a new set that the caller is
+	 * free to modify.)
+	 * 
 	 * @param source
 	 *            the source venue
 	 * @param session
@@ -100,6 +367,7 @@ public class ShuttleTimetable implements Iterable<Service> {
 	 * @throws InvalidSessionException
 	 *             if the session number is not positive
 	 */
+	@Override
 	public Set<Venue> getDestinations(Venue source, int session) {
 		if (source == null) {
 			throw new NullPointerException("The source venue cannot be null");
@@ -108,22 +376,321 @@ public class ShuttleTimetable implements Iterable<Service> {
 			throw new InvalidSessionException("Session number " + session
 					+ " must be positive");
 		}
-		// venues reachable from source at end of the session
-		Set<Venue> destinations = new HashSet<>();
-		for (Service s : services) {
-			if (s.getSource().equals(source) && s.getSession() == session) {
-				destinations.add(s.getDestination());
-			}
+		// the metrics the lookup is reported to
+		Metrics metrics = Instrumentation.get();
+		if (!metrics.isEnabled()) {
+			return lookup(departures, source, session);
 		}
+		// the time at which the lookup started
+		long started = System.nanoTime();
+		// the destinations found
+		Set<Venue> destinations = lookup(departures, source, session);
+		metrics.record("timetable.lookup", System.nanoTime() - started);
 		return destinations;
 	}
 
+	/**
+	 * Returns the set of venues from which you can get to the destination
+	 * venue by catching an available shuttle service at the end of the given
+	 * session.
+	 * 
+	 * (The lookup is answered from an index of the services by destination
+	 * venue and session, so it takes time proportional to the number of
+	 * services arriving at the destination venue after the session. The
+	 * returned set is a new set that the caller is free to modify.)
+	 * 
+	 * @param destination
+	 *            the destination venue
+	 * @param session
+	 *            the session number
+	 * @return A set of venues from which the destination venue can be reached
+	 *         by catching a single shuttle service at the end of the given
+	 *         session.
+	 * 
+	 * @throws NullPointerException
+	 *             if destination is null
+	 * @throws InvalidSessionException
+	 *             if the session number is not positive
+	 */
+	public Set<Venue> getSources(Venue destination, int session) {
+		if (destination == null) {
+			throw new NullPointerException(
+					"The destination venue cannot be null");
+		}
+		if (session <= 0) {
+			throw new InvalidSessionException("Session number " + session
+					+ " must be positive");
+		}
+		// the metrics the lookup is reported to
+		Metrics metrics = Instrumentation.get();
+		if (!metrics.isEnabled()) {
+			return lookup(arrivals, destination, session);
+		}
+		// the time at which the lookup started
+		long started = System.nanoTime();
+		// the sources found
+		Set<Venue> sources = lookup(arrivals, destination, session);
+		metrics.record("timetable.lookup", System.nanoTime() - started);
+		return sources;
+	}
+
+	/**
+	 * Passes each venue that you can get to by catching an available shuttle
+	 * service from the source venue at the end of the given session to the
+	 * given action, straight from the index of the services by source venue
+	 * and session, without creating a set of the venues.
+	 * 
+	 * @param source
+	 *            the source venue
+	 * @param session
+	 *            the session number
+	 * @param action
+	 *            the action to pass each destination venue to
+	 * @throws NullPointerException
+	 *             if source or action is null
+	 * @throws InvalidSessionException
+	 *             if the session number is not positive
+	 */
+	@Override
+	public void forEachDestination(Venue source, int session,
+			Consumer<? super Venue> action) {
+		if (source == null || action == null) {
+			throw new NullPointerException("Input parameters cannot be null");
+		}
+		if (session <= 0) {
+			throw new InvalidSessionException("Session number " + session
+					+ " must be positive");
+		}
+		visit(departures, source, session, action);
+	}
+
+	/**
+	 * Passes each venue from which you can get to the destination venue by
+	 * catching an available shuttle service at the end of the given session to
+	 * the given action, straight from the index of the services by
+	 * destination venue and session, without creating a set of the venues.
+	 * (The action must not change the timetable.)
+	 * 
+	 * @param destination
+	 *            the destination venue
+	 * @param session
+	 *            the session number
+	 * @param action
+	 *            the action to pass each source venue to
+	 * @throws NullPointerException
+	 *             if destination or action is null
+	 * @throws InvalidSessionException
+	 *             if the session number is not positive
+	 */
+	public void forEachSource(Venue destination, int session,
+			Consumer<? super Venue> action) {
+		if (destination == null || action == null) {
+			throw new NullPointerException("Input parameters cannot be null");
+		}
+		if (session <= 0) {
+			throw new InvalidSessionException("Session number " + session
+					+ " must be positive");
+		}
+		visit(arrivals, destination, session, action);
+	}
+
+	/**
+	 * Passes each venue indexed by the given key venue and session in the
+	 * given index to the given action, recording the time taken in the
+	 * installed metrics (if they are enabled).
+	 */
+	private static void visit(Map<Venue, Map<Integer, Set<Venue>>> index,
+			Venue key, int session, Consumer<? super Venue> action) {
+		// the metrics the lookup is reported to
+		Metrics metrics = Instrumentation.get();
+		if (!metrics.isEnabled()) {
+			forEach(index, key, session, action);
+			return;
+		}
+		// the time at which the lookup started
+		long started = System.nanoTime();
+		forEach(index, key, session, action);
+		metrics.record("timetable.lookup", System.nanoTime() - started);
+	}
+
+	@Override
+	public Set<Venue> getSourceVenues() {
+		return new HashSet<>(departures.keySet());
+	}
+
+	@Override
+	public int getLastSession() {
+		return lastSession(departures);
+	}
+
+	/**
+	 * Returns the largest session indexed in the given index, or 0 if it is
+	 * empty.
+	 */
+	static int lastSession(Map<Venue, Map<Integer, Set<Venue>>> index) {
+		// the largest session found so far
+		int last = 0;
+		for (Map<Integer, Set<Venue>> sessions : index.values()) {
+			for (int session : sessions.keySet()) {
+				last = Math.max(last, session);
+			}
+		}
+		return last;
+	}
+
+	/**
+	 * Returns a new set holding the venues indexed by the given key venue and
+	 * session in the given index.
+	 */
+	static Set<Venue> lookup(
+			Map<Venue, Map<Integer, Set<Venue>>> index, Venue key,
+			int session) {
+		// the sessions indexed for the key venue
+		Map<Integer, Set<Venue>> sessions = index.get(key);
+		if (sessions == null) {
+			return new HashSet<>();
+		}
+		// the venues indexed for the key venue and session
+		Set<Venue> venues = sessions.get(Sessions.key(session));
+		if (venues == null) {
+			return new HashSet<>();
+		}
+		return new HashSet<>(venues);
+	}
+
+	/**
+	 * Passes each venue indexed by the given key venue and session in the
+	 * given index to the given action. (No objects are created: the session
+	 * is looked up with a shared key, and the iterator over the venues does
+	 * not escape, so the compiler removes it.)
+	 */
+	static void forEach(Map<Venue, Map<Integer, Set<Venue>>> index,
+			Venue key, int session, Consumer<? super Venue> action) {
+		// the sessions indexed for the key venue
+		Map<Integer, Set<Venue>> sessions = index.get(key);
+		if (sessions == null) {
+			return;
+		}
+		// the venues indexed for the key venue and session
+		Set<Venue> venues = sessions.get(Sessions.key(session));
+		if (venues == null) {
+			return;
+		}
+		for (Venue venue : venues) {
+			action.accept(venue);
+		}
+	}
+
+	/**
+	 * Returns true if the given venue is in the set indexed by the given key
+	 * venue and session in the given index.
+	 */
+	static boolean contains(Map<Venue, Map<Integer, Set<Venue>>> index,
+			Venue key, int session, Venue venue) {
+		// the sessions indexed for the key venue
+		Map<Integer, Set<Venue>> sessions = index.get(key);
+		if (sessions == null) {
+			return false;
+		}
+		// the venues indexed for the key venue and session
+		Set<Venue> venues = sessions.get(Sessions.key(session));
+		return venues != null && venues.contains(venue);
+	}
+
+	/**
+	 * Returns an immutable snapshot of the services currently in the
+	 * timetable. Later changes to the timetable do not affect the snapshot.
+	 * 
+	 * (The snapshot is taken in constant time, by sharing the index of the
+	 * services by source venue, which is copied piece by piece as the
+	 * timetable changes afterwards. Snapshots taken while the timetable is
+	 * unchanged are the same object.)
+	 * 
+	 * @return an immutable snapshot of the timetable
+	 */
+	public Timetable snapshot() {
+		return share();
+	}
+
+	/**
+	 * Returns an immutable snapshot of the services currently in the
+	 * timetable, as for snapshot(), reusing the snapshot most recently taken
+	 * if the timetable has not changed since.
+	 */
+	TimetableSnapshot share() {
+		if (snapshot == null) {
+			shared = true;
+			snapshot = new TimetableSnapshot(departures, size);
+		}
+		return snapshot;
+	}
+
 	/**
 	 * Returns an iterator over the services in the shuttle timetable.
+	 * 
+	 * (The iterator runs over the index of the timetable itself, without
+	 * taking a snapshot, so iterating does not make the next change to the
+	 * timetable copy the index. The iterator is fail-fast: if the timetable
+	 * is changed after the iterator is created, other than through the
+	 * iterator's own remove method, the iterator throws a
+	 * ConcurrentModificationException. Services removed through the iterator
+	 * are removed from the timetable; the first such removal shares the
+	 * index with the iterator as for a snapshot, so that it is copied rather
+	 * than changed under the iterator.)
 	 */
 	@Override
 	public Iterator<Service> iterator() {
-		return services.iterator();
+		return new Iterator<Service>() {
+			// the underlying iterator over a view of the index
+			private Iterator<Service> iterator = new TimetableSnapshot(
+					departures, size).iterator();
+			// the version of the timetable that the iterator runs over
+			private long expected = version;
+			// the service most recently returned by next(), or null if it
+			// has been removed
+			private Service last;
+			// true once the view is shared with the timetable as for a
+			// snapshot (so that the timetable no longer changes it)
+			private boolean detached;
+
+			@Override
+			public boolean hasNext() {
+				check();
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Service next() {
+				check();
+				last = iterator.next();
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				if (last == null) {
+					throw new IllegalStateException();
+				}
+				check();
+				if (!detached) {
+					shared = true;
+					detached = true;
+				}
+				removeService(last);
+				expected = version;
+				last = null;
+			}
+
+			/**
+			 * Throws a ConcurrentModificationException if the timetable has
+			 * been changed other than through this iterator.
+			 */
+			private void check() {
+				if (version != expected) {
+					throw new ConcurrentModificationException();
+				}
+			}
+		};
 	}
 
 	/**
@@ -132,7 +699,8 @@ public class ShuttleTimetable implements Iterable<Service> {
 	 */
 	@Override
 	public String toString() {
-		return services.toString();
+		// a view of the services, which is not kept so need not be shared
+		return new TimetableSnapshot(departures, size).toString();
 	}
 
 	/**
@@ -143,7 +711,58 @@ public class ShuttleTimetable implements Iterable<Service> {
 	 *         otherwise.
 	 */
 	public boolean checkInvariant() {
-		return services != null;
+		if (departures == null || arrivals == null || owned == null
+				|| listeners == null || listeners.contains(null)
+				|| version < 0 || snapshot != null && !shared) {
+			return false;
+		}
+		return indexed(departures, arrivals) == size
+				&& indexed(arrivals, departures) == size
+				&& tables == tables(departures) + tables(arrivals);
+	}
+
+	/**
+	 * Returns the number of maps of sessions and sets of venues in the given
+	 * index.
+	 */
+	private static int tables(Map<Venue, Map<Integer, Set<Venue>>> index) {
+		// the number of maps and sets counted so far
+		int tables = 0;
+		for (Map<Integer, Set<Venue>> sessions : index.values()) {
+			tables += 1 + sessions.size();
+		}
+		return tables;
+	}
+
+	/**
+	 * Returns the number of venues recorded in the given index, or -1 if it
+	 * holds an empty map or set, or an entry that is not recorded the other
+	 * way around in the other index.
+	 */
+	private static int indexed(Map<Venue, Map<Integer, Set<Venue>>> index,
+			Map<Venue, Map<Integer, Set<Venue>>> other) {
+		// the number of venues recorded in the index
+		int indexed = 0;
+		for (Map.Entry<Venue, Map<Integer, Set<Venue>>> key : index
+				.entrySet()) {
+			if (key.getValue().isEmpty()) {
+				return -1;
+			}
+			for (Map.Entry<Integer, Set<Venue>> session : key.getValue()
+					.entrySet()) {
+				if (session.getValue().isEmpty()) {
+					return -1;
+				}
+				for (Venue venue : session.getValue()) {
+					if (!contains(other, venue, session.getKey(),
+							key.getKey())) {
+						return -1;
+					}
+					indexed++;
+				}
+			}
+		}
+		return indexed;
 	}
 
 }
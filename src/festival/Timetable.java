@@ -0,0 +1,91 @@
+package festival;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * <p>
+ * The query surface shared by representations of the shuttle services between
+ * venues at a festival.
+ * </p>
+ * 
+ * <p>
+ * A timetable does not contain duplicate services (no two services run from a
+ * source venue to a destination venue at the same time).
+ * </p>
+ */
+public interface Timetable extends Iterable<Service> {
+
+	/**
+	 * Returns true if the timetable contains a shuttle service equivalent to
+	 * the parameter service, and false otherwise.
+	 * 
+	 * @param service
+	 *            the service to be searched for
+	 * @return true iff the timetable contains a shuttle service equivalent to
+	 *         the given parameter.
+	 */
+	public boolean hasService(Service service);
+
+	/**
+	 * Returns the number of services in the timetable.
+	 */
+	public int size();
+
+	/**
+	 * Returns the set of venues that you can get to by catching an available
+	 * shuttle service from the source venue at the end of the given session.
+	 * 
+	 * @param source
+	 *            the source venue
+	 * @param session
+	 *            the session number
+	 * @return A set of venues that can be reached by catching a single shuttle
+	 *         service from the source venue at the end of the given session.
+	 * 
+	 * @throws NullPointerException
+	 *             if source is null
+	 * @throws InvalidSessionException
+	 *             if the session number is not positive
+	 */
+	public Set<Venue> getDestinations(Venue source, int session);
+
+	/**
+	 * Passes each venue that you can get to by catching an available shuttle
+	 * service from the source venue at the end of the given session to the
+	 * given action, without creating a set of the venues (so that the venues
+	 * can be visited in an inner loop without any allocation). The venues are
+	 * the same as those returned by getDestinations, but may be passed in any
+	 * order, and the action must not change the timetable.
+	 * 
+	 * @param source
+	 *            the source venue
+	 * @param session
+	 *            the session number
+	 * @param action
+	 *            the action to pass each destination venue to
+	 * @throws NullPointerException
+	 *             if source or action is null
+	 * @throws InvalidSessionException
+	 *             if the session number is not positive
+	 */
+	public void forEachDestination(Venue source, int session,
+			Consumer<? super Venue> action);
+
+	/**
+	 * Returns the set of venues from which at least one service in the
+	 * timetable departs.
+	 * 
+	 * @return a new set of the source venues of the services in the timetable
+	 */
+	public Set<Venue> getSourceVenues();
+
+	/**
+	 * Returns the last session in which a service departs, or 0 if there are
+	 * no services in the timetable.
+	 * 
+	 * @return the last session in which a service departs
+	 */
+	public int getLastSession();
+
+}
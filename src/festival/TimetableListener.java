@@ -0,0 +1,28 @@
+package festival;
+
+/**
+ * A listener that is told about each change made to a
+ * {@link ShuttleTimetable} that it has been registered with, so that
+ * structures derived from the timetable can be updated rather than rebuilt.
+ */
+public interface TimetableListener {
+
+	/**
+	 * Called after the given service has been added to the timetable (which
+	 * did not already contain an equivalent service).
+	 * 
+	 * @param service
+	 *            the service that was added
+	 */
+	void serviceAdded(Service service);
+
+	/**
+	 * Called after the given service has been removed from the timetable
+	 * (which contained an equivalent service).
+	 * 
+	 * @param service
+	 *            the service that was removed
+	 */
+	void serviceRemoved(Service service);
+
+}
@@ -0,0 +1,212 @@
+package festival;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * <p>
+ * An immutable snapshot of a {@link ShuttleTimetable}, which shares the index
+ * of the services by source venue of the timetable it was taken from.
+ * </p>
+ * 
+ * <p>
+ * The timetable copies each part of the index before changing it, so the
+ * snapshot is never affected by later changes to the timetable.
+ * </p>
+ */
+final class TimetableSnapshot implements Timetable {
+
+	// the destinations of the services, indexed by source venue and session
+	private Map<Venue, Map<Integer, Set<Venue>>> departures;
+	// the number of services in the snapshot
+	private int size;
+	// the reachability engine for the services in the snapshot, or null if
+	// it has not been built yet
+	private Reachability reachability;
+
+	/*
+	 * Invariant: departures != null && departures contains no empty maps or
+	 * sets && size is the number of services recorded in departures (the
+	 * total size of its sets of destinations)
+	 */
+
+	/**
+	 * Creates a snapshot of the services recorded in the given index, which
+	 * must never be changed afterwards. (A concurrent map whose values are
+	 * replaced, but never changed, may also be given, in which case the
+	 * snapshot is a weakly consistent view of it, and its size only an
+	 * estimate.)
+	 * 
+	 * @param departures
+	 *            the destinations of the services, by source venue and session
+	 * @param size
+	 *            the number of services recorded in the index
+	 */
+	TimetableSnapshot(Map<Venue, Map<Integer, Set<Venue>>> departures,
+			int size) {
+		this.departures = departures;
+		this.size = size;
+	}
+
+	@Override
+	public boolean hasService(Service service) {
+		return service != null
+				&& ShuttleTimetable.contains(departures, service.getSource(),
+						service.getSession(), service.getDestination());
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Set<Venue> getDestinations(Venue source, int session) {
+		if (source == null) {
+			throw new NullPointerException("The source venue cannot be null");
+		}
+		if (session <= 0) {
+			throw new InvalidSessionException("Session number " + session
+					+ " must be positive");
+		}
+		return ShuttleTimetable.lookup(departures, source, session);
+	}
+
+	@Override
+	public void forEachDestination(Venue source, int session,
+			Consumer<? super Venue> action) {
+		if (source == null || action == null) {
+			throw new NullPointerException("Input parameters cannot be null");
+		}
+		if (session <= 0) {
+			throw new InvalidSessionException("Session number " + session
+					+ " must be positive");
+		}
+		ShuttleTimetable.forEach(departures, source, session, action);
+	}
+
+	/**
+	 * Returns the reachability engine for the services in the snapshot,
+	 * building it the first time it is asked for, so that every day-planner
+	 * created from the snapshot shares one engine. (The engine must not be
+	 * updated.)
+	 */
+	synchronized Reachability getReachability() {
+		if (reachability == null) {
+			reachability = new Reachability(this);
+		}
+		return reachability;
+	}
+
+	@Override
+	public Set<Venue> getSourceVenues() {
+		return new HashSet<>(departures.keySet());
+	}
+
+	@Override
+	public int getLastSession() {
+		return ShuttleTimetable.lastSession(departures);
+	}
+
+	/**
+	 * Returns an iterator over the services in the snapshot. (The iterator
+	 * does not support removal.)
+	 */
+	@Override
+	public Iterator<Service> iterator() {
+		return new Iterator<Service>() {
+			// the iterator over the source venues
+			private Iterator<Map.Entry<Venue, Map<Integer, Set<Venue>>>>
+					sources = departures.entrySet().iterator();
+			// the source venue of the next service
+			private Venue source;
+			// the iterator over the sessions of the source venue
+			private Iterator<Map.Entry<Integer, Set<Venue>>> sessions =
+					Collections.emptyIterator();
+			// the session of the next service
+			private int session;
+			// the iterator over the destinations for the source and session
+			private Iterator<Venue> destinations = Collections.emptyIterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!destinations.hasNext()) {
+					while (!sessions.hasNext()) {
+						if (!sources.hasNext()) {
+							return false;
+						}
+						// the next source venue and its sessions
+						Map.Entry<Venue, Map<Integer, Set<Venue>>> next =
+								sources.next();
+						source = next.getKey();
+						sessions = next.getValue().entrySet().iterator();
+					}
+					// the next session and its destinations
+					Map.Entry<Integer, Set<Venue>> next = sessions.next();
+					session = next.getKey();
+					destinations = next.getValue().iterator();
+				}
+				return true;
+			}
+
+			@Override
+			public Service next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return new Service(source, destinations.next(), session);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException(
+						"A timetable snapshot cannot be modified");
+			}
+		};
+	}
+
+	/**
+	 * Returns a list of the services in the snapshot, in the order of its
+	 * iterator.
+	 */
+	@Override
+	public String toString() {
+		// the string representation under construction
+		StringBuilder result = new StringBuilder("[");
+		for (Service service : this) {
+			if (result.length() > 1) {
+				result.append(", ");
+			}
+			result.append(service);
+		}
+		return result.append("]").toString();
+	}
+
+	/**
+	 * Determines whether this TimetableSnapshot is internally consistent (i.e.
+	 * it satisfies its class invariant).
+	 * 
+	 * @return true if this TimetableSnapshot is internally consistent, and
+	 *         false otherwise.
+	 */
+	public boolean checkInvariant() {
+		if (departures == null) {
+			return false;
+		}
+		// the number of services recorded in the index
+		int indexed = 0;
+		for (Map<Integer, Set<Venue>> sessions : departures.values()) {
+			if (sessions.isEmpty()) {
+				return false;
+			}
+			for (Set<Venue> destinations : sessions.values()) {
+				if (destinations.isEmpty()) {
+					return false;
+				}
+				indexed += destinations.size();
+			}
+		}
+		return indexed == size;
+	}
+
+}
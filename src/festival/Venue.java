@@ -1,12 +1,28 @@
 package festival;
 
-/** An immutable class representing a venue at a music festival. **/
+/**
+ * <p>
+ * An immutable class representing a venue at a music festival.
+ * </p>
+ * 
+ * <p>
+ * Venues created by a {@link VenueRegistry} are canonical within that registry
+ * and carry a dense integer id; venues created directly with the constructor
+ * are not registered with any registry.
+ * </p>
+ **/
 public class Venue {
 
 	// the name of the venue
 	private String name;
+	// the registry that issued this venue, or null if it is unregistered
+	private VenueRegistry registry;
+	// the id of this venue within its registry, or -1 if it is unregistered
+	private int id;
 
-	/* invariant: name != null */
+	/*
+	 * invariant: name != null && (registry == null ? id == -1 : id >= 0)
+	 */
 
 	/**
 	 * Creates a new venue with the given name.
@@ -21,6 +37,25 @@ public class Venue {
 			throw new NullPointerException("Venue names cannot be null");
 		}
 		this.name = name;
+		this.registry = null;
+		this.id = -1;
+	}
+
+	/**
+	 * Creates a new venue with the given name that has been issued the given
+	 * id by the given registry.
+	 * 
+	 * @param name
+	 *            the name of the venue
+	 * @param registry
+	 *            the registry issuing this venue
+	 * @param id
+	 *            the id of the venue within the registry
+	 */
+	Venue(String name, VenueRegistry registry, int id) {
+		this.name = name;
+		this.registry = registry;
+		this.id = id;
 	}
 
 	/**
@@ -32,15 +67,36 @@ public class Venue {
 		return name;
 	}
 
+	/**
+	 * Returns the id issued to this venue by the given registry, or -1 if this
+	 * venue was not issued by that registry.
+	 * 
+	 * @param registry
+	 *            the registry to look up the id in
+	 * @return the id of this venue within the registry, or -1
+	 */
+	int getId(VenueRegistry registry) {
+		return this.registry == registry ? id : -1;
+	}
+
 	/**
 	 * Two venues are considered equal if their names are equivalent.
+	 * 
+	 * (Venues issued by the same registry are equal exactly when they are the
+	 * same object, so they are compared without comparing their names.)
 	 */
 	@Override
 	public boolean equals(Object object) {
+		if (this == object) {
+			return true;
+		}
 		if (!(object instanceof Venue)) {
 			return false;
 		}
 		Venue venue = (Venue) object; // venue to compare
+		if (registry != null && registry == venue.registry) {
+			return false;
+		}
 		return this.name.equals(venue.name);
 	}
 
@@ -61,7 +117,7 @@ public class Venue {
 	 * @return true if this Venue is internally consistent, and false otherwise.
 	 */
 	public boolean checkInv() {
-		return name != null;
+		return name != null && (registry == null ? id == -1 : id >= 0);
 	}
 
 }
@@ -0,0 +1,303 @@
+package festival;
+
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * <p>
+ * A mutable registry that interns venues by name, so that there is only ever
+ * one venue object for each venue name, and assigns each venue a dense integer
+ * id.
+ * </p>
+ * 
+ * <p>
+ * Ids are issued in order, starting at 0, as new venue names are registered;
+ * they are never reused, since venues cannot be removed from a registry. This
+ * allows other structures to index arrays by venue id rather than hashing
+ * venues, and venues issued by the same registry to be compared by identity.
+ * </p>
+ * 
+ * <p>
+ * A registry is not safe for use by multiple threads at once without external
+ * synchronisation.
+ * </p>
+ */
+public class VenueRegistry implements Iterable<Venue> {
+
+	// the canonical venues of the registry, indexed by name
+	private Map<String, Venue> venues;
+	// the canonical venues of the registry, indexed by id
+	private List<Venue> ids;
+	// the UTF-8 encoded names of the venues looked up by bytes, indexed by id
+	private byte[][] encodedNames;
+	/*
+	 * an open-addressing hash table of the venues looked up by bytes, holding
+	 * one more than the id of each such venue (0 marks an empty slot); its
+	 * length is always a power of two
+	 */
+	private int[] byteTable;
+	// the number of venues in byteTable
+	private int byteTableSize;
+
+	/*
+	 * Invariant: venues != null && ids != null && venues.size() == ids.size()
+	 * && for each 0 <= i < ids.size(), ids.get(i) was issued by this registry
+	 * with id i, and venues.get(ids.get(i).getName()) == ids.get(i)
+	 */
+
+	/**
+	 * Creates a new registry without any venues.
+	 */
+	public VenueRegistry() {
+		venues = new HashMap<>();
+		ids = new ArrayList<>();
+		encodedNames = new byte[16][];
+		byteTable = new int[32];
+		byteTableSize = 0;
+	}
+
+	/**
+	 * Returns the canonical venue with the given name, registering a new venue
+	 * if there is no venue with that name in the registry yet.
+	 * 
+	 * @param name
+	 *            the name of the venue
+	 * @return the canonical venue in this registry with the given name
+	 * @throws NullPointerException
+	 *             if name is null
+	 */
+	public Venue intern(String name) {
+		if (name == null) {
+			throw new NullPointerException("Venue names cannot be null");
+		}
+		// the canonical venue with the given name
+		Venue venue = venues.get(name);
+		if (venue == null) {
+			venue = new Venue(name, this, ids.size());
+			venues.put(name, venue);
+			ids.add(venue);
+		}
+		return venue;
+	}
+
+	/**
+	 * Returns the canonical venue that is equal to the given venue,
+	 * registering it if there is no equal venue in the registry yet.
+	 * 
+	 * @param venue
+	 *            the venue to intern
+	 * @return the canonical venue in this registry equal to the given venue
+	 * @throws NullPointerException
+	 *             if venue is null
+	 */
+	public Venue intern(Venue venue) {
+		if (venue == null) {
+			throw new NullPointerException("Venue cannot be null");
+		}
+		if (venue.getId(this) >= 0) {
+			return venue;
+		}
+		return intern(venue.getName());
+	}
+
+	/**
+	 * Returns the canonical venue whose name is the UTF-8 encoding of the bytes
+	 * of the given buffer from position start up to (but not including)
+	 * position end, registering a new venue if there is no venue with that
+	 * name in the registry yet.
+	 * 
+	 * (Venues that have been looked up this way before are found by comparing
+	 * the bytes directly, without decoding them into a string.)
+	 * 
+	 * @param buffer
+	 *            the buffer holding the name of the venue
+	 * @param start
+	 *            the position in the buffer at which the name starts
+	 * @param end
+	 *            the position in the buffer at which the name ends
+	 * @return the canonical venue in this registry with the given name
+	 */
+	Venue intern(ByteBuffer buffer, int start, int end) {
+		// the hash of the bytes of the name
+		int hash = 1;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + buffer.get(i);
+		}
+		// the slot in the table being probed
+		int slot = mix(hash) & (byteTable.length - 1);
+		while (byteTable[slot] != 0) {
+			// the id of the venue in the slot
+			int id = byteTable[slot] - 1;
+			if (matches(encodedNames[id], buffer, start, end)) {
+				return ids.get(id);
+			}
+			slot = (slot + 1) & (byteTable.length - 1);
+		}
+		// the bytes of the name, copied out of the buffer
+		byte[] name = new byte[end - start];
+		for (int i = start; i < end; i++) {
+			name[i - start] = buffer.get(i);
+		}
+		// the canonical venue with the given name
+		Venue venue = intern(new String(name, StandardCharsets.UTF_8));
+		// the id of the canonical venue
+		int id = venue.getId(this);
+		if (id >= encodedNames.length) {
+			encodedNames =
+					Arrays.copyOf(encodedNames, Math.max(id + 1,
+							2 * encodedNames.length));
+		}
+		encodedNames[id] = name;
+		byteTable[slot] = id + 1;
+		if (++byteTableSize * 2 > byteTable.length) {
+			resizeByteTable();
+		}
+		return venue;
+	}
+
+	/**
+	 * Returns true if the given bytes are equal to the bytes of the buffer
+	 * from position start up to (but not including) position end.
+	 */
+	private static boolean matches(byte[] bytes, ByteBuffer buffer, int start,
+			int end) {
+		if (bytes.length != end - start) {
+			return false;
+		}
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] != buffer.get(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the hash of the given bytes, as computed by intern(ByteBuffer,
+	 * int, int).
+	 */
+	private static int hash(byte[] bytes) {
+		// the hash under construction
+		int hash = 1;
+		for (byte b : bytes) {
+			hash = 31 * hash + b;
+		}
+		return hash;
+	}
+
+	/**
+	 * Spreads the bits of the given hash, so that the low bits used to choose
+	 * a slot depend on all of them.
+	 */
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Doubles the length of byteTable, re-inserting the venues in it.
+	 */
+	private void resizeByteTable() {
+		// the table before resizing
+		int[] old = byteTable;
+		byteTable = new int[2 * old.length];
+		for (int entry : old) {
+			if (entry != 0) {
+				// the slot in the new table being probed
+				int slot = mix(hash(encodedNames[entry - 1]))
+						& (byteTable.length - 1);
+				while (byteTable[slot] != 0) {
+					slot = (slot + 1) & (byteTable.length - 1);
+				}
+				byteTable[slot] = entry;
+			}
+		}
+	}
+
+	/**
+	 * Returns the id of the venue in this registry that is equal to the given
+	 * venue, or -1 if no such venue has been registered.
+	 * 
+	 * @param venue
+	 *            the venue to look up
+	 * @return the id of the venue in this registry, or -1 if it is not
+	 *         registered
+	 * @throws NullPointerException
+	 *             if venue is null
+	 */
+	public int getId(Venue venue) {
+		if (venue == null) {
+			throw new NullPointerException("Venue cannot be null");
+		}
+		// the id of the venue, if it was issued by this registry
+		int id = venue.getId(this);
+		if (id >= 0) {
+			return id;
+		}
+		// the canonical venue with the same name
+		Venue canonical = venues.get(venue.getName());
+		return canonical == null ? -1 : canonical.getId(this);
+	}
+
+	/**
+	 * Returns the venue with the given id.
+	 * 
+	 * @param id
+	 *            the id of the venue
+	 * @return the canonical venue in this registry with the given id
+	 * @throws IndexOutOfBoundsException
+	 *             if id < 0 or id >= size()
+	 */
+	public Venue getVenue(int id) {
+		return ids.get(id);
+	}
+
+	/**
+	 * Returns the number of venues in the registry. (The ids of the venues are
+	 * exactly the integers from 0 up to, but not including, this number.)
+	 * 
+	 * @return the number of venues in the registry
+	 */
+	public int size() {
+		return ids.size();
+	}
+
+	/**
+	 * Returns an iterator over the venues in the registry, in order of id.
+	 */
+	@Override
+	public Iterator<Venue> iterator() {
+		return Collections.unmodifiableList(ids).iterator();
+	}
+
+	@Override
+	public String toString() {
+		return ids.toString();
+	}
+
+	/**
+	 * Determines whether this VenueRegistry is internally consistent (i.e. it
+	 * satisfies its class invariant).
+	 * 
+	 * @return true if this VenueRegistry is internally consistent, and false
+	 *         otherwise.
+	 */
+	public boolean checkInvariant() {
+		if (venues == null || ids == null || venues.size() != ids.size()
+				|| encodedNames == null || byteTable == null
+				|| Integer.bitCount(byteTable.length) != 1
+				|| byteTableSize * 2 > byteTable.length) {
+			return false;
+		}
+		for (int i = 0; i < ids.size(); i++) {
+			// the venue issued with id i
+			Venue venue = ids.get(i);
+			if (venue.getId(this) != i || venues.get(venue.getName()) != venue) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
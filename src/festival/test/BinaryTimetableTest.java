@@ -0,0 +1,170 @@
+package festival.test;
+
+import org.junit.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+import festival.*;
+
+/**
+ * Basic tests for the {@link BinaryTimetable} class, and the errors it reports
+ * for files that are not valid binary timetables.
+ */
+public class BinaryTimetableTest {
+
+	// the position of the number of services in the header of a file
+	private static final int SERVICES = 16;
+	// the position of the total length of the venue names in a file
+	private static final int NAME_BYTES = 20;
+	// the position of the length of the name of the first venue in a file
+	private static final int FIRST_NAME_LENGTH = 24;
+
+	// the file written and corrupted by the tests
+	private File file;
+	// the bytes of a valid binary timetable file
+	private byte[] valid;
+
+	/**
+	 * Writes a valid binary timetable, and keeps its bytes.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		timetable.addService(new Service(new Venue("v1"), new Venue("v2"), 1));
+		timetable.addService(new Service(new Venue("v1"), new Venue("v3"), 1));
+		timetable.addService(new Service(new Venue("v2"), new Venue("v1"), 2));
+		file = File.createTempFile("timetable", ".bin");
+		BinaryTimetable.write(new CompactTimetable(timetable), file.getPath());
+		valid = Files.readAllBytes(file.toPath());
+	}
+
+	/**
+	 * Deletes the file written by the tests.
+	 */
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * Test that a file that does not start with the magic number, or is too
+	 * short to hold a header, is rejected.
+	 */
+	@Test
+	public void testBadMagic() throws IOException {
+		// the bytes of the corrupted file
+		byte[] bytes = valid.clone();
+		bytes[0] = 'X';
+		checkRejected(bytes, "not a binary timetable file");
+		checkRejected(Arrays.copyOf(valid, 10), "not a binary timetable file");
+		checkRejected(new byte[0], "not a binary timetable file");
+	}
+
+	/**
+	 * Test that a file written in another version of the format is rejected.
+	 */
+	@Test
+	public void testUnsupportedVersion() throws IOException {
+		// the bytes of the corrupted file
+		byte[] bytes = valid.clone();
+		ByteBuffer.wrap(bytes).putInt(4, 2);
+		checkRejected(withChecksum(bytes), "unsupported version 2");
+	}
+
+	/**
+	 * Test that a truncated or extended file, or one whose header gives the
+	 * wrong counts, is rejected.
+	 */
+	@Test
+	public void testLengthMismatch() throws IOException {
+		checkRejected(Arrays.copyOf(valid, valid.length - 4),
+				"length does not match its header");
+		checkRejected(Arrays.copyOf(valid, valid.length + 4),
+				"length does not match its header");
+		// the bytes of the corrupted file
+		byte[] bytes = valid.clone();
+		ByteBuffer.wrap(bytes).putInt(SERVICES, 4);
+		checkRejected(withChecksum(bytes), "length does not match its header");
+		bytes = valid.clone();
+		ByteBuffer.wrap(bytes).putInt(SERVICES, -1);
+		checkRejected(withChecksum(bytes), "length does not match its header");
+	}
+
+	/**
+	 * Test that a file whose contents have changed since it was written is
+	 * rejected.
+	 */
+	@Test
+	public void testChecksumMismatch() throws IOException {
+		// the bytes of the corrupted file
+		byte[] bytes = valid.clone();
+		bytes[bytes.length - 9] ^= 1;
+		checkRejected(bytes, "checksum does not match");
+		bytes = valid.clone();
+		bytes[bytes.length - 1] ^= 1;
+		checkRejected(bytes, "checksum does not match");
+	}
+
+	/**
+	 * Test that venue name lengths that are not positive, run past the names,
+	 * or do not add up to the total length of the names are rejected.
+	 */
+	@Test
+	public void testInvalidNameLength() throws IOException {
+		for (int length : new int[] { 0, -1, 100, Integer.MAX_VALUE }) {
+			// the bytes of the corrupted file
+			byte[] bytes = valid.clone();
+			ByteBuffer.wrap(bytes).putInt(FIRST_NAME_LENGTH, length);
+			checkRejected(withChecksum(bytes), "invalid venue name length "
+					+ length);
+		}
+		// the bytes of the corrupted file
+		byte[] bytes = valid.clone();
+		// the buffer over the bytes of the file
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		buffer.putInt(FIRST_NAME_LENGTH, buffer.getInt(FIRST_NAME_LENGTH) - 1);
+		checkRejected(withChecksum(bytes), "the venue names take "
+				+ (buffer.getInt(NAME_BYTES) - 1) + " bytes");
+	}
+
+	/**
+	 * Test that the valid file is loaded, so that the errors above are
+	 * caused by the corruption alone.
+	 */
+	@Test
+	public void testValid() throws IOException, FormatException {
+		Assert.assertEquals(3, BinaryTimetable.read(file.getPath()).size());
+	}
+
+	// Helper methods
+
+	/**
+	 * Returns the given bytes of a file, with the checksum at their end
+	 * replaced by the checksum of the bytes before it.
+	 */
+	private static byte[] withChecksum(byte[] bytes) {
+		// the checksum of the bytes before the checksum
+		CRC32 checksum = new CRC32();
+		checksum.update(bytes, 0, bytes.length - 8);
+		ByteBuffer.wrap(bytes).putLong(bytes.length - 8, checksum.getValue());
+		return bytes;
+	}
+
+	/**
+	 * Checks that reading a file holding the given bytes throws a format
+	 * exception whose message contains the given text.
+	 */
+	private void checkRejected(byte[] bytes, String message)
+			throws IOException {
+		Files.write(file.toPath(), bytes);
+		try {
+			BinaryTimetable.read(file.getPath());
+			Assert.fail("FormatException expected");
+		} catch (FormatException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains(message));
+		}
+	}
+
+}
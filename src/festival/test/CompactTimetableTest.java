@@ -0,0 +1,165 @@
+package festival.test;
+
+import org.junit.*;
+import java.util.*;
+import java.util.function.*;
+import festival.*;
+import java.io.*;
+
+/**
+ * Basic tests for the {@link CompactTimetable} implementation class.
+ */
+public class CompactTimetableTest {
+
+	// Services for use in testing
+	private Service[] services = {
+			new Service(new Venue("v1"), new Venue("v2"), 1),
+			new Service(new Venue("v1"), new Venue("v3"), 1),
+			new Service(new Venue("v1"), new Venue("v4"), 2),
+			new Service(new Venue("v2"), new Venue("v1"), 2),
+			new Service(new Venue("v2"), new Venue("v4"), 5) };
+
+	/**
+	 * Test that a compact snapshot answers the same queries as the timetable
+	 * it was taken from.
+	 */
+	@Test
+	public void testSameQueries() {
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		for (Service service : services) {
+			timetable.addService(service);
+		}
+		CompactTimetable compact = new CompactTimetable(timetable);
+		Assert.assertTrue(compact.checkInvariant());
+		Assert.assertEquals(timetable.size(), compact.size());
+		for (Service service : services) {
+			Assert.assertTrue(compact.hasService(service));
+		}
+		Assert.assertFalse(compact.hasService(new Service(new Venue("v2"),
+				new Venue("v1"), 1)));
+		Assert.assertFalse(compact.hasService(new Service(new Venue("v9"),
+				new Venue("v1"), 1)));
+		for (Venue venue : new Venue[] { new Venue("v1"), new Venue("v2"),
+				new Venue("v4"), new Venue("v9") }) {
+			for (int session = 1; session <= 6; session++) {
+				Assert.assertEquals(timetable.getDestinations(venue, session),
+						compact.getDestinations(venue, session));
+			}
+		}
+		// the services returned by the iterator of the snapshot
+		Set<Service> iterated = new HashSet<>();
+		for (Service service : compact) {
+			iterated.add(service);
+		}
+		Assert.assertEquals(new HashSet<>(Arrays.asList(services)), iterated);
+	}
+
+	/**
+	 * Test that visiting the destinations of a venue, by venue or by id,
+	 * visits the same venues as getDestinations returns, for each kind of
+	 * timetable.
+	 */
+	@Test
+	public void testForEachDestination() {
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		for (Service service : services) {
+			timetable.addService(service);
+		}
+		final CompactTimetable compact = new CompactTimetable(timetable);
+		ConcurrentShuttleTimetable concurrent =
+				new ConcurrentShuttleTimetable();
+		concurrent.update(Arrays.asList(services),
+				Collections.<Service> emptyList());
+		for (Timetable visited : new Timetable[] { timetable,
+				timetable.snapshot(), compact, concurrent }) {
+			for (Venue venue : new Venue[] { new Venue("v1"),
+					new Venue("v2"), new Venue("v4"), new Venue("v9") }) {
+				for (int session = 1; session <= 6; session++) {
+					// the venues visited
+					final Set<Venue> venues = new HashSet<>();
+					visited.forEachDestination(venue, session,
+							new Consumer<Venue>() {
+								@Override
+								public void accept(Venue destination) {
+									Assert.assertTrue(venues.add(destination));
+								}
+							});
+					Assert.assertEquals(timetable.getDestinations(venue,
+							session), venues);
+				}
+			}
+		}
+		// the ids visited, in the order visited
+		final List<Venue> ids = new ArrayList<>();
+		compact.forEachDestination(compact.getRegistry().getId(
+				new Venue("v1")), 1, new IntConsumer() {
+			@Override
+			public void accept(int id) {
+				ids.add(compact.getRegistry().getVenue(id));
+			}
+		});
+		Assert.assertEquals(Arrays.asList(new Venue("v2"), new Venue("v3")),
+				ids);
+		compact.forEachDestination(-1, 1, new IntConsumer() {
+			@Override
+			public void accept(int id) {
+				Assert.fail("Venue " + id + " visited");
+			}
+		});
+	}
+
+	/**
+	 * Test that later changes to a timetable do not affect a snapshot of it.
+	 */
+	@Test
+	public void testSnapshotIsIndependent() {
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		for (Service service : services) {
+			timetable.addService(service);
+		}
+		CompactTimetable compact = new CompactTimetable(timetable);
+		timetable.removeService(services[0]);
+		timetable.addService(new Service(new Venue("v3"), new Venue("v1"), 3));
+		Assert.assertEquals(services.length, compact.size());
+		Assert.assertTrue(compact.hasService(services[0]));
+		Assert.assertTrue(compact.getDestinations(new Venue("v3"), 3)
+				.isEmpty());
+	}
+
+	/**
+	 * Test taking a snapshot of an empty timetable.
+	 */
+	@Test
+	public void testEmptyTimetable() {
+		CompactTimetable compact =
+				new CompactTimetable(new ShuttleTimetable());
+		Assert.assertTrue(compact.checkInvariant());
+		Assert.assertEquals(0, compact.size());
+		Assert.assertEquals(0, compact.getLastSession());
+		Assert.assertFalse(compact.iterator().hasNext());
+		Assert.assertTrue(compact.getDestinations(new Venue("v1"), 1)
+				.isEmpty());
+	}
+
+	/**
+	 * Test that a compact timetable written in the binary format is loaded back
+	 * unchanged.
+	 */
+	@Test
+	public void testBinaryRoundTrip() throws IOException, FormatException {
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		for (Service service : services) {
+			timetable.addService(service);
+		}
+		// the file to write the timetable to
+		File file = File.createTempFile("timetable", ".bin");
+		file.deleteOnExit();
+		BinaryTimetable.write(new CompactTimetable(timetable), file.getPath());
+		CompactTimetable loaded = BinaryTimetable.read(file.getPath());
+		Assert.assertEquals(timetable.size(), loaded.size());
+		for (Service service : timetable) {
+			Assert.assertTrue(loaded.hasService(service));
+		}
+	}
+
+}
@@ -0,0 +1,84 @@
+package festival.test;
+
+import org.junit.*;
+import java.util.*;
+import festival.*;
+
+/**
+ * Basic tests for the {@link ConcurrentShuttleTimetable} implementation
+ * class.
+ */
+public class ConcurrentShuttleTimetableTest {
+
+	// Venues for use in testing
+	private Venue v1 = new Venue("v1");
+	private Venue v2 = new Venue("v2");
+	private Venue v3 = new Venue("v3");
+
+	/**
+	 * Test that a bulk update removes and then adds its services.
+	 */
+	@Test
+	public void testUpdate() {
+		ConcurrentShuttleTimetable timetable = new ConcurrentShuttleTimetable();
+		timetable.addService(new Service(v1, v2, 1));
+		timetable.addService(new Service(v1, v3, 1));
+		timetable.update(Arrays.asList(new Service(v2, v3, 2), new Service(v1,
+				v2, 1)), Arrays.asList(new Service(v1, v2, 1), new Service(v1,
+				v3, 1), new Service(v3, v1, 4)));
+		Assert.assertTrue(timetable.checkInvariant());
+		Assert.assertEquals(2, timetable.size());
+		Assert.assertEquals(new HashSet<Venue>(Arrays.asList(v2)),
+				timetable.getDestinations(v1, 1));
+		Assert.assertTrue(timetable.hasService(new Service(v2, v3, 2)));
+		Assert.assertEquals(3, timetable.getVersion());
+
+		// a bulk update with a null service makes no changes
+		try {
+			timetable.update(Arrays.asList(new Service(v3, v1, 1), null),
+					Collections.<Service> emptyList());
+			Assert.fail();
+		} catch (NullPointerException e) {
+			Assert.assertEquals(2, timetable.size());
+		}
+	}
+
+	/**
+	 * Test that the timetable can be iterated over while other threads
+	 * change it.
+	 */
+	@Test
+	public void testConcurrentIteration() throws Exception {
+		final ConcurrentShuttleTimetable timetable =
+				new ConcurrentShuttleTimetable();
+		// the thread changing the timetable
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 20000; i++) {
+					timetable.addService(new Service(v1, v2, i % 50 + 1));
+					timetable.removeService(new Service(v1, v2,
+							(i + 25) % 50 + 1));
+				}
+			}
+		};
+		writer.start();
+		while (writer.isAlive()) {
+			for (Service service : timetable) {
+				Assert.assertEquals(v1, service.getSource());
+			}
+		}
+		writer.join();
+		Assert.assertTrue(timetable.checkInvariant());
+		// the number of services found by iterating
+		int count = 0;
+		for (Iterator<Service> it = timetable.iterator(); it.hasNext();) {
+			it.next();
+			it.remove();
+			count++;
+		}
+		Assert.assertEquals(25, count);
+		Assert.assertEquals(0, timetable.size());
+	}
+
+}
@@ -61,4 +61,223 @@ public class DayPlannerTest {
 		Assert.assertFalse(planner.compatible(plan));
 	}
 
+	/**
+	 * Test that a plan is incompatible when the next event can only be reached
+	 * by catching two shuttle services at the end of the same session.
+	 */
+	@Test
+	public void testIncompatibleTwoServicesInOneSession() {
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		timetable.addService(new Service(new Venue("v1"), new Venue("v2"), 1));
+		timetable.addService(new Service(new Venue("v2"), new Venue("v3"), 1));
+		timetable.addService(new Service(new Venue("v2"), new Venue("v3"), 2));
+		DayPlanner planner = new DayPlanner(timetable);
+		// the day plan to test
+		List<Event> plan = new ArrayList<>();
+		plan.add(new Event(new Venue("v1"), 1, "act_a"));
+		plan.add(new Event(new Venue("v3"), 2, "act_b"));
+		Assert.assertFalse(planner.compatible(plan));
+		// waiting a session at v2 makes the second service catchable
+		plan.set(1, new Event(new Venue("v3"), 3, "act_b"));
+		Assert.assertTrue(planner.compatible(plan));
+	}
+
+	/**
+	 * Test that the planner is not affected by changes to the timetable it was
+	 * created with.
+	 */
+	@Test
+	public void testTimetableCopied() {
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		timetable.addService(new Service(new Venue("v1"), new Venue("v2"), 1));
+		DayPlanner planner = new DayPlanner(timetable);
+		timetable.removeService(new Service(new Venue("v1"), new Venue("v2"),
+				1));
+		// the day plan to test
+		List<Event> plan = new ArrayList<>();
+		plan.add(new Event(new Venue("v1"), 1, "act_a"));
+		plan.add(new Event(new Venue("v2"), 2, "act_b"));
+		Assert.assertTrue(planner.compatible(plan));
+	}
+
+	/**
+	 * Test that day-planners created from a timetable before and after it
+	 * changes each see the services of the timetable when they were created,
+	 * whichever of them checks a plan first.
+	 */
+	@Test
+	public void testPlannersOfDifferentVersions() {
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		timetable.addService(new Service(new Venue("v1"), new Venue("v2"), 1));
+		DayPlanner before = new DayPlanner(timetable);
+		DayPlanner same = new DayPlanner(timetable);
+		timetable.addService(new Service(new Venue("v2"), new Venue("v3"), 2));
+		DayPlanner after = new DayPlanner(timetable);
+		// the day plan to test
+		List<Event> plan = new ArrayList<>();
+		plan.add(new Event(new Venue("v1"), 1, "act_a"));
+		plan.add(new Event(new Venue("v3"), 3, "act_b"));
+		Assert.assertTrue(after.compatible(plan));
+		Assert.assertFalse(before.compatible(plan));
+		Assert.assertFalse(same.compatible(plan));
+		Assert.assertEquals(BitSet.valueOf(new long[] { 1 }),
+				after.compatibleAll(Arrays.asList(plan)));
+	}
+
+	/**
+	 * Test that checking a batch of plans gives the same results as checking
+	 * each plan on its own.
+	 */
+	@Test
+	public void testCompatibleAll() throws IOException, FormatException {
+		ShuttleTimetable timetable = ScheduleReader.read("timetable_01.txt");
+		DayPlanner planner = new DayPlanner(timetable);
+		// the day plans to test
+		List<List<Event>> plans = new ArrayList<>();
+		plans.add(Arrays.asList(events[0], events[1], events[4]));
+		plans.add(Arrays.asList(events[0], events[1], events[2], events[3]));
+		plans.add(new ArrayList<Event>());
+		plans.add(Arrays.asList(events[2], events[4]));
+		BitSet compatible = planner.compatibleAll(plans);
+		for (int i = 0; i < plans.size(); i++) {
+			Assert.assertEquals(planner.compatible(plans.get(i)),
+					compatible.get(i));
+		}
+		Assert.assertEquals(compatible, planner.compatibleAll(plans.iterator()));
+	}
+
+	/**
+	 * Test that checking many generated plans in parallel, in more than one
+	 * task and more than one batch, gives the same results as checking each
+	 * plan on its own, including for numbers of plans that are not a
+	 * multiple of the 64 plans recorded in each word of the result.
+	 */
+	@Test
+	public void testCompatibleAllLarge() {
+		FestivalGenerator generator = new FestivalGenerator(17, 30, 12);
+		generator.setFanOut(1.5, FestivalGenerator.Distribution.POISSON);
+		DayPlanner planner = new DayPlanner(generator.generateTimetable());
+		// all the plans to test, of which a prefix is checked at a time
+		List<List<Event>> all = generator.generatePlans(generator
+				.generateLineUp(0.3), (1 << 16) + 70, 3);
+		// whether each plan is compatible, checked on its own
+		BitSet expected = new BitSet();
+		for (int i = 0; i < all.size(); i++) {
+			expected.set(i, planner.compatible(all.get(i)));
+		}
+		Assert.assertTrue(expected.cardinality() > 0);
+		Assert.assertTrue(expected.cardinality() < all.size());
+		for (int count : new int[] { 63, 64, 65, 1025, 2049, 5000 }) {
+			// the plans checked together
+			List<List<Event>> plans = all.subList(0, count);
+			Assert.assertEquals(expected.get(0, count), planner
+					.compatibleAll(plans));
+			Assert.assertEquals(expected.get(0, count), planner
+					.compatibleAll(new LinkedList<>(plans)));
+		}
+		Assert.assertEquals(expected, planner.compatibleAll(all.iterator()));
+		Assert.assertEquals(expected, planner.compatibleAll(all.stream()));
+	}
+
+	/**
+	 * Test that a live day-planner follows services added to and removed from
+	 * its timetable until it is detached, and that it only rebuilds its
+	 * reachability engine for a service that brings in a new venue or a later
+	 * session.
+	 */
+	@Test
+	public void testLivePlanner() {
+		RecordingMetrics metrics = Instrumentation.enable();
+		try {
+			ShuttleTimetable timetable = new ShuttleTimetable();
+			timetable.addService(new Service(new Venue("v1"), new Venue("v2"),
+					1));
+			timetable.addService(new Service(new Venue("v2"), new Venue("v3"),
+					1));
+			timetable.addService(new Service(new Venue("v3"), new Venue("v1"),
+					2));
+			DayPlanner planner = new DayPlanner(timetable, true);
+			// the day plan to test
+			List<Event> plan = new ArrayList<>();
+			plan.add(new Event(new Venue("v1"), 1, "act_a"));
+			plan.add(new Event(new Venue("v3"), 3, "act_b"));
+			Assert.assertFalse(planner.compatible(plan));
+			timetable.addService(new Service(new Venue("v2"), new Venue("v3"),
+					2));
+			Assert.assertTrue(planner.compatible(plan));
+			timetable.removeService(new Service(new Venue("v1"),
+					new Venue("v2"), 1));
+			Assert.assertFalse(planner.compatible(plan));
+			Assert.assertEquals(0, metrics.getCounter("planner.rebuilds"));
+
+			// a service to a venue new to the day-planner
+			timetable.addService(new Service(new Venue("v1"), new Venue("v4"),
+					1));
+			Assert.assertEquals(1, metrics.getCounter("planner.rebuilds"));
+			Assert.assertFalse(planner.compatible(plan));
+			timetable.addService(new Service(new Venue("v4"), new Venue("v3"),
+					2));
+			Assert.assertTrue(planner.compatible(plan));
+			timetable.removeService(new Service(new Venue("v4"),
+					new Venue("v3"), 2));
+			Assert.assertFalse(planner.compatible(plan));
+			Assert.assertEquals(1, metrics.getCounter("planner.rebuilds"));
+
+			// a service in a later session than any before it
+			plan.add(new Event(new Venue("v1"), 4, "act_c"));
+			plan.remove(0);
+			Assert.assertFalse(planner.compatible(plan));
+			timetable.addService(new Service(new Venue("v3"), new Venue("v1"),
+					3));
+			Assert.assertEquals(2, metrics.getCounter("planner.rebuilds"));
+			Assert.assertTrue(planner.compatible(plan));
+			timetable.removeService(new Service(new Venue("v3"),
+					new Venue("v1"), 3));
+			Assert.assertFalse(planner.compatible(plan));
+			timetable.addService(new Service(new Venue("v3"), new Venue("v1"),
+					3));
+			Assert.assertTrue(planner.compatible(plan));
+			Assert.assertEquals(2, metrics.getCounter("planner.rebuilds"));
+
+			planner.detach();
+			timetable.removeService(new Service(new Venue("v3"),
+					new Venue("v1"), 3));
+			timetable.addService(new Service(new Venue("v3"), new Venue("v5"),
+					4));
+			Assert.assertTrue(planner.compatible(plan));
+			Assert.assertEquals(2, metrics.getCounter("planner.rebuilds"));
+		} finally {
+			Instrumentation.disable();
+		}
+	}
+
+	/**
+	 * Test that closing a live day-planner stops it following its timetable,
+	 * and that closing a day-planner with a snapshot has no effect.
+	 */
+	@Test
+	public void testClose() {
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		timetable.addService(new Service(new Venue("v1"), new Venue("v2"), 1));
+		// the day plan to test
+		List<Event> plan = new ArrayList<>();
+		plan.add(new Event(new Venue("v1"), 1, "act_a"));
+		plan.add(new Event(new Venue("v2"), 2, "act_b"));
+		// the day-planner, used after it is closed
+		DayPlanner closed;
+		try (DayPlanner planner = new DayPlanner(timetable, true)) {
+			Assert.assertTrue(planner.compatible(plan));
+			closed = planner;
+		}
+		timetable.removeService(new Service(new Venue("v1"), new Venue("v2"),
+				1));
+		Assert.assertTrue(closed.compatible(plan));
+		closed.close();
+		Assert.assertTrue(closed.compatible(plan));
+
+		DayPlanner planner = new DayPlanner(timetable);
+		planner.close();
+		Assert.assertFalse(planner.compatible(plan));
+	}
+
 }
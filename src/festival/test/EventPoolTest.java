@@ -0,0 +1,68 @@
+package festival.test;
+
+import org.junit.*;
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import festival.*;
+
+/**
+ * Basic tests for the {@link EventPool} implementation class.
+ */
+public class EventPoolTest {
+
+	/**
+	 * Test that equal events are interned as the same object, and that events
+	 * for equal acts share their act.
+	 */
+	@Test
+	public void testIntern() {
+		EventPool pool = new EventPool();
+		// an event interned before its equal ones
+		Event event = pool.intern(new Venue("v1"), 1, new String("act_a"));
+		Assert.assertSame(event, pool.intern(new Event(new Venue("v1"), 1,
+				"act_a")));
+		Assert.assertSame(event, pool.intern(new Venue("v1"), 1,
+				new String("act_a")));
+		// an event for the same act in a different session
+		Event other = pool.intern(new Event(new Venue("v1"), 2,
+				new String("act_a")));
+		Assert.assertEquals(new Event(new Venue("v1"), 2, "act_a"), other);
+		Assert.assertSame(event.getAct(), other.getAct());
+		for (int session = 1; session <= 100; session++) {
+			Assert.assertSame(event.getAct(), pool.intern(new Venue("v2"),
+					session, new String("act_a")).getAct());
+		}
+		Assert.assertEquals(102, pool.size());
+		Assert.assertTrue(pool.checkInvariant());
+	}
+
+	/**
+	 * Test that reading a line-up file twice with the same pool gives line-ups
+	 * of the same event objects.
+	 */
+	@Test
+	public void testReadWithPool() throws FormatException, IOException {
+		File file = File.createTempFile("festival", ".txt");
+		try {
+			Files.write(file.toPath(), "1 v1 act_a\n2 v1 act_a\n1 v2 act_b\n"
+					.getBytes(StandardCharsets.UTF_8));
+			VenueRegistry registry = new VenueRegistry();
+			EventPool pool = new EventPool();
+			LineUp first = LineUpReader.read(file.getPath(), registry, pool);
+			LineUp second = LineUpReader.read(file.getPath(), registry, pool);
+			// the events of the second line-up, in the order read
+			Iterator<Event> events = second.iterator();
+			for (Event event : first) {
+				Assert.assertSame(event, events.next());
+			}
+			Assert.assertSame(first.getEvents(1).get(0).getAct(), first
+					.getEvents(2).get(0).getAct());
+			Assert.assertEquals(3, pool.size());
+		} finally {
+			file.delete();
+		}
+	}
+
+}
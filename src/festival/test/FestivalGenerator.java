@@ -0,0 +1,535 @@
+package festival.test;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+import festival.*;
+
+/**
+ * <p>
+ * A deterministic generator of synthetic festivals (timetables, line-ups and
+ * candidate plans) for load and scale testing.
+ * </p>
+ * 
+ * <p>
+ * Everything a generator produces is determined by its seed and settings. The
+ * services departing each venue are drawn from a random number generator of
+ * their own, seeded from the generator's seed and the venue's id, so that a
+ * timetable can be written to a file one venue at a time (without being held
+ * in memory), and the timetable built in memory has exactly the same services
+ * as the file. Venue i is named "v" followed by i.
+ * </p>
+ * 
+ * <p>
+ * The number of services departing a venue at the end of each session (its
+ * fan-out) is drawn from a chosen distribution with a chosen mean, and their
+ * destinations (which are distinct, and never the venue itself) depend on the
+ * chosen topology:
+ * </p>
+ * <ul>
+ * <li>UNIFORM: each destination is equally likely to be any other venue.</li>
+ * <li>HUB_AND_SPOKE: the first few venues are hubs. Services from the other
+ * venues (the spokes) only go to hubs, while services from a hub go to any
+ * other venue, with the mean fan-out of a hub scaled up by the number of
+ * spokes per hub so that hubs carry the traffic back out.</li>
+ * </ul>
+ */
+public class FestivalGenerator {
+
+	/**
+	 * The shape of the network of shuttle services.
+	 */
+	public enum Topology {
+		UNIFORM, HUB_AND_SPOKE
+	}
+
+	/**
+	 * The distribution of the number of services departing a venue at the end
+	 * of a session.
+	 */
+	public enum Distribution {
+		// the mean, rounded up or down at random to keep the mean exact
+		CONSTANT,
+		// the number of events of a Poisson process with the mean as its rate
+		POISSON,
+		// a geometric distribution with the mean, which has a long tail
+		GEOMETRIC
+	}
+
+	/**
+	 * The single defect introduced into a deliberately invalid timetable file,
+	 * each of which {@link ScheduleReader} reports as a format error.
+	 */
+	public enum Defect {
+		// the number of sessions is not a positive integer
+		BAD_HEADER,
+		// a session line starts with the wrong session number
+		WRONG_SESSION_NUMBER,
+		// a session line is missing from the description of a venue
+		MISSING_SESSION_LINE,
+		// a venue has a service to itself
+		SELF_SERVICE,
+		// a session line names the same destination twice
+		DUPLICATE_SERVICE,
+		// a venue is described twice
+		DUPLICATE_VENUE,
+		// the name of a venue contains whitespace
+		WHITESPACE_IN_NAME,
+		// the empty line after the description of a venue is missing
+		MISSING_BLANK_LINE
+	}
+
+	// the seed from which everything generated is derived
+	private long seed;
+	// the number of venues at the festival
+	private int venues;
+	// the number of sessions in the festival
+	private int sessions;
+	// the mean number of services departing a venue in each session
+	private double fanOut;
+	// the distribution of the number of services departing a venue
+	private Distribution distribution;
+	// the shape of the network of shuttle services
+	private Topology topology;
+	// the number of hubs (used only by the HUB_AND_SPOKE topology)
+	private int hubs;
+
+	/*
+	 * Invariant: venues >= 2 && sessions >= 1 && fanOut >= 0 && distribution
+	 * != null && topology != null && 1 <= hubs < venues
+	 */
+
+	/**
+	 * Creates a generator of festivals with the given number of venues and
+	 * sessions, with a uniform topology and a constant fan-out of one service
+	 * per venue and session.
+	 * 
+	 * @param seed
+	 *            the seed from which everything generated is derived
+	 * @param venues
+	 *            the number of venues at the festival
+	 * @param sessions
+	 *            the number of sessions in the festival
+	 * @throws IllegalArgumentException
+	 *             if there are fewer than two venues, or sessions is not
+	 *             positive
+	 */
+	public FestivalGenerator(long seed, int venues, int sessions) {
+		if (venues < 2 || sessions <= 0) {
+			throw new IllegalArgumentException("A festival needs at least two"
+					+ " venues and one session, not " + venues + " and "
+					+ sessions);
+		}
+		this.seed = seed;
+		this.venues = venues;
+		this.sessions = sessions;
+		this.fanOut = 1;
+		this.distribution = Distribution.CONSTANT;
+		this.topology = Topology.UNIFORM;
+		this.hubs = 1;
+	}
+
+	/**
+	 * Sets the mean and distribution of the number of services departing a
+	 * venue at the end of each session.
+	 * 
+	 * @param mean
+	 *            the mean fan-out
+	 * @param distribution
+	 *            the distribution of the fan-out
+	 * @throws NullPointerException
+	 *             if distribution is null
+	 * @throws IllegalArgumentException
+	 *             if mean is negative or not a number
+	 */
+	public void setFanOut(double mean, Distribution distribution) {
+		if (distribution == null) {
+			throw new NullPointerException("The distribution cannot be null");
+		}
+		if (!(mean >= 0)) {
+			throw new IllegalArgumentException("The mean fan-out " + mean
+					+ " must not be negative");
+		}
+		this.fanOut = mean;
+		this.distribution = distribution;
+	}
+
+	/**
+	 * Sets the topology of the network of shuttle services.
+	 * 
+	 * @param topology
+	 *            the topology of the network
+	 * @param hubs
+	 *            the number of hubs (ignored unless the topology is
+	 *            HUB_AND_SPOKE)
+	 * @throws NullPointerException
+	 *             if topology is null
+	 * @throws IllegalArgumentException
+	 *             if the topology is HUB_AND_SPOKE and the number of hubs is
+	 *             not between 1 and the number of venues minus one
+	 */
+	public void setTopology(Topology topology, int hubs) {
+		if (topology == null) {
+			throw new NullPointerException("The topology cannot be null");
+		}
+		if (topology == Topology.HUB_AND_SPOKE
+				&& (hubs < 1 || hubs >= venues)) {
+			throw new IllegalArgumentException("The number of hubs " + hubs
+					+ " must be between 1 and " + (venues - 1));
+		}
+		this.topology = topology;
+		this.hubs = topology == Topology.HUB_AND_SPOKE ? hubs : 1;
+	}
+
+	/**
+	 * Returns the venue with the given id.
+	 * 
+	 * @param id
+	 *            the id of the venue, between 0 and the number of venues minus
+	 *            one
+	 * @return the venue with the given id
+	 */
+	public Venue getVenue(int id) {
+		return new Venue(name(id));
+	}
+
+	/**
+	 * Returns a new timetable holding the generated services.
+	 * 
+	 * @return the generated timetable
+	 */
+	public ShuttleTimetable generateTimetable() {
+		// the timetable under construction
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		// the venues, by id
+		Venue[] all = new Venue[venues];
+		for (int id = 0; id < venues; id++) {
+			all[id] = getVenue(id);
+		}
+		for (int source = 0; source < venues; source++) {
+			// the random numbers for the services departing the venue
+			Random random = venueRandom(source);
+			for (int session = 1; session <= sessions; session++) {
+				for (int destination : destinations(source, random)) {
+					timetable.addService(new Service(all[source],
+							all[destination], session));
+				}
+			}
+		}
+		return timetable;
+	}
+
+	/**
+	 * Writes the generated timetable to the given file, in the format read by
+	 * {@link ScheduleReader#read(String)}, describing every venue. (The
+	 * services are generated as they are written, so the timetable need not
+	 * fit in memory.)
+	 * 
+	 * @param fileName
+	 *            the name of the file to write
+	 * @throws IOException
+	 *             if there is an error writing the file
+	 */
+	public void writeTimetable(String fileName) throws IOException {
+		write(fileName, null);
+	}
+
+	/**
+	 * Writes the generated timetable to the given file, as for
+	 * writeTimetable, but with the given defect introduced (at a venue and
+	 * session chosen at random), so that the file is not in the format read
+	 * by {@link ScheduleReader#read(String)}.
+	 * 
+	 * @param fileName
+	 *            the name of the file to write
+	 * @param defect
+	 *            the defect to introduce
+	 * @throws NullPointerException
+	 *             if defect is null
+	 * @throws IOException
+	 *             if there is an error writing the file
+	 */
+	public void writeInvalidTimetable(String fileName, Defect defect)
+			throws IOException {
+		if (defect == null) {
+			throw new NullPointerException("The defect cannot be null");
+		}
+		write(fileName, defect);
+	}
+
+	/**
+	 * Writes the generated timetable to the given file, with the given defect
+	 * introduced unless it is null.
+	 */
+	private void write(String fileName, Defect defect) throws IOException {
+		// the random numbers choosing where the defect is
+		Random random = new Random(seed ^ 0x5DEECE66DL);
+		// the venue and session at which the defect is introduced (the venue
+		// is never the last, whose description is not followed by an empty
+		// line)
+		int venue = random.nextInt(venues - 1);
+		int session = 1 + random.nextInt(sessions);
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(fileName), StandardCharsets.UTF_8),
+				1 << 16)) {
+			out.write(defect == Defect.BAD_HEADER ? "0\n" : sessions + "\n");
+			for (int source = 0; source < venues; source++) {
+				if (source > 0) {
+					out.write('\n');
+				}
+				writeVenue(out, source, source == venue ? defect : null,
+						session);
+			}
+			if (defect == Defect.DUPLICATE_VENUE) {
+				out.write('\n');
+				writeVenue(out, venue, null, session);
+			}
+		}
+	}
+
+	/**
+	 * Writes the description of the venue with the given id to the given
+	 * writer, with the given defect (if it is not null) introduced at the
+	 * given session.
+	 */
+	private void writeVenue(Writer out, int source, Defect defect,
+			int defectSession) throws IOException {
+		// the line being written
+		StringBuilder line = new StringBuilder(name(source));
+		if (defect == Defect.WHITESPACE_IN_NAME) {
+			line.append(" stage");
+		}
+		out.write(line.append('\n').toString());
+		// the random numbers for the services departing the venue
+		Random random = venueRandom(source);
+		for (int session = 1; session <= sessions; session++) {
+			// the destinations of the services departing in the session
+			int[] destinations = destinations(source, random);
+			if (session == defectSession
+					&& defect == Defect.MISSING_SESSION_LINE) {
+				continue;
+			}
+			line.setLength(0);
+			line.append(session == defectSession
+					&& defect == Defect.WRONG_SESSION_NUMBER ? session + 1
+					: session);
+			for (int destination : destinations) {
+				line.append(' ').append(name(destination));
+			}
+			if (session == defectSession && defect == Defect.SELF_SERVICE) {
+				line.append(' ').append(name(source));
+			}
+			if (session == defectSession
+					&& defect == Defect.DUPLICATE_SERVICE) {
+				// a destination to name twice
+				String twice = name(destinations.length > 0 ? destinations[0]
+						: (source + 1) % venues);
+				line.append(' ').append(twice).append(' ').append(twice);
+			}
+			out.write(line.append('\n').toString());
+		}
+		if (defect == Defect.MISSING_BLANK_LINE) {
+			// a line in place of the empty line that should follow
+			out.write(defectSession + "\n");
+		}
+	}
+
+	/**
+	 * Returns a line-up in which each (venue, session) slot holds an event
+	 * with the given probability. The act at venue i in session s is named
+	 * "act" followed by i, an underscore and s.
+	 * 
+	 * @param fill
+	 *            the probability that a slot holds an event
+	 * @return the generated line-up
+	 * @throws IllegalArgumentException
+	 *             if fill is not between 0 and 1
+	 */
+	public LineUp generateLineUp(double fill) {
+		if (!(fill >= 0 && fill <= 1)) {
+			throw new IllegalArgumentException("The fill " + fill
+					+ " must be between 0 and 1");
+		}
+		// the random numbers choosing the slots
+		Random random = new Random(seed ^ 0x2545F4914F6CDD1DL);
+		// the line-up under construction
+		LineUp lineUp = new LineUp();
+		for (int id = 0; id < venues; id++) {
+			// the venue whose slots are being filled
+			Venue venue = getVenue(id);
+			for (int session = 1; session <= sessions; session++) {
+				if (random.nextDouble() < fill) {
+					lineUp.addEvent(new Event(venue, session, "act" + id + "_"
+							+ session));
+				}
+			}
+		}
+		return lineUp;
+	}
+
+	/**
+	 * Returns the given number of candidate plans for the given line-up. Each
+	 * plan holds events of the line-up from the given number of distinct
+	 * sessions chosen at random (or from every session that has an event, if
+	 * there are fewer), ordered by session. The plans are not necessarily
+	 * compatible.
+	 * 
+	 * @param lineUp
+	 *            the line-up to choose events from
+	 * @param count
+	 *            the number of plans
+	 * @param length
+	 *            the number of events in each plan
+	 * @return the generated plans
+	 * @throws NullPointerException
+	 *             if lineUp is null
+	 * @throws IllegalArgumentException
+	 *             if count or length is negative
+	 */
+	public List<List<Event>> generatePlans(LineUp lineUp, int count,
+			int length) {
+		if (lineUp == null) {
+			throw new NullPointerException("The line-up cannot be null");
+		}
+		if (count < 0 || length < 0) {
+			throw new IllegalArgumentException("The number of plans " + count
+					+ " and their length " + length + " must not be negative");
+		}
+		// the events of the line-up in each session that has any
+		List<List<Event>> bySession = new ArrayList<>();
+		for (int session = lineUp.getFirstUsedSession(); session > 0
+				&& session <= lineUp.getLastUsedSession(); session++) {
+			// the events in the session
+			List<Event> events = lineUp.getEvents(session);
+			if (!events.isEmpty()) {
+				bySession.add(events);
+			}
+		}
+		// the random numbers choosing the events
+		Random random = new Random(seed ^ 0x9E3779B97F4A7C15L);
+		// the plans under construction
+		List<List<Event>> plans = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			// the indexes of the sessions of the plan, in ascending order
+			int[] chosen = sample(Math.min(length, bySession.size()),
+					bySession.size(), random);
+			Arrays.sort(chosen);
+			// the plan under construction
+			List<Event> plan = new ArrayList<>(chosen.length);
+			for (int index : chosen) {
+				// the events in the session
+				List<Event> events = bySession.get(index);
+				plan.add(events.get(random.nextInt(events.size())));
+			}
+			plans.add(plan);
+		}
+		return plans;
+	}
+
+	/**
+	 * Returns the ids of the destinations of the services departing the venue
+	 * with the given id at the end of a session, drawn from the given random
+	 * numbers.
+	 */
+	private int[] destinations(int source, Random random) {
+		// true if the destinations are restricted to the hubs
+		boolean spoke = topology == Topology.HUB_AND_SPOKE && source >= hubs;
+		// the number of venues the destinations are chosen from
+		int candidates = spoke ? hubs : venues - 1;
+		// the mean fan-out of the venue
+		double mean = topology == Topology.HUB_AND_SPOKE && !spoke ? fanOut
+				* Math.max(1.0, (double) (venues - hubs) / hubs) : fanOut;
+		// the indexes of the chosen candidates
+		int[] chosen = sample(Math.min(sampleFanOut(mean, random), candidates),
+				candidates, random);
+		if (!spoke) {
+			for (int i = 0; i < chosen.length; i++) {
+				// skip over the source venue itself
+				chosen[i] = chosen[i] < source ? chosen[i] : chosen[i] + 1;
+			}
+		}
+		return chosen;
+	}
+
+	/**
+	 * Returns a fan-out drawn from the distribution of this generator with
+	 * the given mean.
+	 */
+	private int sampleFanOut(double mean, Random random) {
+		switch (distribution) {
+		case POISSON:
+			if (mean < 30) {
+				// the product of uniform numbers, compared with e^-mean
+				double limit = Math.exp(-mean);
+				double product = random.nextDouble();
+				int count = 0;
+				while (product > limit) {
+					product *= random.nextDouble();
+					count++;
+				}
+				return count;
+			}
+			return (int) Math.max(0, Math.round(mean + Math.sqrt(mean)
+					* random.nextGaussian()));
+		case GEOMETRIC:
+			if (mean == 0) {
+				return 0;
+			}
+			// the number of failures before a success with this probability
+			double p = 1 / (1 + mean);
+			return (int) Math.min(Integer.MAX_VALUE, Math.floor(Math.log(1
+					- random.nextDouble()) / Math.log(1 - p)));
+		default:
+			// the whole part of the mean, and the chance of rounding it up
+			int whole = (int) Math.min(Integer.MAX_VALUE, Math.floor(mean));
+			return random.nextDouble() < mean - whole ? whole + 1 : whole;
+		}
+	}
+
+	/**
+	 * Returns count distinct numbers between 0 and bound - 1 chosen at
+	 * random, using Floyd's algorithm.
+	 */
+	private static int[] sample(int count, int bound, Random random) {
+		// the numbers chosen
+		int[] chosen = new int[count];
+		// the numbers chosen, for quick membership tests
+		Set<Integer> members = new HashSet<>();
+		for (int j = bound - count, i = 0; j < bound; j++, i++) {
+			// a candidate number between 0 and j
+			int candidate = random.nextInt(j + 1);
+			chosen[i] = members.add(candidate) ? candidate : j;
+			members.add(chosen[i]);
+		}
+		return chosen;
+	}
+
+	/**
+	 * Returns the random numbers for the services departing the venue with
+	 * the given id.
+	 */
+	private Random venueRandom(int source) {
+		return new Random(seed * 0x9E3779B97F4A7C15L + source);
+	}
+
+	/**
+	 * Returns the name of the venue with the given id.
+	 */
+	private static String name(int id) {
+		return "v" + id;
+	}
+
+	/**
+	 * Determines whether this FestivalGenerator is internally consistent (i.e.
+	 * it satisfies its class invariant).
+	 * 
+	 * @return true if this FestivalGenerator is internally consistent, and
+	 *         false otherwise.
+	 */
+	public boolean checkInvariant() {
+		return venues >= 2 && sessions >= 1 && fanOut >= 0
+				&& distribution != null && topology != null && hubs >= 1
+				&& hubs < venues;
+	}
+
+}
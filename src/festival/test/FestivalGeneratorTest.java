@@ -0,0 +1,91 @@
+package festival.test;
+
+import org.junit.*;
+import java.io.*;
+import java.util.*;
+import festival.*;
+
+/**
+ * Basic tests for the {@link FestivalGenerator} implementation class.
+ */
+public class FestivalGeneratorTest {
+
+	// the file written by the tests
+	private File file;
+
+	/**
+	 * Creates the file written by the tests.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("festival", ".txt");
+	}
+
+	/**
+	 * Deletes the file written by the tests.
+	 */
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * Test that a generated timetable file is read back as the generated
+	 * timetable, for each topology.
+	 */
+	@Test
+	public void testWrittenTimetableIsRead() throws Exception {
+		for (FestivalGenerator.Topology topology : FestivalGenerator.Topology
+				.values()) {
+			FestivalGenerator generator = new FestivalGenerator(42, 30, 6);
+			generator.setFanOut(2.5, FestivalGenerator.Distribution.POISSON);
+			generator.setTopology(topology, 3);
+			generator.writeTimetable(file.getPath());
+			// the generated and read services
+			Set<Service> generated = new HashSet<>();
+			Set<Service> read = new HashSet<>();
+			for (Service service : generator.generateTimetable()) {
+				generated.add(service);
+			}
+			for (Service service : ScheduleReader.read(file.getPath())) {
+				read.add(service);
+			}
+			Assert.assertFalse(generated.isEmpty());
+			Assert.assertEquals(generated, read);
+		}
+	}
+
+	/**
+	 * Test that the same seed generates the same festival.
+	 */
+	@Test
+	public void testDeterministic() {
+		FestivalGenerator first = new FestivalGenerator(7, 20, 8);
+		FestivalGenerator second = new FestivalGenerator(7, 20, 8);
+		Assert.assertEquals(first.generateTimetable().toString(), second
+				.generateTimetable().toString());
+		Assert.assertEquals(first.generateLineUp(0.5).toString(), second
+				.generateLineUp(0.5).toString());
+		Assert.assertEquals(first.generatePlans(first.generateLineUp(0.5), 5,
+				3), second.generatePlans(second.generateLineUp(0.5), 5, 3));
+	}
+
+	/**
+	 * Test that each defect makes the reader report a format error.
+	 */
+	@Test
+	public void testInvalidTimetables() throws IOException {
+		FestivalGenerator generator = new FestivalGenerator(3, 10, 4);
+		for (FestivalGenerator.Defect defect : FestivalGenerator.Defect
+				.values()) {
+			generator.writeInvalidTimetable(file.getPath(), defect);
+			try {
+				ScheduleReader.read(file.getPath());
+				Assert.fail("No format error for " + defect);
+			} catch (FormatException e) {
+				// expected
+			}
+		}
+	}
+
+}
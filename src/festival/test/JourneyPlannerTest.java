@@ -0,0 +1,86 @@
+package festival.test;
+
+import org.junit.*;
+import java.util.*;
+import festival.*;
+
+/**
+ * Basic tests for the {@link JourneyPlanner} implementation class.
+ */
+public class JourneyPlannerTest {
+
+	// Venues for use in testing
+	private Venue v1 = new Venue("v1");
+	private Venue v2 = new Venue("v2");
+	private Venue v3 = new Venue("v3");
+	private Venue v4 = new Venue("v4");
+	private Venue v5 = new Venue("v5");
+
+	/**
+	 * Test that the earliest arrivals are found, with the journey with the
+	 * fewest rides among those arriving earliest.
+	 */
+	@Test
+	public void testEarliestArrivals() {
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		timetable.addService(new Service(v1, v2, 1));
+		timetable.addService(new Service(v2, v3, 2));
+		timetable.addService(new Service(v3, v4, 3));
+		timetable.addService(new Service(v1, v4, 3));
+		timetable.addService(new Service(v2, v4, 4));
+		timetable.addService(new Service(v4, v5, 5));
+		JourneyPlanner planner = new JourneyPlanner(timetable);
+		Assert.assertTrue(planner.checkInvariant());
+
+		Journeys journeys = planner.earliestArrivals(v1, 1);
+		Assert.assertEquals(1, journeys.getArrivalSession(v1));
+		Assert.assertEquals(0, journeys.getRides(v1));
+		Assert.assertEquals(new ArrayList<Service>(), journeys.getJourney(v1));
+		Assert.assertEquals(2, journeys.getArrivalSession(v2));
+		Assert.assertEquals(3, journeys.getArrivalSession(v3));
+		Assert.assertEquals(4, journeys.getArrivalSession(v4));
+		Assert.assertEquals(1, journeys.getRides(v4));
+		Assert.assertEquals(Arrays.asList(new Service(v1, v4, 3)),
+				journeys.getJourney(v4));
+		Assert.assertEquals(6, journeys.getArrivalSession(v5));
+		Assert.assertEquals(Arrays.asList(new Service(v1, v4, 3), new Service(
+				v4, v5, 5)), journeys.getJourney(v5));
+
+		// a venue without services can only be reached by starting there
+		Venue v9 = new Venue("v9");
+		Assert.assertEquals(0, journeys.getArrivalSession(v9));
+		Assert.assertEquals(-1, journeys.getRides(v9));
+		Assert.assertNull(journeys.getJourney(v9));
+		Assert.assertEquals(7, planner.earliestArrivals(v9, 7)
+				.getArrivalSession(v9));
+	}
+
+	/**
+	 * Test that at most one service is caught at the end of each session, and
+	 * that services departing before the start session are not used.
+	 */
+	@Test
+	public void testOneServicePerSession() {
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		timetable.addService(new Service(v1, v2, 1));
+		timetable.addService(new Service(v2, v3, 1));
+		JourneyPlanner planner = new JourneyPlanner(timetable);
+
+		Journeys journeys = planner.earliestArrivals(v1, 1);
+		Assert.assertEquals(2, journeys.getArrivalSession(v2));
+		Assert.assertEquals(0, journeys.getArrivalSession(v3));
+		Assert.assertNull(journeys.getJourney(v3));
+
+		journeys = planner.earliestArrivals(v1, 2);
+		Assert.assertEquals(0, journeys.getArrivalSession(v2));
+	}
+
+	/**
+	 * Test that a query with an invalid session number is rejected.
+	 */
+	@Test(expected = InvalidSessionException.class)
+	public void testInvalidSession() {
+		new JourneyPlanner(new ShuttleTimetable()).earliestArrivals(v1, 0);
+	}
+
+}
@@ -0,0 +1,114 @@
+package festival.test;
+
+import org.junit.*;
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import festival.*;
+
+/**
+ * Basic tests for the {@link LineUpReader} and {@link LineUpWriter}
+ * implementation classes.
+ */
+public class LineUpReaderTest {
+
+	// the file read and written by the tests
+	private File file;
+
+	/**
+	 * Creates the file read and written by the tests.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("festival", ".txt");
+	}
+
+	/**
+	 * Deletes the file read and written by the tests.
+	 */
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * Test reading a line-up, including an act with spaces and an empty act.
+	 */
+	@Test
+	public void testRead() throws FormatException, IOException {
+		write("3 v2 The Kinks\n1 v1 \n2 v1 act_b\n");
+		LineUp lineUp = LineUpReader.read(file.getPath());
+		// the events in the order they are iterated over
+		List<Event> events = new ArrayList<>();
+		for (Event event : lineUp) {
+			events.add(event);
+		}
+		Assert.assertEquals(Arrays.asList(
+				new Event(new Venue("v2"), 3, "The Kinks"),
+				new Event(new Venue("v1"), 1, ""),
+				new Event(new Venue("v1"), 2, "act_b")), events);
+		Assert.assertTrue(lineUp.checkInvariant());
+	}
+
+	/**
+	 * Test that a written line-up is read back as the same line-up, and that
+	 * writing it again reproduces the file exactly.
+	 */
+	@Test
+	public void testRoundTrip() throws FormatException, IOException {
+		LineUp expected = new LineUp();
+		expected.addEvent(new Event(new Venue("v2"), 3, "act a"));
+		expected.addEvent(new Event(new Venue("v1"), 5, " act_b "));
+		expected.addEvent(new Event(new Venue("v1"), 1, "act_c"));
+		LineUpWriter.write(expected, file.getPath());
+		LineUp actual = LineUpReader.read(file.getPath());
+		Assert.assertEquals(expected.toString(), actual.toString());
+		byte[] written = Files.readAllBytes(file.toPath());
+		LineUpWriter.write(actual, file.getPath());
+		Assert.assertArrayEquals(written, Files.readAllBytes(file.toPath()));
+	}
+
+	/**
+	 * Test that malformed lines are reported with their line numbers.
+	 */
+	@Test
+	public void testFormatErrors() throws IOException {
+		String[] contents = { "1 v1 act_a\n1 v1\n", "0 v1 act_a\n",
+				"x v1 act_a\n", "1  act_a\n", "1 v1 act_a\n2 v1 b\n1 v1 c\n" };
+		FormatException.Kind[] kinds = { FormatException.Kind.EVENT,
+				FormatException.Kind.EVENT, FormatException.Kind.EVENT,
+				FormatException.Kind.VENUE_NAME, FormatException.Kind.CLASH };
+		int[] lines = { 2, 1, 1, 1, 3 };
+		for (int i = 0; i < contents.length; i++) {
+			write(contents[i]);
+			try {
+				LineUpReader.read(file.getPath());
+				Assert.fail("No error for '" + contents[i] + "'");
+			} catch (FormatException e) {
+				Assert.assertEquals(kinds[i], e.getKind());
+				Assert.assertEquals(lines[i], e.getLine());
+			}
+		}
+	}
+
+	/**
+	 * Test that an act with a line break cannot be written.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testActWithLineBreak() throws IOException {
+		LineUp lineUp = new LineUp();
+		lineUp.addEvent(new Event(new Venue("v1"), 1, "act\na"));
+		LineUpWriter.write(lineUp, new StringWriter());
+	}
+
+	// Helper methods
+
+	/**
+	 * Writes the given contents to the test file.
+	 */
+	private void write(String contents) throws IOException {
+		Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
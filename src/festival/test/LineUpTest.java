@@ -0,0 +1,233 @@
+package festival.test;
+
+import org.junit.*;
+import java.util.*;
+import java.util.function.*;
+import festival.*;
+import java.io.*;
+
+/**
+ * Basic tests for the {@link LineUp} implementation class.
+ */
+public class LineUpTest {
+
+	// Events for use in testing
+	private Event[] events = { new Event(new Venue("v2"), 3, "act_a"),
+			new Event(new Venue("v1"), 5, "act_b"),
+			new Event(new Venue("v1"), 1, "act_c"),
+			new Event(new Venue("v2"), 1, "act_d") };
+
+	/**
+	 * Test that events are retrieved by venue and by session in order.
+	 */
+	@Test
+	public void testGetEvents() {
+		LineUp lineUp = lineUp();
+		Assert.assertEquals(Arrays.asList(events[2], events[1]),
+				lineUp.getEvents(new Venue("v1")));
+		Assert.assertEquals(Arrays.asList(events[2], events[3]),
+				lineUp.getEvents(1));
+		Assert.assertEquals(Arrays.asList(events[1]),
+				lineUp.getEvents(new Venue("v1"), 2, 5));
+		Assert.assertEquals(1, lineUp.getFirstUsedSession());
+		Assert.assertEquals(5, lineUp.getLastUsedSession());
+		Assert.assertTrue(lineUp.checkInvariant());
+	}
+
+	/**
+	 * Test that a range of sessions at a venue includes the events at both of
+	 * its ends, and is empty for an unknown venue or a backwards range.
+	 */
+	@Test
+	public void testGetEventsInRange() {
+		LineUp lineUp = lineUp();
+		Assert.assertEquals(Arrays.asList(events[2], events[1]),
+				lineUp.getEvents(new Venue("v1"), 1, 5));
+		Assert.assertEquals(Arrays.asList(events[2]),
+				lineUp.getEvents(new Venue("v1"), 1, 4));
+		Assert.assertEquals(Arrays.asList(events[1]),
+				lineUp.getEvents(new Venue("v1"), 5, 100));
+		Assert.assertEquals(Arrays.asList(events[0]),
+				lineUp.getEvents(new Venue("v2"), 3, 3));
+		Assert.assertTrue(lineUp.getEvents(new Venue("v1"), 2, 4).isEmpty());
+		Assert.assertTrue(lineUp.getEvents(new Venue("v1"), 5, 1).isEmpty());
+		Assert.assertTrue(lineUp.getEvents(new Venue("v9"), 1, 5).isEmpty());
+		try {
+			lineUp.getEvents(new Venue("v1"), 0, 5);
+			Assert.fail("InvalidSessionException expected");
+		} catch (InvalidSessionException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Test that removing events through the iterator removes them from the
+	 * venue and session indexes too, and frees their slots.
+	 */
+	@Test
+	public void testIteratorRemove() {
+		LineUp lineUp = lineUp();
+		for (Iterator<Event> iterator = lineUp.iterator(); iterator
+				.hasNext();) {
+			if (iterator.next().getSession() != 3) {
+				iterator.remove();
+			}
+		}
+		Assert.assertTrue(lineUp.checkInvariant());
+		Assert.assertEquals(Arrays.asList(events[0]),
+				lineUp.getEvents(new Venue("v2")));
+		Assert.assertTrue(lineUp.getEvents(new Venue("v1")).isEmpty());
+		Assert.assertTrue(lineUp.getEvents(1).isEmpty());
+		Assert.assertEquals(3, lineUp.getFirstUsedSession());
+		Assert.assertEquals(3, lineUp.getLastUsedSession());
+		Assert.assertEquals(Collections.singleton(new Venue("v2")),
+				lineUp.getVenues());
+		// the freed slot can be taken by another event
+		lineUp.addEvent(new Event(new Venue("v1"), 5, "act_e"));
+		Assert.assertEquals(5, lineUp.getLastUsedSession());
+		Assert.assertTrue(lineUp.checkInvariant());
+	}
+
+	/**
+	 * Test that an event clashing with one already in the line-up is rejected.
+	 */
+	@Test(expected = InvalidLineUpException.class)
+	public void testClash() {
+		lineUp().addEvent(new Event(new Venue("v1"), 5, "act_e"));
+	}
+
+	/**
+	 * Test that removing events keeps the line-up consistent.
+	 */
+	@Test
+	public void testRemoveEvent() {
+		LineUp lineUp = lineUp();
+		// an event at an occupied slot, but with a different act
+		lineUp.removeEvent(new Event(new Venue("v1"), 5, "act_e"));
+		Assert.assertEquals(5, lineUp.getLastUsedSession());
+		lineUp.removeEvent(events[1]);
+		Assert.assertEquals(3, lineUp.getLastUsedSession());
+		Assert.assertEquals(Arrays.asList(events[2]),
+				lineUp.getEvents(new Venue("v1")));
+		Assert.assertTrue(lineUp.checkInvariant());
+	}
+
+	/**
+	 * Test that the string representation lists the events in their natural
+	 * ordering, and is the same as the output of writeTo.
+	 */
+	@Test
+	public void testToString() throws IOException {
+		LineUp lineUp = lineUp();
+		// the events in their natural ordering
+		List<Event> sorted = new ArrayList<>(Arrays.asList(events));
+		Collections.sort(sorted);
+		// the expected string representation
+		StringBuilder expected = new StringBuilder();
+		for (Event event : sorted) {
+			if (expected.length() > 0) {
+				expected.append(System.getProperty("line.separator"));
+			}
+			expected.append(event);
+		}
+		Assert.assertEquals(expected.toString(), lineUp.toString());
+		StringWriter writer = new StringWriter();
+		lineUp.writeTo(writer);
+		Assert.assertEquals(expected.toString(), writer.toString());
+	}
+
+	/**
+	 * Test that a batch of events is added as if one event at a time, and
+	 * iterated over in the order given.
+	 */
+	@Test
+	public void testAddEvents() {
+		LineUp lineUp = new LineUp();
+		lineUp.addEvents(Arrays.asList(events).subList(0, 2));
+		lineUp.addEvents(Arrays.asList(events).subList(2, 4));
+		Assert.assertEquals(lineUp().toString(), lineUp.toString());
+		Assert.assertEquals(Arrays.asList(events[2], events[3]),
+				lineUp.getEvents(1));
+		// the events in the order they are iterated over
+		List<Event> iterated = new ArrayList<>();
+		for (Event event : lineUp) {
+			iterated.add(event);
+		}
+		Assert.assertEquals(Arrays.asList(events), iterated);
+		Assert.assertTrue(lineUp.checkInvariant());
+	}
+
+	/**
+	 * Test that a batch of events that clash with each other, or with an
+	 * event already in the line-up, is rejected without changing the line-up.
+	 */
+	@Test
+	public void testAddEventsClash() {
+		LineUp lineUp = lineUp();
+		for (Event event : new Event[] {
+				new Event(new Venue("v3"), 2, "act_e"),
+				new Event(new Venue("v2"), 3, "act_e") }) {
+			try {
+				lineUp.addEvents(Arrays.asList(
+						new Event(new Venue("v3"), 2, "act_f"), event));
+				Assert.fail("Clashing events were added");
+			} catch (InvalidLineUpException e) {
+				// expected
+			}
+			Assert.assertEquals(lineUp().toString(), lineUp.toString());
+			Assert.assertTrue(lineUp.getEvents(new Venue("v3")).isEmpty());
+			Assert.assertTrue(lineUp.checkInvariant());
+		}
+	}
+
+	/**
+	 * Test that visiting events by venue, by range of sessions and by session
+	 * visits the same events, in the same order, as getEvents returns.
+	 */
+	@Test
+	public void testForEachEvent() {
+		LineUp lineUp = lineUp();
+		// the events visited, in the order visited
+		final List<Event> visited = new ArrayList<>();
+		// the action adding each event to those visited
+		Consumer<Event> action = new Consumer<Event>() {
+			@Override
+			public void accept(Event event) {
+				visited.add(event);
+			}
+		};
+		for (Venue venue : new Venue[] { new Venue("v1"), new Venue("v2"),
+				new Venue("v3") }) {
+			visited.clear();
+			lineUp.forEachEvent(venue, action);
+			Assert.assertEquals(lineUp.getEvents(venue), visited);
+			for (int from = 1; from <= 6; from++) {
+				for (int to = 1; to <= 6; to++) {
+					visited.clear();
+					lineUp.forEachEvent(venue, from, to, action);
+					Assert.assertEquals(lineUp.getEvents(venue, from, to),
+							visited);
+				}
+			}
+		}
+		for (int session = 1; session <= 6; session++) {
+			visited.clear();
+			lineUp.forEachEvent(session, action);
+			Assert.assertEquals(lineUp.getEvents(session), visited);
+		}
+	}
+
+	// Helper methods
+
+	/**
+	 * Returns a new line-up of the test events.
+	 */
+	private LineUp lineUp() {
+		LineUp lineUp = new LineUp();
+		for (Event event : events) {
+			lineUp.addEvent(event);
+		}
+		return lineUp;
+	}
+
+}
@@ -0,0 +1,50 @@
+package festival.test;
+
+import org.junit.*;
+import java.util.*;
+import festival.*;
+
+/**
+ * Basic tests for the {@link QueryCache} implementation class.
+ */
+public class QueryCacheTest {
+
+	// Venues for use in testing
+	private Venue v1 = new Venue("v1");
+	private Venue v2 = new Venue("v2");
+	private Venue v3 = new Venue("v3");
+
+	/**
+	 * Test that cached answers are discarded when the timetable changes.
+	 */
+	@Test
+	public void testInvalidatedByChanges() {
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		timetable.addService(new Service(v1, v2, 1));
+		QueryCache cache = new QueryCache(timetable, 4);
+		Assert.assertEquals(new HashSet<Venue>(Arrays.asList(v2)),
+				cache.getDestinations(v1, 1));
+		Assert.assertTrue(cache.canReach(v1, 1, v2, 2));
+		Assert.assertFalse(cache.canReach(v1, 1, v3, 3));
+
+		// the version of the timetable before changing it
+		long version = timetable.getVersion();
+		timetable.addService(new Service(v2, v3, 2));
+		timetable.addService(new Service(v1, v3, 1));
+		Assert.assertEquals(version + 2, timetable.getVersion());
+		Assert.assertEquals(new HashSet<Venue>(Arrays.asList(v2, v3)),
+				cache.getDestinations(v1, 1));
+		Assert.assertTrue(cache.canReach(v1, 1, v3, 3));
+
+		timetable.removeService(new Service(v2, v3, 2));
+		timetable.removeService(new Service(v1, v3, 1));
+		Assert.assertFalse(cache.canReach(v1, 1, v3, 3));
+
+		// adding a service already in the timetable is not a change
+		version = timetable.getVersion();
+		timetable.addService(new Service(v1, v2, 1));
+		Assert.assertEquals(version, timetable.getVersion());
+		Assert.assertTrue(cache.checkInvariant());
+	}
+
+}
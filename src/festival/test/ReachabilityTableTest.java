@@ -0,0 +1,137 @@
+package festival.test;
+
+import org.junit.*;
+import festival.*;
+
+/**
+ * Basic tests for the {@link ReachabilityTable} implementation class.
+ */
+public class ReachabilityTableTest {
+
+	/**
+	 * Returns a timetable with a chain of services v0 to v1 after session 1,
+	 * v1 to v2 after session 2, and so on up to v16 to v17 after session 17,
+	 * so that getting from vi to vj takes every session from i + 1 to j.
+	 */
+	private static ShuttleTimetable chain() {
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		for (int i = 0; i < 17; i++) {
+			timetable.addService(new Service(new Venue("v" + i), new Venue("v"
+					+ (i + 1)), i + 1));
+		}
+		return timetable;
+	}
+
+	/**
+	 * Test that spans of sessions that start and end inside different aligned
+	 * blocks, of lengths 1 and 2^k - 1, 2^k and 2^k + 1, are answered
+	 * correctly.
+	 */
+	@Test
+	public void testBlockBoundaries() {
+		ReachabilityTable table = new ReachabilityTable(chain());
+		Assert.assertTrue(table.checkInvariant());
+		for (int length : new int[] { 1, 2, 3, 4, 5, 7, 8, 9, 15, 16, 17 }) {
+			for (int from = 0; from + length <= 17; from++) {
+				// the venue reached by the chain after the span
+				Venue to = new Venue("v" + (from + length));
+				// the session spent at the starting venue
+				int after = from + 1;
+				Assert.assertTrue(table.canReach(new Venue("v" + from), after,
+						to, after + length));
+				Assert.assertFalse(table.canReach(new Venue("v" + from),
+						after, to, after + length - 1));
+				// starting one session late misses the first service
+				Assert.assertFalse(table.canReach(new Venue("v" + from),
+						after + 1, to, after + length + 1));
+			}
+		}
+	}
+
+	/**
+	 * Test that a query with the same session at both ends only succeeds at
+	 * the starting venue, and that a later session than the last one of the
+	 * timetable is allowed.
+	 */
+	@Test
+	public void testSessionLimits() {
+		ReachabilityTable table = new ReachabilityTable(chain());
+		for (int session = 1; session <= 18; session++) {
+			Assert.assertTrue(table.canReach(new Venue("v3"), session,
+					new Venue("v3"), session));
+			Assert.assertFalse(table.canReach(new Venue("v3"), session,
+					new Venue("v4"), session));
+		}
+		Assert.assertTrue(table.canReach(new Venue("v0"), 1, new Venue("v17"),
+				18));
+		Assert.assertTrue(table.canReach(new Venue("v0"), 1, new Venue("v17"),
+				1000));
+		Assert.assertTrue(table.canReach(new Venue("v16"), 17,
+				new Venue("v17"), 40));
+		Assert.assertFalse(table.canReach(new Venue("v16"), 18,
+				new Venue("v17"), 40));
+		Assert.assertFalse(table.canReach(new Venue("v5"), 40,
+				new Venue("v6"), 50));
+		Assert.assertFalse(table.canReach(new Venue("v5"), 6,
+				new Venue("v6"), 5));
+	}
+
+	/**
+	 * Test that venues that the timetable does not know can only be reached
+	 * from themselves.
+	 */
+	@Test
+	public void testUnknownVenues() {
+		ReachabilityTable table = new ReachabilityTable(chain());
+		Assert.assertFalse(table.canReach(new Venue("v0"), 1, new Venue("x"),
+				18));
+		Assert.assertFalse(table.canReach(new Venue("x"), 1, new Venue("v17"),
+				18));
+		Assert.assertTrue(table.canReach(new Venue("x"), 1, new Venue("x"),
+				18));
+		// a venue the registry knows, but that has no services
+		table.getRegistry().intern("y");
+		Assert.assertFalse(table.canReach(new Venue("v0"), 1, new Venue("y"),
+				18));
+		Assert.assertFalse(table.canReach(new Venue("y"), 1, new Venue("v17"),
+				18));
+
+		ReachabilityTable empty = new ReachabilityTable(new ShuttleTimetable());
+		Assert.assertTrue(empty.checkInvariant());
+		Assert.assertFalse(empty.canReach(new Venue("v0"), 1, new Venue("v1"),
+				5));
+	}
+
+	/**
+	 * Test that the table gives the same answers as a Reachability engine,
+	 * which sweeps over every session, for every query about a generated
+	 * festival.
+	 */
+	@Test
+	public void testSameAsReachability() {
+		for (int sessions : new int[] { 1, 16, 37 }) {
+			FestivalGenerator generator = new FestivalGenerator(sessions, 12,
+					sessions);
+			generator.setFanOut(0.2, FestivalGenerator.Distribution.POISSON);
+			ShuttleTimetable timetable = generator.generateTimetable();
+			ReachabilityTable table = new ReachabilityTable(timetable);
+			Reachability reachability = new Reachability(timetable);
+			Assert.assertTrue(table.checkInvariant());
+			for (int from = 0; from < 12; from++) {
+				for (int to = 0; to < 12; to++) {
+					for (int after = 1; after <= sessions + 2; after++) {
+						for (int by = after; by <= sessions + 3; by++) {
+							Assert.assertEquals(reachability.canReach(
+									generator.getVenue(from), after,
+									generator.getVenue(to), by), table
+									.canReach(generator.getVenue(from),
+											after, generator.getVenue(to),
+											by));
+						}
+					}
+				}
+			}
+		}
+	}
+
+}
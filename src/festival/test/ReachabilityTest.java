@@ -0,0 +1,135 @@
+package festival.test;
+
+import org.junit.*;
+import java.util.*;
+import festival.*;
+
+/**
+ * Basic tests for the {@link Reachability} implementation class.
+ */
+public class ReachabilityTest {
+
+	// Services for use in testing
+	private Service[] services = {
+			new Service(new Venue("v1"), new Venue("v2"), 1),
+			new Service(new Venue("v2"), new Venue("v3"), 2),
+			new Service(new Venue("v4"), new Venue("v3"), 2),
+			new Service(new Venue("v4"), new Venue("v1"), 1) };
+
+	/**
+	 * Test that the origins of an event are the venues from which its venue
+	 * can be reached in time, session by session.
+	 */
+	@Test
+	public void testGetOrigins() {
+		Reachability reachability = new Reachability(timetable());
+		Assert.assertTrue(reachability.checkInvariant());
+		BitSet[] origins = reachability.getOrigins(new Event(new Venue("v3"),
+				3, "act_a"));
+		Assert.assertEquals(3, origins.length);
+		Assert.assertEquals(ids(reachability, "v3"), origins[2]);
+		Assert.assertEquals(ids(reachability, "v3", "v2", "v4"), origins[1]);
+		Assert.assertEquals(ids(reachability, "v3", "v2", "v4", "v1"),
+				origins[0]);
+
+		origins = reachability.getOrigins(new Event(new Venue("v1"), 1,
+				"act_b"));
+		Assert.assertEquals(1, origins.length);
+		Assert.assertEquals(ids(reachability, "v1"), origins[0]);
+	}
+
+	/**
+	 * Test that the venue of an event is an origin of it in every session if
+	 * no services arrive there, and that no set holds any venue if the
+	 * registry has never seen it, without the query registering it.
+	 */
+	@Test
+	public void testGetOriginsUnknownVenue() {
+		Reachability reachability = new Reachability(timetable());
+		// a venue the registry knows, but that has no services
+		reachability.getRegistry().intern("v5");
+		BitSet[] origins = reachability.getOrigins(new Event(new Venue("v5"),
+				4, "act_c"));
+		Assert.assertEquals(4, origins.length);
+		for (BitSet origin : origins) {
+			Assert.assertEquals(ids(reachability, "v5"), origin);
+		}
+		// the size of the registry before querying a venue it has not seen
+		int size = reachability.getRegistry().size();
+		origins = reachability.getOrigins(new Event(new Venue("v6"), 4,
+				"act_c"));
+		Assert.assertEquals(4, origins.length);
+		for (BitSet origin : origins) {
+			Assert.assertTrue(origin.isEmpty());
+		}
+		Assert.assertEquals(size, reachability.getRegistry().size());
+		Assert.assertEquals(-1, reachability.getRegistry().getId(
+				new Venue("v6")));
+		Assert.assertTrue(reachability.checkInvariant());
+
+		reachability = new Reachability(new ShuttleTimetable());
+		origins = reachability.getOrigins(new Event(new Venue("v1"), 2,
+				"act_d"));
+		Assert.assertEquals(2, origins.length);
+		Assert.assertTrue(origins[0].isEmpty());
+		Assert.assertTrue(origins[1].isEmpty());
+	}
+
+	/**
+	 * Test that the backward sweep finds exactly the venues and sessions from
+	 * which a forward search reaches each event of a generated festival.
+	 */
+	@Test
+	public void testGetOriginsSameAsCanReach() {
+		FestivalGenerator generator = new FestivalGenerator(13, 15, 12);
+		generator.setFanOut(0.3, FestivalGenerator.Distribution.POISSON);
+		Reachability reachability =
+				new Reachability(generator.generateTimetable());
+		for (int to = 0; to < 15; to++) {
+			for (int toSession = 1; toSession <= 14; toSession++) {
+				// the venue of the event
+				Venue target = generator.getVenue(to);
+				BitSet[] origins = reachability.getOrigins(new Event(target,
+						toSession, "act"));
+				for (int from = 0; from < 15; from++) {
+					// the venue to start from
+					Venue venue = generator.getVenue(from);
+					// the id of the venue to start from
+					int id = reachability.getRegistry().getId(venue);
+					for (int session = 1; session <= toSession; session++) {
+						Assert.assertEquals(reachability.canReach(venue,
+								session, target, toSession), id >= 0
+								&& origins[session - 1].get(id));
+					}
+				}
+			}
+		}
+	}
+
+	// Helper methods
+
+	/**
+	 * Returns a timetable holding the services for use in testing.
+	 */
+	private ShuttleTimetable timetable() {
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		for (Service service : services) {
+			timetable.addService(service);
+		}
+		return timetable;
+	}
+
+	/**
+	 * Returns the set of ids of the venues with the given names in the
+	 * registry of the given engine.
+	 */
+	private static BitSet ids(Reachability reachability, String... names) {
+		// the set of ids under construction
+		BitSet ids = new BitSet();
+		for (String name : names) {
+			ids.set(reachability.getRegistry().getId(new Venue(name)));
+		}
+		return ids;
+	}
+
+}
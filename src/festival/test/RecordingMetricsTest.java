@@ -0,0 +1,163 @@
+package festival.test;
+
+import org.junit.*;
+import java.io.*;
+import java.lang.management.*;
+import java.nio.file.*;
+import java.util.*;
+import javax.management.*;
+import festival.*;
+
+/**
+ * Basic tests for the {@link RecordingMetrics} implementation class, and the
+ * measurements reported to it by the instrumented classes.
+ */
+public class RecordingMetricsTest {
+
+	// the file read by the tests
+	private File file;
+	// the metrics installed for the tests
+	private RecordingMetrics metrics;
+
+	/**
+	 * Creates the file read by the tests, and enables instrumentation.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("festival", ".txt");
+		metrics = Instrumentation.enable();
+	}
+
+	/**
+	 * Deletes the file read by the tests, and disables instrumentation.
+	 */
+	@After
+	public void tearDown() {
+		Instrumentation.disable();
+		file.delete();
+	}
+
+	/**
+	 * Test that the readers count the bytes and lines of the files they read,
+	 * and count format errors by kind.
+	 */
+	@Test
+	public void testReaderMetrics() throws Exception {
+		FestivalGenerator generator = new FestivalGenerator(7, 20, 4);
+		generator.writeTimetable(file.getPath());
+		// the number of lines in the file: the header, a name and 4 session
+		// lines for each venue, and an empty line between venues
+		long lines = Files.readAllLines(file.toPath()).size();
+		Assert.assertEquals(1 + 20 * (1 + 4) + 19, lines);
+		ScheduleReader.read(file.getPath());
+		Assert.assertEquals(lines, metrics.getCounter("reader.lines"));
+		ScheduleReader.readMapped(file.getPath());
+		Assert.assertEquals(2 * lines, metrics.getCounter("reader.lines"));
+		ScheduleReader.readParallel(file.getPath());
+		Assert.assertEquals(3 * lines, metrics.getCounter("reader.lines"));
+		Assert.assertEquals(3, metrics.getCounter("reader.files"));
+		Assert.assertEquals(3 * file.length(),
+				metrics.getCounter("reader.bytes"));
+		Assert.assertEquals(3, metrics.getLatencyCount("reader.time"));
+		Assert.assertTrue(metrics.getRates().containsKey("reader.bytes/s"));
+
+		generator.writeInvalidTimetable(file.getPath(),
+				FestivalGenerator.Defect.SELF_SERVICE);
+		try {
+			ScheduleReader.read(file.getPath());
+			Assert.fail("FormatException expected");
+		} catch (FormatException e) {
+			Assert.assertEquals(FormatException.Kind.SELF_SERVICE,
+					e.getKind());
+		}
+		try {
+			ScheduleReader.readParallel(file.getPath());
+			Assert.fail("FormatException expected");
+		} catch (FormatException e) {
+			Assert.assertEquals(FormatException.Kind.SELF_SERVICE,
+					e.getKind());
+		}
+		Assert.assertEquals(2,
+				metrics.getCounter("reader.errors.SELF_SERVICE"));
+		Assert.assertEquals(3, metrics.getCounter("reader.files"));
+	}
+
+	/**
+	 * Test the gauges and latencies reported by timetables, line-ups,
+	 * day-planners and query caches.
+	 */
+	@Test
+	public void testModelMetrics() {
+		Venue v1 = new Venue("v1");
+		Venue v2 = new Venue("v2");
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		timetable.addService(new Service(v1, v2, 1));
+		timetable.addService(new Service(v2, v1, 1));
+		Assert.assertEquals(2, metrics.getGauge("timetable.size"));
+		Assert.assertEquals(timetable.estimateIndexMemory(),
+				metrics.getGauge("timetable.index.bytes"));
+		timetable.getDestinations(v1, 1);
+		Assert.assertEquals(1, metrics.getLatencyCount("timetable.lookup"));
+
+		LineUp lineUp = new LineUp();
+		Event e1 = new Event(v1, 1, "act1");
+		Event e2 = new Event(v2, 2, "act2");
+		lineUp.addEvent(e1);
+		lineUp.addEvent(e2);
+		try {
+			lineUp.addEvent(new Event(v1, 1, "act3"));
+			Assert.fail("InvalidLineUpException expected");
+		} catch (InvalidLineUpException e) {
+			// expected
+		}
+		Assert.assertEquals(2, metrics.getGauge("lineup.events"));
+		Assert.assertEquals(1, metrics.getCounter("lineup.clashes"));
+		// the iterator over the line-up, used to remove its first event
+		Iterator<Event> iterator = lineUp.iterator();
+		iterator.next();
+		iterator.remove();
+		Assert.assertEquals(1, metrics.getGauge("lineup.events"));
+		lineUp.addEvent(e1);
+		Assert.assertEquals(2, metrics.getGauge("lineup.events"));
+
+		DayPlanner planner = new DayPlanner(timetable);
+		Assert.assertTrue(planner.compatible(Arrays.asList(e1, e2)));
+		planner.compatibleAll(Arrays.asList(Arrays.asList(e1, e2),
+				Arrays.asList(e2)));
+		Assert.assertEquals(3, metrics.getCounter("planner.plans"));
+		Assert.assertEquals(3, metrics.getLatencyCount("planner.check"));
+		Assert.assertTrue(metrics.getLatencyPercentile("planner.check", 99)
+				<= metrics.getLatencies().get("planner.check.max"));
+
+		QueryCache cache = new QueryCache(timetable, 10);
+		cache.canReach(v1, 1, v2, 2);
+		cache.canReach(v1, 1, v2, 2);
+		Assert.assertEquals(0.5, metrics.getCacheHitRatio(), 1e-9);
+		Assert.assertTrue(metrics.checkInvariant());
+
+		metrics.reset();
+		Assert.assertTrue(metrics.getCounters().isEmpty());
+	}
+
+	/**
+	 * Test that the enabled metrics are registered as an MBean, and that
+	 * nothing is recorded once instrumentation is disabled.
+	 */
+	@Test
+	public void testEnableAndDisable() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("festival:type=Metrics");
+		Assert.assertTrue(server.isRegistered(name));
+		metrics.count("test", 5);
+		RecordingMetricsMXBean proxy = JMX.newMXBeanProxy(server, name,
+				RecordingMetricsMXBean.class);
+		Assert.assertEquals(Long.valueOf(5), proxy.getCounters().get("test"));
+
+		Instrumentation.disable();
+		Assert.assertFalse(server.isRegistered(name));
+		Assert.assertSame(Metrics.NONE, Instrumentation.get());
+		new LineUp().addEvent(new Event(new Venue("v1"), 1, "act1"));
+		Assert.assertEquals(0, metrics.getGauge("lineup.events"));
+	}
+
+}
@@ -3,6 +3,8 @@ package festival.test;
 import org.junit.*;
 import festival.*;
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Basic tests for the {@link ScheduleReader} implementation class.
@@ -121,8 +123,481 @@ public class ScheduleReaderTest {
 		ScheduleReader.read("read_08_incorrectlyFormatted.txt");
 	}
 
+	/**
+	 * Test that reading a timetable by memory-mapping the file gives the same
+	 * timetable as reading it line by line.
+	 */
+	@Test
+	public void testMappedReadMatchesRead() throws FormatException,
+			IOException {
+		for (String fileName : new String[] { "read_01_correctlyFormatted.txt",
+				"read_02_correctlyFormatted.txt",
+				"read_03_correctlyFormatted.txt", "timetable_01.txt" }) {
+			checkTimetables(ScheduleReader.read(fileName),
+					ScheduleReader.readMapped(fileName));
+			checkTimetables(ScheduleReader.read(fileName),
+					ScheduleReader.readParallel(fileName));
+		}
+	}
+
+	/**
+	 * Test that reading an incorrectly formatted timetable in parallel reports
+	 * the same error as reading it line by line.
+	 */
+	@Test
+	public void testParallelReadReportsFirstError() throws IOException {
+		for (int i = 4; i <= 8; i++) {
+			// the name of the incorrectly formatted file
+			String fileName = "read_0" + i + "_incorrectlyFormatted.txt";
+			// the messages of the errors reported by each method
+			String expected = null;
+			String actual = null;
+			try {
+				ScheduleReader.read(fileName);
+			} catch (FormatException e) {
+				expected = e.getMessage();
+			}
+			try {
+				ScheduleReader.readParallel(fileName);
+			} catch (FormatException e) {
+				actual = e.getMessage();
+			}
+			Assert.assertNotNull(expected);
+			Assert.assertEquals(expected, actual);
+		}
+	}
+
+	/**
+	 * Test that reading a file split into many small pieces gives the same
+	 * timetable as reading it line by line, and reports the same error when
+	 * the only error is in a later piece, when there are errors in several
+	 * pieces, and when a venue is described again in a later piece.
+	 */
+	@Test
+	public void testParallelReadSplitIntoPieces() throws FormatException,
+			IOException {
+		File file = File.createTempFile("festival", ".txt");
+		// a pool splitting each file into 16 pieces of two or three venues
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			// the lines of the file being read
+			List<String> lines = festival(40);
+			write(file, lines);
+			checkTimetables(ScheduleReader.read(file.getPath()),
+					ScheduleReader.readParallel(file.getPath(),
+							new VenueRegistry(), pool, 0));
+
+			// a service to itself from venue 35, near the end of the file
+			lines.set(2 + 4 * 35, "1 v35");
+			write(file, lines);
+			checkParallelError(file, pool, FormatException.Kind.SELF_SERVICE,
+					3 + 4 * 35);
+
+			// a wrong session number for venue 5, near the start of the file
+			lines.set(3 + 4 * 5, "3 v7");
+			write(file, lines);
+			checkParallelError(file, pool,
+					FormatException.Kind.SESSION_NUMBER, 4 + 4 * 5);
+
+			// venue 2 described again in place of venue 33
+			lines = festival(40);
+			lines.set(1 + 4 * 33, "v2");
+			write(file, lines);
+			checkParallelError(file, pool,
+					FormatException.Kind.DUPLICATE_VENUE, 2 + 4 * 33);
+
+			// an earlier error in another piece than the second description
+			lines.set(2 + 4 * 20, "1 v20");
+			write(file, lines);
+			checkParallelError(file, pool, FormatException.Kind.SELF_SERVICE,
+					3 + 4 * 20);
+
+			// a later error in another piece than the second description
+			lines = festival(40);
+			lines.set(1 + 4 * 33, "v2");
+			lines.set(2 + 4 * 38, "1 v38");
+			write(file, lines);
+			checkParallelError(file, pool,
+					FormatException.Kind.DUPLICATE_VENUE, 2 + 4 * 33);
+		} finally {
+			pool.shutdown();
+			file.delete();
+		}
+	}
+
+	/**
+	 * Test that reading an incorrectly formatted timetable by memory-mapping
+	 * the file throws a FormatException.
+	 */
+	@Test(expected = FormatException.class)
+	public void testMappedReadIncorrectlyFormatted() throws FormatException,
+			IOException {
+		ScheduleReader.readMapped("read_07_incorrectlyFormatted.txt");
+	}
+
+	/**
+	 * Test that the venues of a timetable read with a registry are the
+	 * registry's canonical venues.
+	 */
+	@Test
+	public void testReadWithRegistry() throws FormatException, IOException {
+		VenueRegistry registry = new VenueRegistry();
+		ShuttleTimetable timetable =
+				ScheduleReader.readMapped("read_01_correctlyFormatted.txt",
+						registry);
+		Assert.assertEquals(4, registry.size());
+		for (Service service : timetable) {
+			Assert.assertSame(registry.intern(service.getSource().getName()),
+					service.getSource());
+			Assert.assertSame(
+					registry.intern(service.getDestination().getName()),
+					service.getDestination());
+		}
+	}
+
+	/**
+	 * Test that parsing a timetable with a handler passes it each service of
+	 * the timetable, inside the description of its source venue.
+	 */
+	@Test
+	public void testParseWithHandler() throws FormatException, IOException {
+		final ShuttleTimetable parsed = new ShuttleTimetable();
+		final List<String> events = new ArrayList<>();
+		ScheduleReader.parse("read_01_correctlyFormatted.txt",
+				new ScheduleHandler() {
+					@Override
+					public void startTimetable(int sessions) {
+						events.add("sessions " + sessions);
+					}
+
+					@Override
+					public void startVenue(Venue source) {
+						events.add("start " + source);
+					}
+
+					@Override
+					public void service(Service service) {
+						Assert.assertEquals(events.get(events.size() - 1),
+								"start " + service.getSource());
+						parsed.addService(service);
+					}
+
+					@Override
+					public void endVenue(Venue source) {
+						events.add("end " + source);
+					}
+
+					@Override
+					public void endTimetable() {
+						events.add("end");
+					}
+				});
+		checkTimetables(ScheduleReader.read("read_01_correctlyFormatted.txt"),
+				parsed);
+		Assert.assertEquals("end", events.get(events.size() - 1));
+		Assert.assertEquals(0, events.size() % 2);
+	}
+
+	/**
+	 * Test that parsing leniently finds no errors in correctly formatted
+	 * timetables, and reports the error found by read first for incorrectly
+	 * formatted ones, with its line and column.
+	 */
+	@Test
+	public void testParseLenient() throws IOException {
+		for (int i = 1; i <= 8; i++) {
+			// the name of the file
+			String fileName = "read_0" + i + "_"
+					+ (i <= 3 ? "correctlyFormatted.txt"
+							: "incorrectlyFormatted.txt");
+			// the error reported by read, if any
+			FormatException expected = null;
+			try {
+				ScheduleReader.read(fileName);
+			} catch (FormatException e) {
+				expected = e;
+			}
+			List<FormatException> errors = ScheduleReader.parseLenient(
+					fileName, new IgnoringHandler());
+			if (expected == null) {
+				Assert.assertTrue(errors.isEmpty());
+			} else {
+				Assert.assertFalse(errors.isEmpty());
+				Assert.assertEquals(expected.getMessage(), errors.get(0)
+						.getMessage());
+				Assert.assertEquals(expected.getKind(), errors.get(0)
+						.getKind());
+				Assert.assertEquals(expected.getLine(), errors.get(0)
+						.getLine());
+				Assert.assertTrue(errors.get(0).getColumn() > 0);
+			}
+		}
+	}
+
+	/**
+	 * Test that parsing leniently carries on past each error of a file with
+	 * many of them, reporting every error in file order with its line and
+	 * column, and passing on only the services of valid lines in valid
+	 * descriptions.
+	 */
+	@Test
+	public void testParseLenientRecovery() throws IOException {
+		// the calls made to the handler, in order
+		final List<String> calls = new ArrayList<>();
+		List<FormatException> errors = ScheduleReader.parseLenient(
+				"read_09_incorrectlyFormatted.txt", new ScheduleHandler() {
+					@Override
+					public void startTimetable(int sessions) {
+						calls.add("sessions " + sessions);
+					}
+
+					@Override
+					public void startVenue(Venue source) {
+						calls.add("start " + source);
+					}
+
+					@Override
+					public void service(Service service) {
+						calls.add(service.getSource() + " "
+								+ service.getSession() + " "
+								+ service.getDestination());
+					}
+
+					@Override
+					public void endVenue(Venue source) {
+						calls.add("end " + source);
+					}
+
+					@Override
+					public void endTimetable() {
+						calls.add("end");
+					}
+				});
+		// the kind, line and column of each error found, in file order
+		List<String> found = new ArrayList<>();
+		for (FormatException error : errors) {
+			found.add(error.getKind() + " " + error.getLine() + ":"
+					+ error.getColumn());
+		}
+		Assert.assertEquals(Arrays.asList(
+				// the header is invalid, so the session count is inferred
+				"HEADER 1:1",
+				// the bad tokens, between the valid services of their lines
+				"SELF_SERVICE 7:6", "DUPLICATE_SERVICE 8:9",
+				// a second empty line between descriptions
+				"EMPTY_LINE 10:1",
+				// a venue name given back to start the next description
+				"SESSION_NUMBER 12:1",
+				// a session line with the wrong number, which is skipped
+				"SESSION_NUMBER 14:1",
+				// a venue name given back after a whole description
+				"MISSING_EMPTY_LINE 15:1",
+				// a description ended early by an empty line
+				"SESSION_NUMBER 17:1",
+				"DUPLICATE_VENUE 18:1", "VENUE_NAME 22:5",
+				"MISSING_SESSION 28:1"), found);
+		Assert.assertEquals(Arrays.asList("sessions 2",
+				"start v1", "v1 1 v2", "v1 1 v3", "v1 2 v3", "end v1",
+				"start v2", "end v2",
+				"start v3", "end v3",
+				"start v4", "v4 1 v1", "end v4",
+				"start v5", "v5 1 v1", "end v5",
+				"start v6", "v6 1 v1", "end v6", "end"), calls);
+
+		try {
+			ScheduleReader.read("read_09_incorrectlyFormatted.txt");
+			Assert.fail("FormatException expected");
+		} catch (FormatException e) {
+			Assert.assertEquals(errors.get(0).getMessage(), e.getMessage());
+		}
+	}
+
+	/**
+	 * Test that each way of reading a file accepts the line terminators
+	 * accepted by BufferedReader.readLine ("\n", "\r\n" and a bare "\r"),
+	 * and reports errors on the same line whichever terminator is used.
+	 */
+	@Test
+	public void testLineTerminators() throws FormatException, IOException {
+		// the file written with each line terminator
+		File file = File.createTempFile("festival", ".txt");
+		try {
+			for (String terminator : new String[] { "\n", "\r\n", "\r" }) {
+				for (String fileName : new String[] {
+						"read_01_correctlyFormatted.txt", "timetable_01.txt" }) {
+					copy(fileName, file, terminator);
+					// the timetable read from the original file
+					ShuttleTimetable expected = ScheduleReader.read(fileName);
+					checkTimetables(expected, ScheduleReader.read(file
+							.getPath()));
+					checkTimetables(expected, ScheduleReader.readMapped(file
+							.getPath()));
+					checkTimetables(expected, ScheduleReader.readParallel(file
+							.getPath()));
+				}
+				for (int i = 4; i <= 8; i++) {
+					// the name of the incorrectly formatted file
+					String fileName = "read_0" + i
+							+ "_incorrectlyFormatted.txt";
+					copy(fileName, file, terminator);
+					// the messages of the errors reported by each method
+					String expected = null;
+					String mapped = null;
+					String parallel = null;
+					try {
+						ScheduleReader.read(fileName);
+					} catch (FormatException e) {
+						expected = e.getMessage();
+					}
+					try {
+						ScheduleReader.readMapped(file.getPath());
+					} catch (FormatException e) {
+						mapped = e.getMessage();
+					}
+					try {
+						ScheduleReader.readParallel(file.getPath());
+					} catch (FormatException e) {
+						parallel = e.getMessage();
+					}
+					Assert.assertNotNull(expected);
+					Assert.assertEquals(expected, mapped);
+					Assert.assertEquals(expected, parallel);
+				}
+			}
+
+			// a file large enough to be split into pieces, with bare "\r"s
+			FestivalGenerator generator = new FestivalGenerator(3, 1000, 100);
+			generator.setFanOut(4, FestivalGenerator.Distribution.CONSTANT);
+			generator.writeTimetable(file.getPath());
+			// the timetable read from the generated file
+			ShuttleTimetable expected = ScheduleReader.read(file.getPath());
+			copy(file.getPath(), file, "\r");
+			Assert.assertTrue(file.length() > 1 << 20);
+			checkTimetables(expected, ScheduleReader.readParallel(file
+					.getPath()));
+		} finally {
+			file.delete();
+		}
+	}
+
 	// Helper methods
 
+	/**
+	 * Writes the lines of the file called fileName to the given file, ending
+	 * each of them with the given line terminator.
+	 */
+	private static void copy(String fileName, File file, String terminator)
+			throws IOException {
+		// the lines of the file
+		List<String> lines = new ArrayList<>();
+		try (BufferedReader reader =
+				new BufferedReader(new FileReader(fileName))) {
+			// the line most recently read
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		}
+		try (Writer writer = new FileWriter(file)) {
+			for (String line : lines) {
+				writer.write(line);
+				writer.write(terminator);
+			}
+		}
+	}
+
+	/**
+	 * Returns the lines of a valid timetable file with two sessions and the
+	 * given number of venues, in which venue i (named "v" followed by i) has
+	 * a service to venue i + 1 after session 1, and to venue i + 2 after
+	 * session 2. The name of venue i is at index 1 + 4 * i, followed by its
+	 * two session lines.
+	 */
+	private static List<String> festival(int venues) {
+		// the lines under construction
+		List<String> lines = new ArrayList<>();
+		lines.add("2");
+		for (int i = 0; i < venues; i++) {
+			if (i > 0) {
+				lines.add("");
+			}
+			lines.add("v" + i);
+			lines.add("1 v" + (i + 1) % venues);
+			lines.add("2 v" + (i + 2) % venues);
+		}
+		return lines;
+	}
+
+	/**
+	 * Writes the given lines to the given file, each ending with "\n".
+	 */
+	private static void write(File file, List<String> lines)
+			throws IOException {
+		try (Writer writer = new FileWriter(file)) {
+			for (String line : lines) {
+				writer.write(line);
+				writer.write("\n");
+			}
+		}
+	}
+
+	/**
+	 * Checks that reading the given file line by line, and reading it in
+	 * parallel on the given pool with every file split into pieces, both
+	 * report an error of the given kind on the given line, with the same
+	 * message.
+	 */
+	private static void checkParallelError(File file, ForkJoinPool pool,
+			FormatException.Kind kind, int line) throws IOException {
+		// the errors reported by each method
+		FormatException expected = null;
+		FormatException actual = null;
+		try {
+			ScheduleReader.read(file.getPath());
+		} catch (FormatException e) {
+			expected = e;
+		}
+		try {
+			ScheduleReader.readParallel(file.getPath(), new VenueRegistry(),
+					pool, 0);
+		} catch (FormatException e) {
+			actual = e;
+		}
+		Assert.assertNotNull(expected);
+		Assert.assertNotNull(actual);
+		Assert.assertEquals(kind, expected.getKind());
+		Assert.assertEquals(line, expected.getLine());
+		Assert.assertEquals(kind, actual.getKind());
+		Assert.assertEquals(line, actual.getLine());
+		Assert.assertEquals(expected.getMessage(), actual.getMessage());
+	}
+
+	/**
+	 * A handler that ignores the contents of the files it is given.
+	 */
+	private static class IgnoringHandler implements ScheduleHandler {
+
+		@Override
+		public void startTimetable(int sessions) {
+		}
+
+		@Override
+		public void startVenue(Venue source) {
+		}
+
+		@Override
+		public void service(Service service) {
+		}
+
+		@Override
+		public void endVenue(Venue source) {
+		}
+
+		@Override
+		public void endTimetable() {
+		}
+	}
+
 	/**
 	 * Checks that expected and actual denote the same timetable.
 	 */
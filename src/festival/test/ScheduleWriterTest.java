@@ -0,0 +1,92 @@
+package festival.test;
+
+import org.junit.*;
+import java.io.*;
+import java.nio.file.*;
+import festival.*;
+
+/**
+ * Basic tests for the {@link ScheduleWriter} implementation class.
+ */
+public class ScheduleWriterTest {
+
+	// the file written by the tests
+	private File file;
+
+	/**
+	 * Creates the file written by the tests.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("festival", ".txt");
+	}
+
+	/**
+	 * Deletes the file written by the tests.
+	 */
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * Test that a written timetable is read back as the same timetable, and
+	 * that writing it again reproduces the file exactly.
+	 */
+	@Test
+	public void testRoundTrip() throws FormatException, IOException {
+		for (String fileName : new String[] { "read_01_correctlyFormatted.txt",
+				"read_02_correctlyFormatted.txt",
+				"read_03_correctlyFormatted.txt", "timetable_01.txt" }) {
+			ShuttleTimetable expected = ScheduleReader.read(fileName);
+			ScheduleWriter.write(expected, file.getPath());
+			ShuttleTimetable actual = ScheduleReader.read(file.getPath());
+			Assert.assertEquals(expected.size(), actual.size());
+			for (Service service : expected) {
+				Assert.assertTrue(actual.hasService(service));
+			}
+			byte[] written = Files.readAllBytes(file.toPath());
+			ScheduleWriter.write(actual, file.getPath());
+			Assert.assertArrayEquals(written, Files.readAllBytes(file
+					.toPath()));
+		}
+	}
+
+	/**
+	 * Test writing a timetable for a festival with sessions after the last
+	 * one in which a service departs.
+	 */
+	@Test
+	public void testWriteWithSessions() throws FormatException, IOException {
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		timetable.addService(new Service(new Venue("v2"), new Venue("v1"), 1));
+		timetable.addService(new Service(new Venue("v1"), new Venue("v3"), 1));
+		timetable.addService(new Service(new Venue("v1"), new Venue("v2"), 1));
+		StringWriter out = new StringWriter();
+		ScheduleWriter.write(timetable, 2, out);
+		Assert.assertEquals("2\nv1\n1 v2 v3\n2\n\nv2\n1 v1\n2\n",
+				out.toString());
+	}
+
+	/**
+	 * Test that a timetable with a service after the last session cannot be
+	 * written.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testServiceAfterLastSession() throws IOException {
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		timetable.addService(new Service(new Venue("v1"), new Venue("v2"), 3));
+		ScheduleWriter.write(timetable, 2, new StringWriter());
+	}
+
+	/**
+	 * Test that a venue whose name contains whitespace cannot be written.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testVenueNameWithWhitespace() throws IOException {
+		ShuttleTimetable timetable = new ShuttleTimetable();
+		timetable.addService(new Service(new Venue("v 1"), new Venue("v2"), 1));
+		ScheduleWriter.write(timetable, 1, new StringWriter());
+	}
+
+}
@@ -0,0 +1,108 @@
+package festival.test;
+
+import org.junit.*;
+import java.io.*;
+import java.util.*;
+import festival.*;
+
+/**
+ * Basic tests for the {@link ServicePool} implementation class.
+ */
+public class ServicePoolTest {
+
+	/**
+	 * Test that equal services are interned as the same object.
+	 */
+	@Test
+	public void testIntern() {
+		ServicePool pool = new ServicePool();
+		// a service interned before its equal ones
+		Service service = new Service(new Venue("v1"), new Venue("v2"), 1);
+		Assert.assertSame(service, pool.intern(service));
+		Assert.assertSame(service, pool.intern(new Venue("v1"),
+				new Venue("v2"), 1));
+		Assert.assertSame(service, pool.intern(new Service(new Venue("v1"),
+				new Venue("v2"), 1)));
+		Assert.assertNotSame(service, pool.intern(new Venue("v2"),
+				new Venue("v1"), 1));
+		for (int session = 1; session <= 100; session++) {
+			Assert.assertEquals(new Service(new Venue("v3"), new Venue("v4"),
+					session), pool.intern(new Venue("v3"), new Venue("v4"),
+					session));
+		}
+		Assert.assertEquals(102, pool.size());
+		Assert.assertSame(service, pool.intern(new Venue("v1"),
+				new Venue("v2"), 1));
+		Assert.assertTrue(pool.checkInvariant());
+	}
+
+	/**
+	 * Test that an invalid service is rejected without being added.
+	 */
+	@Test
+	public void testInvalidService() {
+		ServicePool pool = new ServicePool();
+		try {
+			pool.intern(new Venue("v1"), new Venue("v1"), 1);
+			Assert.fail("A service from a venue to itself was interned");
+		} catch (InvalidServiceException e) {
+			// expected
+		}
+		Assert.assertEquals(0, pool.size());
+		Assert.assertTrue(pool.checkInvariant());
+	}
+
+	/**
+	 * Test that parsing a file twice with the same pool passes the same
+	 * service objects to the handler.
+	 */
+	@Test
+	public void testParseWithPool() throws FormatException, IOException {
+		VenueRegistry registry = new VenueRegistry();
+		ServicePool pool = new ServicePool();
+		CollectingHandler first = new CollectingHandler();
+		ScheduleReader.parse("timetable_01.txt", registry, pool, first);
+		CollectingHandler second = new CollectingHandler();
+		ScheduleReader.parse("timetable_01.txt", registry, pool, second);
+		Assert.assertEquals(ScheduleReader.read("timetable_01.txt").size(),
+				first.services.size());
+		Assert.assertEquals(first.services.size(), second.services.size());
+		for (int i = 0; i < first.services.size(); i++) {
+			Assert.assertSame(first.services.get(i), second.services.get(i));
+		}
+		Assert.assertEquals(first.services.size(), pool.size());
+	}
+
+	// Helper methods
+
+	/**
+	 * A handler that collects the services of the files it is given.
+	 */
+	private static class CollectingHandler implements ScheduleHandler {
+
+		// the services found, in file order
+		private List<Service> services = new ArrayList<>();
+
+		@Override
+		public void startTimetable(int sessions) {
+		}
+
+		@Override
+		public void startVenue(Venue source) {
+		}
+
+		@Override
+		public void service(Service service) {
+			services.add(service);
+		}
+
+		@Override
+		public void endVenue(Venue source) {
+		}
+
+		@Override
+		public void endTimetable() {
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+package festival.test;
+
+import org.junit.*;
+import java.util.*;
+import java.util.function.*;
+import festival.*;
+
+/**
+ * Basic tests for the {@link ShuttleTimetable} implementation class.
+ */
+public class ShuttleTimetableTest {
+
+	/**
+	 * Test that the sources of the services arriving at a venue follow the
+	 * services added to and removed from the timetable, including after a
+	 * snapshot has been taken.
+	 */
+	@Test
+	public void testGetSources() {
+		FestivalGenerator generator = new FestivalGenerator(5, 10, 6);
+		generator.setFanOut(1.5, FestivalGenerator.Distribution.POISSON);
+		ShuttleTimetable timetable = generator.generateTimetable();
+		checkSources(timetable, generator);
+		// the services of the timetable, some of which are removed
+		List<Service> services = new ArrayList<>();
+		for (Service service : timetable) {
+			services.add(service);
+		}
+		timetable.snapshot();
+		for (int i = 0; i < services.size(); i += 2) {
+			timetable.removeService(services.get(i));
+		}
+		timetable.addService(new Service(generator.getVenue(0), generator
+				.getVenue(1), 7));
+		checkSources(timetable, generator);
+		Assert.assertEquals(Collections.singleton(generator.getVenue(0)),
+				timetable.getSources(generator.getVenue(1), 7));
+		Assert.assertTrue(timetable.getSources(new Venue("v99"), 1).isEmpty());
+		Assert.assertTrue(timetable.checkInvariant());
+	}
+
+	/**
+	 * Test that the iterator visits each service once, that services can be
+	 * removed through it without affecting a snapshot, and that it fails fast
+	 * if the timetable is changed in any other way.
+	 */
+	@Test
+	public void testIterator() {
+		FestivalGenerator generator = new FestivalGenerator(9, 10, 6);
+		generator.setFanOut(1.5, FestivalGenerator.Distribution.POISSON);
+		ShuttleTimetable timetable = generator.generateTimetable();
+		// the number of services before any are removed
+		int size = timetable.size();
+		Timetable snapshot = timetable.snapshot();
+		// the services visited, and those removed through the iterator
+		Set<Service> visited = new HashSet<>();
+		Set<Service> removed = new HashSet<>();
+		for (Iterator<Service> iterator = timetable.iterator(); iterator
+				.hasNext();) {
+			// the next service
+			Service service = iterator.next();
+			Assert.assertTrue(visited.add(service));
+			if (visited.size() % 3 == 0) {
+				iterator.remove();
+				removed.add(service);
+			}
+		}
+		Assert.assertEquals(size, visited.size());
+		Assert.assertEquals(size - removed.size(), timetable.size());
+		Assert.assertEquals(size, snapshot.size());
+		for (Service service : visited) {
+			Assert.assertEquals(!removed.contains(service),
+					timetable.hasService(service));
+			Assert.assertTrue(snapshot.hasService(service));
+		}
+		Assert.assertTrue(timetable.checkInvariant());
+		// remove the rest, with no snapshot sharing the index
+		for (Iterator<Service> iterator = timetable.iterator(); iterator
+				.hasNext();) {
+			Assert.assertFalse(removed.contains(iterator.next()));
+			iterator.remove();
+		}
+		Assert.assertEquals(0, timetable.size());
+		Assert.assertTrue(timetable.checkInvariant());
+
+		timetable.addService(new Service(generator.getVenue(0), generator
+				.getVenue(1), 7));
+		// the iterator over the timetable, which is then changed
+		Iterator<Service> iterator = timetable.iterator();
+		iterator.next();
+		timetable.addService(new Service(generator.getVenue(1), generator
+				.getVenue(0), 7));
+		try {
+			iterator.next();
+			Assert.fail("ConcurrentModificationException expected");
+		} catch (ConcurrentModificationException e) {
+			// expected
+		}
+		try {
+			iterator.remove();
+			Assert.fail("ConcurrentModificationException expected");
+		} catch (ConcurrentModificationException e) {
+			// expected
+		}
+	}
+
+	// Helper methods
+
+	/**
+	 * Checks that getSources and forEachSource give, for each venue of the
+	 * given generator and each session, the sources of the services of the
+	 * timetable that arrive at that venue after that session.
+	 */
+	private static void checkSources(ShuttleTimetable timetable,
+			FestivalGenerator generator) {
+		for (int id = 0; id < 10; id++) {
+			// the destination venue
+			Venue destination = generator.getVenue(id);
+			for (int session = 1; session <= 8; session++) {
+				// the sources of the services, found by a search of them all
+				Set<Venue> expected = new HashSet<>();
+				for (Service service : timetable) {
+					if (service.getDestination().equals(destination)
+							&& service.getSession() == session) {
+						expected.add(service.getSource());
+					}
+				}
+				Assert.assertEquals(expected, timetable.getSources(destination,
+						session));
+				// the venues visited
+				final Set<Venue> visited = new HashSet<>();
+				timetable.forEachSource(destination, session,
+						new Consumer<Venue>() {
+							@Override
+							public void accept(Venue venue) {
+								Assert.assertTrue(visited.add(venue));
+							}
+						});
+				Assert.assertEquals(expected, visited);
+			}
+		}
+	}
+
+}